@@ -0,0 +1,120 @@
+/*
+ * Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License").
+ *   You may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *
+ */
+
+
+package com.amazon.aws.spinnaker.plugin.registration;
+
+import com.amazonaws.regions.Region;
+import com.amazonaws.regions.RegionUtils;
+import com.netflix.spinnaker.clouddriver.aws.security.config.CredentialsConfig;
+
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * Synthetic accounts as the remote host returns them. Populations are deterministic, so results of different plugin
+ * versions are comparable.
+ */
+final class AccountPopulation {
+    private static final OffsetDateTime EPOCH = OffsetDateTime.of(2020, 10, 25, 16, 52, 59, 26696000, ZoneOffset.UTC);
+    private static final List<List<String>> MIXED_PROVIDERS = Arrays.asList(
+            Collections.singletonList("ec2"),
+            Arrays.asList("ec2", "ecs"),
+            Arrays.asList("ec2", "lambda"),
+            Arrays.asList("ec2", "ecs", "lambda"));
+
+    private AccountPopulation() {
+    }
+
+    /**
+     * @param size      number of accounts.
+     * @param providers {@code ec2}, {@code ecs}, {@code lambda} or {@code mixed}, which cycles through combinations of
+     *                  all three.
+     * @param regions   number of regions per account.
+     * @param deleted   ratio of accounts, spread evenly, returned as suspended.
+     */
+    static List<Account> accounts(int size, String providers, int regions, double deleted) {
+        List<String> regionNames = regionNames(regions);
+        int deleteEvery = deleted <= 0 ? 0 : (int) Math.max(1, Math.round(1 / deleted));
+        List<Account> accounts = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            Account account = new Account();
+            account.setName("account-" + i);
+            account.setAccountId(String.format("%012d", 100000000000L + i));
+            account.setAssumeRole("role/spinnakerManaged");
+            account.setRegions(new ArrayList<>(regionNames));
+            account.setProviders(new ArrayList<>(providers(providers, i)));
+            account.setStatus(deleteEvery > 0 && i % deleteEvery == 0 ? "SUSPENDED" : "ACTIVE");
+            account.setUpdatedAt(EPOCH.plusSeconds(i).toString());
+            accounts.add(account);
+        }
+        return accounts;
+    }
+
+    static CredentialsConfig credentialsConfig(int lifecycleHooks) {
+        CredentialsConfig credentialsConfig = new CredentialsConfig();
+        credentialsConfig.setDefaultKeyPairTemplate("{{name}}-keypair");
+        credentialsConfig.setDefaultEddaTemplate("http://edda-{{environment}}.example.com:8080");
+        credentialsConfig.setDefaultAssumeRole("role/spinnakerManaged");
+        credentialsConfig.setDefaultLifecycleHookRoleARNTemplate("arn:aws:iam::{{accountId}}:role/lifecycle");
+        credentialsConfig.setDefaultLifecycleHookNotificationTargetARNTemplate(
+                "arn:aws:sns:us-west-2:{{accountId}}:{{environment}}-lifecycle");
+        if (lifecycleHooks > 0) {
+            List<CredentialsConfig.LifecycleHook> hooks = new ArrayList<>(lifecycleHooks);
+            for (int i = 0; i < lifecycleHooks; i++) {
+                CredentialsConfig.LifecycleHook hook = new CredentialsConfig.LifecycleHook();
+                hook.setName("hook-" + i);
+                hook.setLifecycleTransition("autoscaling:EC2_INSTANCE_TERMINATING");
+                hook.setHeartbeatTimeout(3600);
+                hook.setDefaultResult("CONTINUE");
+                hooks.add(hook);
+            }
+            credentialsConfig.setDefaultLifecycleHooks(hooks);
+        }
+        return credentialsConfig;
+    }
+
+    static Response page(List<Account> accounts) {
+        Response response = new Response();
+        response.setAccounts(accounts);
+        return response;
+    }
+
+    private static List<String> providers(String providers, int i) {
+        if ("mixed".equals(providers)) {
+            return MIXED_PROVIDERS.get(i % MIXED_PROVIDERS.size());
+        }
+        return Collections.singletonList(providers);
+    }
+
+    private static List<String> regionNames(int count) {
+        List<String> names = RegionUtils.getRegions().stream()
+                .map(Region::getName)
+                .filter(name -> name.matches("(us|eu|ap)-[a-z]+-\\d"))
+                .sorted()
+                .collect(Collectors.toList());
+        if (count > names.size()) {
+            throw new IllegalArgumentException("At most " + names.size() + " regions are available");
+        }
+        return names.subList(0, count);
+    }
+}
@@ -0,0 +1,78 @@
+/*
+ * Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License").
+ *   You may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *
+ */
+
+package com.amazon.aws.spinnaker.plugin.registration;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares compiled account templates with the iterative resolution clouddriver uses for every account.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AccountTemplatesBenchmark {
+    private static final String[] VALUES = {"test-account-1", "123456789012", "production", "main"};
+
+    @Param({
+            "{{name}}-keypair",
+            "http://edda-{{environment}}.example.com:8080",
+            "arn:aws:iam::{{accountId}}:role/{{environment}}-{{accountType}}-{{name}}"
+    })
+    public String template;
+
+    private AccountTemplates.Template compiled;
+    private Map<String, String> substitutions;
+
+    @Setup
+    public void setup() {
+        compiled = AccountTemplates.Template.compile(template);
+        substitutions = AccountTemplates.toMap(VALUES);
+    }
+
+    @Benchmark
+    public void iterative(Blackhole blackhole) {
+        blackhole.consume(AccountTemplates.resolveIteratively(substitutions, template));
+    }
+
+    @Benchmark
+    public void compiled(Blackhole blackhole) {
+        blackhole.consume(compiled.render(VALUES));
+    }
+
+    @Benchmark
+    public void compileAndRender(Blackhole blackhole) {
+        blackhole.consume(AccountTemplates.Template.compile(template).render(VALUES));
+    }
+}
@@ -0,0 +1,109 @@
+/*
+ * Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License").
+ *   You may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *
+ */
+
+
+package com.amazon.aws.spinnaker.plugin.registration;
+
+import com.netflix.spinnaker.clouddriver.aws.security.config.AccountsConfiguration;
+import com.netflix.spinnaker.clouddriver.aws.security.config.CredentialsConfig;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of validating and converting a sync's worth of accounts returned by the remote host.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ConversionBenchmark {
+    @Param({"100", "1000", "10000", "100000"})
+    public int accounts;
+
+    // ec2, ecs, lambda or mixed.
+    @Param({"mixed"})
+    public String providers;
+
+    @Param({"4"})
+    public int regions;
+
+    @Param({"2"})
+    public int lifecycleHooks;
+
+    // Ratio of accounts returned as suspended.
+    @Param({"0.1"})
+    public double deleted;
+
+    private CredentialsConfig credentialsConfig;
+    private List<Account> population;
+    private Response page;
+
+    @Setup
+    public void setup() {
+        credentialsConfig = AccountPopulation.credentialsConfig(lifecycleHooks);
+        population = AccountPopulation.accounts(accounts, providers, regions, deleted);
+        page = AccountPopulation.page(population);
+    }
+
+    @Benchmark
+    public boolean convertCredentials() {
+        return page.convertCredentials(credentialsConfig);
+    }
+
+    // Conversion as done by a sync, including tracking the most recent UpdatedAt.
+    @Benchmark
+    public PageAccumulator addPage() {
+        PageAccumulator pages = new PageAccumulator(credentialsConfig);
+        pages.addPage(page);
+        return pages;
+    }
+
+    @Benchmark
+    public String mostRecentTime() {
+        PageAccumulator pages = new PageAccumulator(credentialsConfig);
+        for (Account account : population) {
+            pages.trackUpdatedAt(account.getUpdatedAt());
+        }
+        return pages.getMostRecentTime();
+    }
+
+    @Benchmark
+    public void setDefaults(Blackhole blackhole) {
+        for (Account account : population) {
+            AccountsConfiguration.Account ec2Account = new AccountsConfiguration.Account();
+            ec2Account.setName(account.getName());
+            ec2Account.setAccountId(account.getAccountId());
+            ec2Account.setAssumeRole(account.getAssumeRole());
+            blackhole.consume(page.setDefaults(credentialsConfig, ec2Account));
+        }
+    }
+}
@@ -0,0 +1,94 @@
+/*
+ * Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License").
+ *   You may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *
+ */
+
+
+package com.amazon.aws.spinnaker.plugin.registration;
+
+import com.netflix.spinnaker.clouddriver.aws.security.config.CredentialsConfig;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Converts one page on the calling thread and on a pool of {@code threads} threads. The page size where parallel
+ * becomes faster than sequential is the lowest sensible {@code conversionParallelThreshold} for the machine it ran on.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ParallelConversionBenchmark {
+    @Param({"100", "500", "1000", "5000", "10000", "50000"})
+    public int accounts;
+
+    @Param({"2", "4"})
+    public int threads;
+
+    // ec2, ecs, lambda or mixed.
+    @Param({"mixed"})
+    public String providers;
+
+    @Param({"2"})
+    public int lifecycleHooks;
+
+    private CredentialsConfig credentialsConfig;
+    private Response page;
+    private ExecutorService executor;
+    private ParallelConversion parallelConversion;
+
+    @Setup
+    public void setup() {
+        credentialsConfig = AccountPopulation.credentialsConfig(lifecycleHooks);
+        page = AccountPopulation.page(AccountPopulation.accounts(accounts, providers, 4, 0.1));
+        executor = Executors.newFixedThreadPool(threads);
+        parallelConversion = new ParallelConversion(executor, threads, 0);
+    }
+
+    @TearDown
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Benchmark
+    public PageAccumulator sequential() {
+        PageAccumulator pages = new PageAccumulator(credentialsConfig);
+        pages.addPage(page);
+        return pages;
+    }
+
+    @Benchmark
+    public PageAccumulator parallel() {
+        PageAccumulator pages = new PageAccumulator(credentialsConfig, parallelConversion);
+        pages.addPage(page);
+        return pages;
+    }
+}
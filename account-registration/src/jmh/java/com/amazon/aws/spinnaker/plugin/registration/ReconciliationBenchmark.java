@@ -0,0 +1,132 @@
+/*
+ * Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License").
+ *   You may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *
+ */
+
+
+package com.amazon.aws.spinnaker.plugin.registration;
+
+import com.netflix.spinnaker.clouddriver.aws.security.config.AccountsConfiguration;
+import com.netflix.spinnaker.clouddriver.aws.security.config.CredentialsConfig;
+import com.netflix.spinnaker.clouddriver.ecs.security.ECSCredentialsConfig;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of merging converted accounts into the published accounts, for an incremental sync returning a few updated and
+ * suspended accounts and for a full sync returning every account again.
+ * <p>
+ * Merging modifies the converted accounts and the published accounts, so every iteration starts from a fresh copy and
+ * runs once.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 10)
+@Measurement(iterations = 20)
+@Fork(1)
+public class ReconciliationBenchmark {
+    private static final String WATERMARK = "2030-01-01T00:00:00+00:00";
+    // Every this many accounts, one is returned as updated by an incremental sync.
+    private static final int UPDATE_EVERY = 100;
+
+    @Param({"100", "1000", "10000", "100000"})
+    public int accounts;
+
+    // ec2, ecs, lambda or mixed.
+    @Param({"mixed"})
+    public String providers;
+
+    @Param({"4"})
+    public int regions;
+
+    @Param({"2"})
+    public int lifecycleHooks;
+
+    // Ratio of published accounts returned as suspended.
+    @Param({"0.1"})
+    public double deleted;
+
+    // delta returns updated and suspended accounts only, full returns every account.
+    @Param({"delta", "full"})
+    public String sync;
+
+    private CredentialsConfig credentialsConfig;
+    private AccountsStatus accountsStatus;
+    private Response converted;
+
+    @Setup(Level.Iteration)
+    public void setup() {
+        credentialsConfig = AccountPopulation.credentialsConfig(lifecycleHooks);
+        AccountsConfiguration accountsConfiguration = new AccountsConfiguration();
+        accountsConfiguration.setAccounts(new ArrayList<>());
+        ECSCredentialsConfig ecsCredentialsConfig = new ECSCredentialsConfig();
+        ecsCredentialsConfig.setAccounts(new ArrayList<>());
+        accountsStatus = new AccountsStatus(accountsConfiguration, credentialsConfig, "http://localhost:8080", 0L, 0L);
+        accountsStatus.setECSCredentialsConfig(ecsCredentialsConfig);
+
+        Response published = convert(AccountPopulation.accounts(accounts, providers, regions, 0));
+        merge(published);
+        accountsStatus.setInitialSync(false);
+
+        List<Account> returned = AccountPopulation.accounts(accounts, providers, regions, deleted);
+        if ("delta".equals(sync)) {
+            List<Account> changed = new ArrayList<>();
+            for (int i = 0; i < returned.size(); i++) {
+                Account account = returned.get(i);
+                if ("SUSPENDED".equals(account.getStatus())) {
+                    changed.add(account);
+                } else if (i % UPDATE_EVERY == 1) {
+                    account.setAssumeRole("role/spinnakerManagedUpdated");
+                    changed.add(account);
+                }
+            }
+            returned = changed;
+        }
+        converted = convert(returned);
+    }
+
+    @Benchmark
+    public AccountsSnapshot buildDesiredAccountConfig() {
+        merge(converted);
+        return accountsStatus.getSnapshot();
+    }
+
+    private Response convert(List<Account> population) {
+        Response page = AccountPopulation.page(population);
+        page.convertCredentials(credentialsConfig);
+        return page;
+    }
+
+    private void merge(Response page) {
+        accountsStatus.setLastAttemptedTIme(WATERMARK);
+        accountsStatus.buildDesiredAccountConfig(page.getEc2Accounts(), page.getEcsAccounts(),
+                page.getDeletedAccounts(), page.getAccountsToCheck());
+    }
+}
@@ -0,0 +1,217 @@
+/*
+ * Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License").
+ *   You may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *
+ */
+
+
+package com.amazon.aws.spinnaker.plugin.registration;
+
+import com.amazon.aws.spinnaker.plugin.registration.StubAccountRegistry.Fault;
+import com.netflix.spectator.api.DefaultRegistry;
+import com.netflix.spectator.api.Registry;
+import com.netflix.spinnaker.clouddriver.aws.security.config.AccountsConfiguration;
+import com.netflix.spinnaker.clouddriver.aws.security.config.CredentialsConfig;
+import com.netflix.spinnaker.clouddriver.ecs.security.ECSCredentialsConfig;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.LongSupplier;
+
+/**
+ * Syncs accounts from a {@link StubAccountRegistry} through {@link AccountsStatus} and both credentials definition
+ * sources, the way Clouddriver's credentials poller does, and reports sync latency percentiles, bytes transferred and
+ * heap use. Options are passed as {@code key=value} arguments:
+ * <ul>
+ *   <li>{@code accounts} (10000), {@code pageSize} (1000): size of the registry.</li>
+ *   <li>{@code syncs} (50): syncs after the initial full sync.</li>
+ *   <li>{@code updates} (100), {@code suspensions} (0): accounts changed in the registry before each sync.</li>
+ *   <li>{@code latency} (0): per page latency in milliseconds, {@code N}, {@code MIN-MAX} for a uniform or
+ *   {@code expN} for an exponential distribution with mean N.</li>
+ *   <li>{@code faultRate} (0), {@code faults} (all): ratio of failed requests and which of
+ *   {@code SERVER_ERROR,FORBIDDEN,TIMEOUT,TRUNCATED} they fail with.</li>
+ *   <li>Tuning options of {@link AccountsStatus}: {@code connectionTimeout} (2000), {@code readTimeout} (6000),
+ *   {@code maxPagesInFlight}, {@code streaming}, {@code conditionalRequests}, {@code http2}, {@code compression},
+ *   {@code maxConnections}, {@code conversionParallelism}, {@code conversionParallelThreshold},
+ *   {@code checkpointExpiry}. Unset options take their {@code accountProvision} defaults.</li>
+ *   <li>{@code partitions} (0): number of shards of the registry to sync as separate partitions.</li>
+ * </ul>
+ * Backoff is disabled, so every sync is attempted.
+ */
+public class SyncLoadHarness {
+    private final Map<String, String> options;
+
+    SyncLoadHarness(Map<String, String> options) {
+        this.options = options;
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = new HashMap<>();
+        for (String arg : args) {
+            int separator = arg.indexOf('=');
+            if (separator < 0) {
+                throw new IllegalArgumentException("Options must be passed as key=value: " + arg);
+            }
+            options.put(arg.substring(0, separator), arg.substring(separator + 1));
+        }
+        new SyncLoadHarness(options).run();
+        System.exit(0);
+    }
+
+    void run() throws Exception {
+        MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        try (StubAccountRegistry registry = new StubAccountRegistry(intOption("accounts", 10000))) {
+            registry.setPageSize(intOption("pageSize", 1000));
+            registry.setLatency(latency(option("latency", "0")));
+            registry.setFaults(Double.parseDouble(option("faultRate", "0")), faults(option("faults", "")));
+            long readTimeout = longOption("readTimeout", 6000);
+            registry.setTimeoutDelay(readTimeout + 1000);
+
+            AccountsConfiguration accountsConfiguration = new AccountsConfiguration();
+            accountsConfiguration.setAccounts(new ArrayList<>());
+            ECSCredentialsConfig ecsCredentialsConfig = new ECSCredentialsConfig();
+            ecsCredentialsConfig.setAccounts(new ArrayList<>());
+            AccountsStatus accountsStatus = new AccountsStatus(accountsConfiguration, new CredentialsConfig(),
+                    registry.getUrl(), longOption("connectionTimeout", 2000), readTimeout);
+            configure(accountsStatus);
+            accountsStatus.setECSCredentialsConfig(ecsCredentialsConfig);
+            Registry metrics = new DefaultRegistry();
+            accountsStatus.setRegistry(metrics);
+            accountsStatus.afterPropertiesSet();
+            AwsCredentialsDefinitionSource awsSource =
+                    new AwsCredentialsDefinitionSource(accountsStatus, accountsConfiguration);
+            EcsCredentialsDefinitionSource ecsSource =
+                    new EcsCredentialsDefinitionSource(accountsStatus, ecsCredentialsConfig);
+
+            System.gc();
+            long heapBefore = memory.getHeapMemoryUsage().getUsed();
+            long fullSync = sync(awsSource, ecsSource);
+            long fullSyncBytes = registry.getBytesSent();
+            int syncs = intOption("syncs", 50);
+            long[] latencies = new long[syncs];
+            long peakHeap = memory.getHeapMemoryUsage().getUsed();
+            for (int i = 0; i < syncs; i++) {
+                registry.updateAccounts(intOption("updates", 100));
+                registry.suspendAccounts(intOption("suspensions", 0));
+                latencies[i] = sync(awsSource, ecsSource);
+                peakHeap = Math.max(peakHeap, memory.getHeapMemoryUsage().getUsed());
+            }
+            System.gc();
+            long heapAfter = memory.getHeapMemoryUsage().getUsed();
+            int ec2Accounts = accountsStatus.getEC2AccountsAsList().size();
+            int ecsAccounts = accountsStatus.getECSAccountsAsList().size();
+            accountsStatus.destroy();
+
+            Arrays.sort(latencies);
+            System.out.printf(Locale.ROOT, "Options: %s%n", options);
+            System.out.printf(Locale.ROOT, "Accounts: %d EC2, %d ECS%n", ec2Accounts, ecsAccounts);
+            System.out.printf(Locale.ROOT, "Full sync: %.1f ms, %d bytes%n", fullSync / 1e6, fullSyncBytes);
+            System.out.printf(Locale.ROOT, "Incremental syncs: %d, p50 %.1f ms, p90 %.1f ms, p99 %.1f ms, max %.1f ms%n",
+                    syncs, percentile(latencies, 50) / 1e6, percentile(latencies, 90) / 1e6,
+                    percentile(latencies, 99) / 1e6, syncs == 0 ? 0 : latencies[syncs - 1] / 1e6);
+            System.out.printf(Locale.ROOT, "Sync results: %d updated, %d unchanged, %d failed%n",
+                    syncCount(metrics, "updated"), syncCount(metrics, "unchanged"), syncCount(metrics, "failure"));
+            System.out.printf(Locale.ROOT, "Requests: %d, %d faults injected, %d not modified%n",
+                    registry.getRequests().size(), registry.getFaultCount(), registry.getNotModifiedCount());
+            System.out.printf(Locale.ROOT, "Bytes transferred: %d total, %d per incremental sync%n",
+                    registry.getBytesSent(), syncs == 0 ? 0 : (registry.getBytesSent() - fullSyncBytes) / syncs);
+            System.out.printf(Locale.ROOT, "Heap: %.1f MB retained, %.1f MB peak%n",
+                    (heapAfter - heapBefore) / 1048576.0, peakHeap / 1048576.0);
+        }
+    }
+
+    // Loads credentials definitions the way the credentials poller does, once per type.
+    private static long sync(AwsCredentialsDefinitionSource awsSource, EcsCredentialsDefinitionSource ecsSource) {
+        long start = System.nanoTime();
+        awsSource.getCredentialsDefinitions();
+        ecsSource.getCredentialsDefinitions();
+        return System.nanoTime() - start;
+    }
+
+    private void configure(AccountsStatus accountsStatus) {
+        accountsStatus.setMaxBackoffTime(0);
+        accountsStatus.setMaxPagesInFlight(intOption("maxPagesInFlight", 0));
+        accountsStatus.setStreaming(Boolean.parseBoolean(option("streaming", "false")));
+        accountsStatus.setConditionalRequests(Boolean.parseBoolean(option("conditionalRequests", "false")));
+        accountsStatus.setHttp2(Boolean.parseBoolean(option("http2", "false")));
+        accountsStatus.setCompression(Boolean.parseBoolean(option("compression", "true")));
+        accountsStatus.setMaxConnections(intOption("maxConnections", 10));
+        accountsStatus.setConnectionTtl(longOption("connectionTtl", 300000));
+        accountsStatus.setIdleTimeout(longOption("idleTimeout", 60000));
+        accountsStatus.setConversionParallelism(intOption("conversionParallelism", 0));
+        accountsStatus.setConversionParallelThreshold(intOption("conversionParallelThreshold", 5000));
+        accountsStatus.setCheckpointExpiry(longOption("checkpointExpiry", 600000));
+        int partitions = intOption("partitions", 0);
+        String[] queries = new String[partitions];
+        for (int i = 0; i < partitions; i++) {
+            queries[i] = "shards=" + partitions + "&shard=" + i;
+        }
+        accountsStatus.setPartitions(queries);
+        accountsStatus.setPartitionSyncTimeout(longOption("partitionSyncTimeout", 60000));
+    }
+
+    private static LongSupplier latency(String latency) {
+        if (latency.startsWith("exp")) {
+            return StubAccountRegistry.exponentialLatency(Long.parseLong(latency.substring(3)));
+        }
+        int separator = latency.indexOf('-');
+        if (separator > 0) {
+            return StubAccountRegistry.uniformLatency(
+                    Long.parseLong(latency.substring(0, separator)), Long.parseLong(latency.substring(separator + 1)));
+        }
+        return StubAccountRegistry.fixedLatency(Long.parseLong(latency));
+    }
+
+    private static Set<Fault> faults(String faults) {
+        if (faults.isEmpty()) {
+            return EnumSet.allOf(Fault.class);
+        }
+        Set<Fault> parsed = EnumSet.noneOf(Fault.class);
+        for (String fault : faults.split(",")) {
+            parsed.add(Fault.valueOf(fault.trim().toUpperCase(Locale.ROOT)));
+        }
+        return parsed;
+    }
+
+    private static long percentile(long[] sorted, int percentile) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        int rank = (int) Math.ceil(percentile / 100.0 * sorted.length);
+        return sorted[Math.max(0, rank - 1)];
+    }
+
+    private static long syncCount(Registry metrics, String result) {
+        return metrics.timer(SyncMetrics.SYNC_DURATION, "result", result).count();
+    }
+
+    private String option(String name, String defaultValue) {
+        return options.getOrDefault(name, defaultValue);
+    }
+
+    private int intOption(String name, int defaultValue) {
+        return Integer.parseInt(option(name, String.valueOf(defaultValue)));
+    }
+
+    private long longOption(String name, long defaultValue) {
+        return Long.parseLong(option(name, String.valueOf(defaultValue)));
+    }
+}
@@ -0,0 +1,80 @@
+/*
+ * Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License").
+ *   You may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *
+ */
+
+
+package com.amazon.aws.spinnaker.plugin.registration.auth.iam;
+
+import com.amazonaws.auth.AWSStaticCredentialsProvider;
+import com.amazonaws.auth.BasicAWSCredentials;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of signing one page request, from one thread and from several threads sharing a generator.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class HeaderGeneratorBenchmark {
+    private static final String URL = "https://test.execute-api.us-west-2.amazonaws.com/test/accounts/";
+    private static final String PAGE_URL = URL + "?page=2";
+
+    private HeaderGenerator headerGenerator;
+    private HashMap<String, List<String>> queryStrings;
+
+    @Setup
+    public void setup() {
+        headerGenerator = new HeaderGenerator("execute-api", "us-west-2",
+                new AWSStaticCredentialsProvider(new BasicAWSCredentials("access", "secret")), URL);
+        queryStrings = new HashMap<>();
+        queryStrings.put("UpdatedAt.gt", Collections.singletonList("2020-10-25T16:52:59.026696+00:00"));
+    }
+
+    @Benchmark
+    public TreeMap<String, String> configuredUrl() {
+        return headerGenerator.generateHeaders(queryStrings);
+    }
+
+    @Benchmark
+    public TreeMap<String, String> pageUrl() {
+        return headerGenerator.generateHeaders(PAGE_URL, queryStrings);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public TreeMap<String, String> pageUrlConcurrent() {
+        return headerGenerator.generateHeaders(PAGE_URL, queryStrings);
+    }
+}
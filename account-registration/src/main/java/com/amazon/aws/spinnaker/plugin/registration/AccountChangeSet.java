@@ -0,0 +1,64 @@
+/*
+ * Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License").
+ *   You may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *
+ */
+
+
+package com.amazon.aws.spinnaker.plugin.registration;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import lombok.Getter;
+
+/**
+ * Difference between the accounts of two consecutive snapshots. Accounts are matched by name and compared by
+ * {@link AccountFingerprint}.
+ */
+@Getter
+public final class AccountChangeSet<T> {
+    private static final AccountChangeSet<?> EMPTY =
+            new AccountChangeSet<>(ImmutableList.of(), ImmutableList.of(), ImmutableSet.of(), ImmutableSet.of());
+
+    private final ImmutableList<T> added;
+    private final ImmutableList<T> updated;
+    private final ImmutableSet<String> removed;
+    private final ImmutableSet<String> unchanged;
+
+    AccountChangeSet(ImmutableList<T> added, ImmutableList<T> updated,
+                     ImmutableSet<String> removed, ImmutableSet<String> unchanged) {
+        this.added = added;
+        this.updated = updated;
+        this.removed = removed;
+        this.unchanged = unchanged;
+    }
+
+    @SuppressWarnings("unchecked")
+    static <T> AccountChangeSet<T> empty() {
+        return (AccountChangeSet<T>) EMPTY;
+    }
+
+    /**
+     * @return true if no account was added, updated or removed.
+     */
+    public boolean isEmpty() {
+        return added.isEmpty() && updated.isEmpty() && removed.isEmpty();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%d added, %d updated, %d removed, %d unchanged",
+                added.size(), updated.size(), removed.size(), unchanged.size());
+    }
+}
@@ -0,0 +1,203 @@
+/*
+ * Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License").
+ *   You may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *
+ */
+
+package com.amazon.aws.spinnaker.plugin.registration;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.hash.Hashing;
+import com.netflix.spectator.api.Registry;
+import lombok.AccessLevel;
+import lombok.Setter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.time.Clock;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+/**
+ * Receives account changes pushed by the remote host when {@code accountProvision.webhook.enabled} is set. The body
+ * has the same {@code SpinnakerAccounts} format as a page of the remote host and is applied to the published accounts
+ * right away. Polling continues every {@code accountProvision.webhook.pollInterval} milliseconds to pick up changes
+ * that were not pushed.
+ * <p>
+ * Requests must carry the time they were signed at, in epoch seconds, in {@value #TIMESTAMP_HEADER} and
+ * {@code sha256=<hex HMAC-SHA256 of "<timestamp>.<body>">} keyed with {@code accountProvision.webhook.secret} in
+ * {@value #SIGNATURE_HEADER}. A signature is only accepted once, so a replayed request is rejected while its timestamp
+ * is within the tolerance and for being too old afterwards.
+ */
+@Slf4j
+@RestController
+@RequestMapping("/accountRegistration")
+public class AccountChangeWebhook {
+    static final String TIMESTAMP_HEADER = "X-Account-Registration-Timestamp";
+    static final String SIGNATURE_HEADER = "X-Account-Registration-Signature";
+    private static final String SIGNATURE_PREFIX = "sha256=";
+    private static final ObjectMapper objectMapper = Jackson2ObjectMapperBuilder.json().build();
+
+    private final AccountsStatus accountsStatus;
+    @Value("${accountProvision.webhook.enabled:false}")
+    @Setter(AccessLevel.PACKAGE)
+    private boolean enabled;
+    @Value("${accountProvision.webhook.secret:}")
+    @Setter(AccessLevel.PACKAGE)
+    private String secret;
+    // How far, in milliseconds, the signing time may be from now. Older requests are rejected as replays.
+    @Value("${accountProvision.webhook.tolerance:300000}")
+    @Setter(AccessLevel.PACKAGE)
+    private long tolerance;
+    @Setter(AccessLevel.PACKAGE)
+    private Clock clock = Clock.systemUTC();
+    // Signatures accepted within the tolerance, with the time they were signed at in epoch seconds.
+    private final Map<String, Long> acceptedSignatures = new ConcurrentHashMap<>();
+    private LazyLoadCredentialsRepository credentialsRepository;
+    private SyncMetrics metrics = SyncMetrics.NOOP;
+
+    @Autowired
+    AccountChangeWebhook(AccountsStatus accountsStatus) {
+        this.accountsStatus = accountsStatus;
+    }
+
+    @Autowired(required = false)
+    void setCredentialsRepository(LazyLoadCredentialsRepository credentialsRepository) {
+        this.credentialsRepository = credentialsRepository;
+    }
+
+    @Autowired(required = false)
+    void setRegistry(Registry registry) {
+        this.metrics = new SyncMetrics(registry);
+    }
+
+    @PostMapping(value = "/accounts", consumes = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<Map<String, Object>> pushAccounts(
+            @RequestHeader(value = TIMESTAMP_HEADER, required = false) String timestamp,
+            @RequestHeader(value = SIGNATURE_HEADER, required = false) String signature,
+            @RequestBody byte[] body) {
+        if (!enabled) {
+            metrics.recordWebhookRequest("disabled");
+            return ResponseEntity.notFound().build();
+        }
+        if (!isAuthentic(timestamp, signature, body)) {
+            metrics.recordWebhookRequest("unauthorized");
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).build();
+        }
+        if (isReplayed(timestamp, signature)) {
+            metrics.recordWebhookRequest("replayed");
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).build();
+        }
+        Response pushed;
+        try {
+            pushed = objectMapper.readValue(body, Response.class);
+        } catch (IOException e) {
+            log.warn("Could not read pushed accounts: {}", e.getMessage());
+            metrics.recordWebhookRequest("invalid");
+            return ResponseEntity.badRequest().build();
+        }
+        if (pushed.getAccounts() == null || pushed.getAccounts().isEmpty()) {
+            metrics.recordWebhookRequest("invalid");
+            return ResponseEntity.badRequest().build();
+        }
+        AccountsSnapshot published = accountsStatus.applyPushedAccounts(pushed);
+        if (published == null) {
+            // The remote host should retry, or rely on the first sync picking the accounts up.
+            metrics.recordWebhookRequest("ignored");
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).build();
+        }
+        metrics.recordWebhookRequest("applied");
+        if (credentialsRepository != null) {
+            // Lookups of pushed accounts must not be answered from the missing account cache.
+            Set<String> pushedNames = pushed.getAccounts().stream()
+                    .map(Account::getName)
+                    .filter(Objects::nonNull)
+                    .filter(published.getEc2Accounts()::containsKey)
+                    .collect(Collectors.toSet());
+            credentialsRepository.forgetMissing(pushedNames);
+        }
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("generation", published.getGeneration());
+        result.put("ec2Changes", published.getEc2Changes().toString());
+        result.put("ecsChanges", published.getEcsChanges().toString());
+        return ResponseEntity.ok(result);
+    }
+
+    private boolean isAuthentic(String timestamp, String signature, byte[] body) {
+        if (secret == null || secret.isEmpty()) {
+            log.error("accountProvision.webhook.secret is not set. Rejecting pushed accounts.");
+            return false;
+        }
+        if (timestamp == null || signature == null || !signature.startsWith(SIGNATURE_PREFIX)) {
+            log.warn("Rejecting pushed accounts without a signature.");
+            return false;
+        }
+        long signedAt;
+        try {
+            signedAt = Long.parseLong(timestamp.trim());
+        } catch (NumberFormatException e) {
+            log.warn("Rejecting pushed accounts with an invalid timestamp, {}.", timestamp);
+            return false;
+        }
+        if (Math.abs(clock.millis() - signedAt * 1000L) > tolerance) {
+            log.warn("Rejecting pushed accounts signed at {}, which is too far from now.", signedAt);
+            return false;
+        }
+        byte[] expected = sign(secret, timestamp.trim(), body).getBytes(StandardCharsets.UTF_8);
+        byte[] actual = signature.substring(SIGNATURE_PREFIX.length()).getBytes(StandardCharsets.UTF_8);
+        if (!MessageDigest.isEqual(expected, actual)) {
+            log.warn("Rejecting pushed accounts with an invalid signature.");
+            return false;
+        }
+        return true;
+    }
+
+    private boolean isReplayed(String timestamp, String signature) {
+        long oldest = (clock.millis() - tolerance) / 1000L;
+        acceptedSignatures.values().removeIf(signedAt -> signedAt < oldest);
+        if (acceptedSignatures.putIfAbsent(signature, Long.parseLong(timestamp.trim())) != null) {
+            log.warn("Rejecting pushed accounts signed at {}, which were pushed before.", timestamp);
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * @return hex HMAC-SHA256 of {@code <timestamp>.<body>} keyed with the given secret.
+     */
+    static String sign(String secret, String timestamp, byte[] body) {
+        return Hashing.hmacSha256(secret.getBytes(StandardCharsets.UTF_8)).newHasher()
+                .putString(timestamp + ".", StandardCharsets.UTF_8)
+                .putBytes(body)
+                .hash()
+                .toString();
+    }
+}
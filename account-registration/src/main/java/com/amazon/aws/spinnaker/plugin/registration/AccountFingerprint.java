@@ -0,0 +1,60 @@
+/*
+ * Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License").
+ *   You may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *
+ */
+
+
+package com.amazon.aws.spinnaker.plugin.registration;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.databind.MapperFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+/**
+ * Content fingerprint of an account definition. Two definitions with the same fingerprint produce the same
+ * credentials, so the one already handed to clouddriver can be kept.
+ */
+@Slf4j
+final class AccountFingerprint {
+    private static final HashFunction HASH = Hashing.murmur3_128();
+    // Properties and map entries are written in a fixed order so equal definitions serialize to equal bytes.
+    private static final ObjectMapper MAPPER = Jackson2ObjectMapperBuilder.json()
+            .featuresToEnable(MapperFeature.SORT_PROPERTIES_ALPHABETICALLY, SerializationFeature.ORDER_MAP_ENTRIES_BY_KEYS)
+            .featuresToDisable(SerializationFeature.FAIL_ON_EMPTY_BEANS)
+            .serializationInclusion(JsonInclude.Include.NON_NULL)
+            .build();
+
+    private AccountFingerprint() {
+    }
+
+    /**
+     * @return fingerprint of the given account, or null if it could not be computed. Accounts without a fingerprint
+     * are always treated as changed.
+     */
+    static HashCode of(Object account) {
+        try {
+            return HASH.hashBytes(MAPPER.writeValueAsBytes(account));
+        } catch (Exception e) {
+            log.warn("Could not compute fingerprint of account {}: {}", account, e.getMessage());
+            return null;
+        }
+    }
+}
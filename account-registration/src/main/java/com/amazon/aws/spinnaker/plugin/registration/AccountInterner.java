@@ -0,0 +1,114 @@
+/*
+ * Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License").
+ *   You may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *
+ */
+
+
+package com.amazon.aws.spinnaker.plugin.registration;
+
+import com.amazonaws.regions.Region;
+import com.amazonaws.regions.RegionUtils;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Interner;
+import com.google.common.collect.Interners;
+import com.netflix.spinnaker.clouddriver.aws.security.config.AccountsConfiguration;
+import com.netflix.spinnaker.clouddriver.aws.security.config.CredentialsConfig;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Shares the strings many synced accounts have in common, so tens of thousands of accounts don't each keep their own
+ * copies. Region names of known regions are taken from one table, and strings that are usually the same for every
+ * account, such as the assume role, are interned.
+ * <p>
+ * Only immutable strings are shared. Every account keeps its own mutable region list, {@link CredentialsConfig.Region}
+ * instances and permissions, since Clouddriver and other plugins are free to modify the accounts they are handed.
+ * Interned strings are weakly referenced and dropped once no account uses them anymore.
+ */
+final class AccountInterner {
+    // Names of the regions known to the AWS SDK by themselves and their lowercase form, computed once instead of once
+    // per page.
+    private static final Map<String, String> REGIONS = knownRegions();
+    private static final Interner<String> STRINGS = Interners.newWeakInterner();
+
+    private AccountInterner() {
+    }
+
+    /**
+     * @return true if the given region name, ignoring case and surrounding spaces, is known to the AWS SDK.
+     */
+    static boolean isKnownRegion(String name) {
+        return regionName(name) != null;
+    }
+
+    /**
+     * @return new regions for the given region names, in the given order, with shared names.
+     */
+    static List<CredentialsConfig.Region> regions(List<String> names) {
+        List<CredentialsConfig.Region> regions = new ArrayList<>(names.size());
+        for (String name : names) {
+            String known = regionName(name);
+            CredentialsConfig.Region region = new CredentialsConfig.Region();
+            region.setName(known != null ? known : string(name.trim().toLowerCase()));
+            regions.add(region);
+        }
+        return regions;
+    }
+
+    static String string(String value) {
+        return value == null ? null : STRINGS.intern(value);
+    }
+
+    /**
+     * Replaces strings of the given converted or restored account with shared ones. The account and its regions are
+     * modified in place, nothing else is shared between accounts.
+     */
+    static AccountsConfiguration.Account compact(AccountsConfiguration.Account account) {
+        if (account.getRegions() != null) {
+            for (CredentialsConfig.Region region : account.getRegions()) {
+                if (region != null && region.getName() != null) {
+                    String known = REGIONS.get(region.getName());
+                    region.setName(known != null ? known : string(region.getName()));
+                }
+            }
+        }
+        account.setAssumeRole(string(account.getAssumeRole()));
+        account.setSessionName(string(account.getSessionName()));
+        account.setEdda(string(account.getEdda()));
+        account.setFront50(string(account.getFront50()));
+        account.setDiscovery(string(account.getDiscovery()));
+        account.setBastionHost(string(account.getBastionHost()));
+        return account;
+    }
+
+    private static String regionName(String name) {
+        if (name == null) {
+            return null;
+        }
+        String known = REGIONS.get(name);
+        return known != null ? known : REGIONS.get(name.trim().toLowerCase());
+    }
+
+    private static Map<String, String> knownRegions() {
+        Map<String, String> regions = new HashMap<>();
+        for (Region awsRegion : RegionUtils.getRegions()) {
+            regions.put(awsRegion.getName(), awsRegion.getName());
+        }
+        return ImmutableMap.copyOf(regions);
+    }
+}
@@ -0,0 +1,132 @@
+/*
+ * Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License").
+ *   You may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *
+ */
+
+
+package com.amazon.aws.spinnaker.plugin.registration;
+
+import com.netflix.spinnaker.clouddriver.aws.security.config.AccountsConfiguration;
+import com.netflix.spinnaker.clouddriver.ecs.security.ECSCredentialsConfig;
+import lombok.Getter;
+
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Merges the accounts converted by a sync into the accounts currently configured. Accounts returned by the remote host
+ * replace current accounts of the same name, suspended accounts are removed together with their ECS accounts, and ECS
+ * accounts are removed when the remote host no longer lists {@code ecs} for their AWS account. Every other current
+ * account is carried over.
+ * <p>
+ * Deleted and provider revoked names are indexed once, so merging takes one pass over the current accounts.
+ */
+final class AccountReconciler {
+    private final Set<String> deleted;
+    private final Set<String> revokedEcsAccounts;
+
+    /**
+     * @param deletedAccounts  names of suspended AWS accounts.
+     * @param accountsToCheck  names of AWS accounts returned without the {@code ecs} provider.
+     */
+    AccountReconciler(Collection<String> deletedAccounts, Collection<String> accountsToCheck) {
+        this.deleted = new HashSet<>(deletedAccounts);
+        this.revokedEcsAccounts = new HashSet<>(accountsToCheck.size() * 2);
+        for (String name : accountsToCheck) {
+            revokedEcsAccounts.add(name + "-ecs");
+        }
+    }
+
+    /**
+     * Carries the current accounts over into the given maps of accounts returned by the remote host.
+     *
+     * @param ec2Accounts  converted AWS accounts by name. Modified in place.
+     * @param ecsAccounts  converted ECS accounts by name. Modified in place.
+     * @param currentEc2   currently configured AWS accounts.
+     * @param currentEcs   currently configured ECS accounts. May be null when ECS is not configured.
+     */
+    Result reconcile(Map<String, AccountsConfiguration.Account> ec2Accounts,
+                     Map<String, ECSCredentialsConfig.Account> ecsAccounts,
+                     List<AccountsConfiguration.Account> currentEc2,
+                     List<ECSCredentialsConfig.Account> currentEcs) {
+        Result result = new Result(ec2Accounts, ecsAccounts);
+        result.received = ec2Accounts.size() + ecsAccounts.size();
+        for (AccountsConfiguration.Account account : currentEc2) {
+            if (deleted.contains(account.getName())) {
+                result.deleted++;
+            } else if (ec2Accounts.containsKey(account.getName())) {
+                result.replaced++;
+            } else {
+                ec2Accounts.put(account.getName(), account);
+                result.carriedOver++;
+            }
+        }
+        if (currentEcs != null) {
+            for (ECSCredentialsConfig.Account account : currentEcs) {
+                if (deleted.contains(account.getAwsAccount())) {
+                    result.deleted++;
+                } else if (ecsAccounts.containsKey(account.getName())) {
+                    result.replaced++;
+                } else if (revokedEcsAccounts.contains(account.getName())) {
+                    result.revoked++;
+                } else {
+                    ecsAccounts.put(account.getName(), account);
+                    result.carriedOver++;
+                }
+            }
+        }
+        // The remote host may also have returned the ECS account of an AWS account it returned without ecs.
+        for (String name : revokedEcsAccounts) {
+            if (ecsAccounts.remove(name) != null) {
+                result.revoked++;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Accounts to configure after a sync and how they were arrived at.
+     */
+    @Getter
+    static final class Result {
+        private final Map<String, AccountsConfiguration.Account> ec2Accounts;
+        private final Map<String, ECSCredentialsConfig.Account> ecsAccounts;
+        // Accounts returned by the remote host.
+        private int received;
+        // Current accounts replaced by an account returned by the remote host.
+        private int replaced;
+        // Current accounts carried over unchanged.
+        private int carriedOver;
+        // Current accounts removed because their AWS account was suspended.
+        private int deleted;
+        // ECS accounts removed because their AWS account no longer lists ecs.
+        private int revoked;
+
+        private Result(Map<String, AccountsConfiguration.Account> ec2Accounts,
+                       Map<String, ECSCredentialsConfig.Account> ecsAccounts) {
+            this.ec2Accounts = ec2Accounts;
+            this.ecsAccounts = ecsAccounts;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%d received, %d replaced, %d carried over, %d deleted, %d ECS revoked",
+                    received, replaced, carriedOver, deleted, revoked);
+        }
+    }
+}
@@ -0,0 +1,54 @@
+/*
+ * Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License").
+ *   You may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *
+ */
+
+package com.amazon.aws.spinnaker.plugin.registration;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Actuator endpoint reporting the state of the account sync and what the last syncs did. Exposed at
+ * {@code /actuator/accountRegistration} once included in {@code management.endpoints.web.exposure.include}.
+ */
+@Endpoint(id = "accountRegistration")
+public class AccountRegistrationEndpoint {
+    private final AccountsStatus accountsStatus;
+
+    @Autowired
+    AccountRegistrationEndpoint(AccountsStatus accountsStatus) {
+        this.accountsStatus = accountsStatus;
+    }
+
+    @ReadOperation
+    public Map<String, Object> status() {
+        AccountsSnapshot snapshot = accountsStatus.getSnapshot();
+        Map<String, Object> status = new LinkedHashMap<>();
+        status.put("generation", snapshot.getGeneration());
+        status.put("ec2Accounts", snapshot.getEc2Accounts().size());
+        status.put("ecsAccounts", snapshot.getEcsAccounts().size());
+        status.put("lastSyncTime", accountsStatus.getLastSyncTime());
+        status.put("retryCount", accountsStatus.getRetryCount().get());
+        status.put("nextTry", accountsStatus.getNextTry());
+        status.put("polling", accountsStatus.getPollScheduler().getState());
+        status.put("reports", accountsStatus.getReports());
+        return status;
+    }
+}
@@ -48,7 +48,11 @@ public class AccountRegistrationPlugin extends PrivilegedSpringPlugin {
         List<Class> classes = new ArrayList<>(Arrays.asList(
                 EcsCredentialsDefinitionSource.class,
                 AwsCredentialsDefinitionSource.class,
-                AccountsStatus.class));
+                AccountsStatus.class,
+                AccountsRefresher.class,
+                DeferredCredentials.class,
+                AccountChangeWebhook.class,
+                AccountRegistrationEndpoint.class));
         for (Class classToAdd : classes) {
             BeanDefinition beanDefinition = beanDefinitionFor(classToAdd);
             try {
@@ -0,0 +1,223 @@
+/*
+ * Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License").
+ *   You may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *
+ */
+
+package com.amazon.aws.spinnaker.plugin.registration;
+
+import com.netflix.spinnaker.clouddriver.aws.security.config.CredentialsConfig;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Compiled forms of the account templates found in {@link CredentialsConfig}, e.g. {@code defaultKeyPairTemplate}.
+ * Templates are parsed once and reused until the templates of the credentials config change. Rendering is a single
+ * pass over the compiled segments. Values that themselves contain placeholders fall back to the iterative resolution
+ * clouddriver uses, which also detects templates that never stop expanding.
+ */
+class AccountTemplates {
+    // Order of the values passed to Template#render.
+    static final String[] KEYS = {"name", "accountId", "environment", "accountType"};
+    private static final int MAX_ITERATIONS = 10;
+
+    private static volatile AccountTemplates cached;
+
+    private final CredentialsConfig credentialsConfig;
+    final Template keyPair;
+    final Template edda;
+    final Template front50;
+    final Template discovery;
+    final Template assumeRole;
+    final Template sessionName;
+    final Template bastionHost;
+    final Template lifecycleHookRoleARN;
+    final Template lifecycleHookNotificationTargetARN;
+
+    private AccountTemplates(CredentialsConfig credentialsConfig) {
+        this.credentialsConfig = credentialsConfig;
+        this.keyPair = Template.compile(credentialsConfig.getDefaultKeyPairTemplate());
+        this.edda = Template.compile(credentialsConfig.getDefaultEddaTemplate());
+        this.front50 = Template.compile(credentialsConfig.getDefaultFront50Template());
+        this.discovery = Template.compile(credentialsConfig.getDefaultDiscoveryTemplate());
+        this.assumeRole = Template.compile(credentialsConfig.getDefaultAssumeRole());
+        this.sessionName = Template.compile(credentialsConfig.getDefaultSessionName());
+        this.bastionHost = Template.compile(credentialsConfig.getDefaultBastionHostTemplate());
+        this.lifecycleHookRoleARN = Template.compile(credentialsConfig.getDefaultLifecycleHookRoleARNTemplate());
+        this.lifecycleHookNotificationTargetARN =
+                Template.compile(credentialsConfig.getDefaultLifecycleHookNotificationTargetARNTemplate());
+    }
+
+    static AccountTemplates forConfig(CredentialsConfig credentialsConfig) {
+        AccountTemplates templates = cached;
+        if (templates == null || !templates.isCompiledFrom(credentialsConfig)) {
+            templates = new AccountTemplates(credentialsConfig);
+            cached = templates;
+        }
+        return templates;
+    }
+
+    private boolean isCompiledFrom(CredentialsConfig config) {
+        return credentialsConfig == config
+                && Objects.equals(Template.sourceOf(keyPair), config.getDefaultKeyPairTemplate())
+                && Objects.equals(Template.sourceOf(edda), config.getDefaultEddaTemplate())
+                && Objects.equals(Template.sourceOf(front50), config.getDefaultFront50Template())
+                && Objects.equals(Template.sourceOf(discovery), config.getDefaultDiscoveryTemplate())
+                && Objects.equals(Template.sourceOf(assumeRole), config.getDefaultAssumeRole())
+                && Objects.equals(Template.sourceOf(sessionName), config.getDefaultSessionName())
+                && Objects.equals(Template.sourceOf(bastionHost), config.getDefaultBastionHostTemplate())
+                && Objects.equals(Template.sourceOf(lifecycleHookRoleARN), config.getDefaultLifecycleHookRoleARNTemplate())
+                && Objects.equals(Template.sourceOf(lifecycleHookNotificationTargetARN),
+                        config.getDefaultLifecycleHookNotificationTargetARNTemplate());
+    }
+
+    /**
+     * Returns {@code value} with placeholders substituted if it is set, otherwise the rendered default template.
+     */
+    static String resolve(String[] values, String value, Template defaultTemplate) {
+        if (value != null) {
+            if (value.indexOf("{{") < 0) {
+                return value;
+            }
+            return Template.compile(value).render(values);
+        }
+        return defaultTemplate == null ? null : defaultTemplate.render(values);
+    }
+
+    /**
+     * Substitutes placeholders by repeatedly replacing every key until the value stops changing, the same way
+     * clouddriver resolves account templates.
+     */
+    static String resolveIteratively(Map<String, String> substitutions, String value) {
+        String base = value;
+        int iterations = 0;
+        boolean changed = true;
+        while (changed && iterations < MAX_ITERATIONS) {
+            iterations++;
+            String previous = base;
+            for (Map.Entry<String, String> substitution : substitutions.entrySet()) {
+                base = base.replace("{{" + substitution.getKey() + "}}", substitution.getValue());
+            }
+            changed = !previous.equals(base);
+        }
+        if (changed) {
+            throw new RuntimeException("too many levels of templatery");
+        }
+        return base;
+    }
+
+    static Map<String, String> toMap(String[] values) {
+        Map<String, String> substitutions = new HashMap<>();
+        for (int i = 0; i < KEYS.length; i++) {
+            substitutions.put(KEYS[i], values[i]);
+        }
+        return substitutions;
+    }
+
+    static final class Template {
+        private final String source;
+        // literals.length == keys.length + 1. Output is literals[0] + values[keys[0]] + literals[1] + ...
+        private final String[] literals;
+        private final int[] keys;
+
+        private Template(String source, String[] literals, int[] keys) {
+            this.source = source;
+            this.literals = literals;
+            this.keys = keys;
+        }
+
+        static Template compile(String source) {
+            if (source == null) {
+                return null;
+            }
+            List<String> literals = new ArrayList<>();
+            List<Integer> keys = new ArrayList<>();
+            int literalStart = 0;
+            int index = source.indexOf("{{");
+            while (index >= 0) {
+                int key = keyAt(source, index);
+                if (key < 0) {
+                    index = source.indexOf("{{", index + 1);
+                    continue;
+                }
+                literals.add(source.substring(literalStart, index));
+                keys.add(key);
+                literalStart = index + KEYS[key].length() + 4;
+                index = source.indexOf("{{", literalStart);
+            }
+            literals.add(source.substring(literalStart));
+            return new Template(
+                    source,
+                    literals.toArray(new String[0]),
+                    keys.stream().mapToInt(Integer::intValue).toArray());
+        }
+
+        private static String sourceOf(Template template) {
+            return template == null ? null : template.source;
+        }
+
+        // Index of the key whose placeholder starts at the given position, or -1 if there is none.
+        private static int keyAt(String value, int index) {
+            for (int key = 0; key < KEYS.length; key++) {
+                String name = KEYS[key];
+                if (value.startsWith(name, index + 2) && value.startsWith("}}", index + 2 + name.length())) {
+                    return key;
+                }
+            }
+            return -1;
+        }
+
+        private static boolean containsPlaceholder(String value) {
+            int index = value.indexOf("{{");
+            while (index >= 0) {
+                if (keyAt(value, index) >= 0) {
+                    return true;
+                }
+                index = value.indexOf("{{", index + 1);
+            }
+            return false;
+        }
+
+        String render(String[] values) {
+            if (keys.length == 0) {
+                return source;
+            }
+            int length = 0;
+            for (String literal : literals) {
+                length += literal.length();
+            }
+            for (int key : keys) {
+                if (values[key] == null) {
+                    return resolveIteratively(toMap(values), source);
+                }
+                length += values[key].length();
+            }
+            StringBuilder builder = new StringBuilder(length);
+            builder.append(literals[0]);
+            for (int i = 0; i < keys.length; i++) {
+                builder.append(values[keys[i]]).append(literals[i + 1]);
+            }
+            String rendered = builder.toString();
+            // Substituted values introduced new placeholders. Resolve them the same way clouddriver does.
+            if (containsPlaceholder(rendered)) {
+                return resolveIteratively(toMap(values), source);
+            }
+            return rendered;
+        }
+    }
+}
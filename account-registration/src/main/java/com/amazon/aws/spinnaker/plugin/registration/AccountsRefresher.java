@@ -0,0 +1,173 @@
+/*
+ * Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License").
+ *   You may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *
+ */
+
+package com.amazon.aws.spinnaker.plugin.registration;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.netflix.spinnaker.clouddriver.aws.security.config.AccountsConfiguration;
+import com.netflix.spinnaker.clouddriver.ecs.security.ECSCredentialsConfig;
+import lombok.AccessLevel;
+import lombok.Setter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Syncs accounts with the remote host on its own schedule when {@code accountProvision.backgroundSync.enabled} is set.
+ * Credentials definition sources then only read the latest published accounts instead of syncing inline on the
+ * credentials loader thread.
+ * <p>
+ * The Spring context owns the refresher: syncing stops when the context is closed.
+ */
+@Slf4j
+public class AccountsRefresher implements DisposableBean {
+    private final AccountsStatus accountsStatus;
+    @Value("${accountProvision.backgroundSync.enabled:false}")
+    @Setter(AccessLevel.PACKAGE)
+    private boolean enabled;
+    @Value("${accountProvision.backgroundSync.interval:30000}")
+    @Setter(AccessLevel.PACKAGE)
+    private long interval;
+    @Value("${accountProvision.backgroundSync.jitter:5000}")
+    @Setter(AccessLevel.PACKAGE)
+    private long jitter;
+    @Value("${accountProvision.backgroundSync.initialSyncTimeout:60000}")
+    @Setter(AccessLevel.PACKAGE)
+    private long initialSyncTimeout;
+    @Value("${accountProvision.backgroundSync.shutdownTimeout:10000}")
+    @Setter(AccessLevel.PACKAGE)
+    private long shutdownTimeout;
+
+    private final CountDownLatch initialSync = new CountDownLatch(1);
+    private volatile boolean waitedForInitialSync;
+    private ScheduledExecutorService scheduler;
+
+    @Autowired
+    AccountsRefresher(AccountsStatus accountsStatus) {
+        this.accountsStatus = accountsStatus;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Starts syncing in the background if it is not running yet, then waits for the first sync to finish, up to
+     * {@code initialSyncTimeout} milliseconds. Only the first caller waits.
+     */
+    public void start() {
+        synchronized (this) {
+            if (scheduler == null) {
+                log.info("Starting background account sync every {} ms with up to {} ms of jitter.", interval, jitter);
+                scheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder()
+                        .setNameFormat("account-registration-sync-%d")
+                        .setDaemon(true)
+                        .build());
+                scheduler.execute(this::refresh);
+            }
+        }
+        if (!waitedForInitialSync) {
+            try {
+                if (!initialSync.await(initialSyncTimeout, TimeUnit.MILLISECONDS)) {
+                    log.warn("Initial account sync did not finish within {} ms. Continuing with current accounts.",
+                            initialSyncTimeout);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                waitedForInitialSync = true;
+            }
+        }
+    }
+
+    /**
+     * Stops syncing. Waits up to {@code shutdownTimeout} milliseconds for a sync in progress to finish.
+     */
+    public void stop() {
+        ScheduledExecutorService toStop;
+        synchronized (this) {
+            toStop = scheduler;
+            scheduler = null;
+        }
+        if (toStop == null) {
+            return;
+        }
+        log.info("Stopping background account sync.");
+        toStop.shutdown();
+        try {
+            if (!toStop.awaitTermination(shutdownTimeout, TimeUnit.MILLISECONDS)) {
+                log.warn("Account sync did not finish within {} ms. Interrupting it.", shutdownTimeout);
+                toStop.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            toStop.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Override
+    public void destroy() {
+        stop();
+    }
+
+    /**
+     * @return EC2 accounts published by the last successful sync, or null if no sync succeeded yet.
+     */
+    public List<AccountsConfiguration.Account> getEc2Accounts() {
+        AccountsSnapshot snapshot = accountsStatus.getSnapshot();
+        return snapshot.getGeneration() == 0 ? null : snapshot.getEc2AccountsList();
+    }
+
+    /**
+     * @return ECS accounts published by the last successful sync, or null if no sync succeeded yet.
+     */
+    public List<ECSCredentialsConfig.Account> getEcsAccounts() {
+        AccountsSnapshot snapshot = accountsStatus.getSnapshot();
+        return snapshot.getGeneration() == 0 ? null : snapshot.getEcsAccountsList();
+    }
+
+    void refresh() {
+        try {
+            if (accountsStatus.getDesiredAccounts()) {
+                AccountsSnapshot snapshot = accountsStatus.getSnapshot();
+                log.info("Published generation {} with {} EC2 and {} ECS accounts.", snapshot.getGeneration(),
+                        snapshot.getEc2Accounts().size(), snapshot.getEcsAccounts().size());
+            }
+        } catch (Exception e) {
+            log.error("Background account sync failed.", e);
+        } finally {
+            initialSync.countDown();
+            scheduleNext();
+        }
+    }
+
+    private synchronized void scheduleNext() {
+        if (scheduler == null || scheduler.isShutdown()) {
+            return;
+        }
+        long delay = interval + (jitter > 0 ? ThreadLocalRandom.current().nextLong(jitter) : 0);
+        scheduler.schedule(this::refresh, delay, TimeUnit.MILLISECONDS);
+    }
+}
@@ -0,0 +1,135 @@
+/*
+ * Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License").
+ *   You may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *
+ */
+
+package com.amazon.aws.spinnaker.plugin.registration;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Sets;
+import com.google.common.hash.HashCode;
+import com.netflix.spinnaker.clouddriver.aws.security.config.AccountsConfiguration;
+import com.netflix.spinnaker.clouddriver.ecs.security.ECSCredentialsConfig;
+import lombok.AccessLevel;
+import lombok.Getter;
+
+import java.util.Map;
+
+/**
+ * Immutable view of the accounts produced by one sync. A new snapshot with a higher generation is published after
+ * every successful sync, so readers get a consistent EC2 and ECS view without locking or copying.
+ * <p>
+ * Accounts whose content did not change since the previous snapshot keep the previous instance, so clouddriver sees
+ * an identical definition and leaves their credentials alone. The change sets describe what differs from the
+ * previous snapshot.
+ */
+@Getter
+public final class AccountsSnapshot {
+    static final AccountsSnapshot EMPTY = new AccountsSnapshot(
+            ImmutableMap.of(), ImmutableMap.of(), ImmutableMap.of(), ImmutableMap.of(),
+            AccountChangeSet.empty(), AccountChangeSet.empty(), 0, null);
+
+    private final ImmutableMap<String, AccountsConfiguration.Account> ec2Accounts;
+    private final ImmutableMap<String, ECSCredentialsConfig.Account> ecsAccounts;
+    private final ImmutableList<AccountsConfiguration.Account> ec2AccountsList;
+    private final ImmutableList<ECSCredentialsConfig.Account> ecsAccountsList;
+    @Getter(AccessLevel.NONE)
+    private final ImmutableMap<String, HashCode> ec2Fingerprints;
+    @Getter(AccessLevel.NONE)
+    private final ImmutableMap<String, HashCode> ecsFingerprints;
+    private final AccountChangeSet<AccountsConfiguration.Account> ec2Changes;
+    private final AccountChangeSet<ECSCredentialsConfig.Account> ecsChanges;
+    // Increases by one with every published snapshot. 0 means no sync succeeded yet.
+    private final long generation;
+    // Most recent UpdatedAt value of the sync that produced this snapshot.
+    private final String watermark;
+
+    private AccountsSnapshot(ImmutableMap<String, AccountsConfiguration.Account> ec2Accounts,
+                             ImmutableMap<String, ECSCredentialsConfig.Account> ecsAccounts,
+                             ImmutableMap<String, HashCode> ec2Fingerprints,
+                             ImmutableMap<String, HashCode> ecsFingerprints,
+                             AccountChangeSet<AccountsConfiguration.Account> ec2Changes,
+                             AccountChangeSet<ECSCredentialsConfig.Account> ecsChanges,
+                             long generation, String watermark) {
+        this.ec2Accounts = ec2Accounts;
+        this.ecsAccounts = ecsAccounts;
+        // Copied rather than a view of the maps, so ImmutableList.copyOf of these lists returns them as they are.
+        this.ec2AccountsList = ImmutableList.copyOf(ec2Accounts.values());
+        this.ecsAccountsList = ImmutableList.copyOf(ecsAccounts.values());
+        this.ec2Fingerprints = ec2Fingerprints;
+        this.ecsFingerprints = ecsFingerprints;
+        this.ec2Changes = ec2Changes;
+        this.ecsChanges = ecsChanges;
+        this.generation = generation;
+        this.watermark = watermark;
+    }
+
+    AccountsSnapshot next(Map<String, AccountsConfiguration.Account> ec2Accounts,
+                          Map<String, ECSCredentialsConfig.Account> ecsAccounts,
+                          String watermark) {
+        Diff<AccountsConfiguration.Account> ec2 = new Diff<>(this.ec2Accounts, ec2Fingerprints, ec2Accounts);
+        Diff<ECSCredentialsConfig.Account> ecs = new Diff<>(this.ecsAccounts, ecsFingerprints, ecsAccounts);
+        return new AccountsSnapshot(ec2.accounts.build(), ecs.accounts.build(),
+                ec2.fingerprints.build(), ecs.fingerprints.build(),
+                ec2.changes(), ecs.changes(), generation + 1, watermark);
+    }
+
+    public boolean hasChangedSince(long generation) {
+        return this.generation > generation;
+    }
+
+    private static class Diff<T> {
+        private final ImmutableMap.Builder<String, T> accounts = ImmutableMap.builder();
+        private final ImmutableMap.Builder<String, HashCode> fingerprints = ImmutableMap.builder();
+        private final ImmutableList.Builder<T> added = ImmutableList.builder();
+        private final ImmutableList.Builder<T> updated = ImmutableList.builder();
+        private final ImmutableSet.Builder<String> unchanged = ImmutableSet.builder();
+        private final ImmutableSet<String> removed;
+
+        Diff(Map<String, T> previous, Map<String, HashCode> previousFingerprints, Map<String, T> current) {
+            for (Map.Entry<String, T> entry : current.entrySet()) {
+                String name = entry.getKey();
+                T account = entry.getValue();
+                T previousAccount = previous.get(name);
+                HashCode fingerprint;
+                if (account == previousAccount) {
+                    // Carried over from the previous snapshot, no need to hash it again.
+                    fingerprint = previousFingerprints.get(name);
+                    unchanged.add(name);
+                } else if (previousAccount == null) {
+                    fingerprint = AccountFingerprint.of(account);
+                    added.add(account);
+                } else if ((fingerprint = AccountFingerprint.of(account)) != null
+                        && fingerprint.equals(previousFingerprints.get(name))) {
+                    account = previousAccount;
+                    unchanged.add(name);
+                } else {
+                    updated.add(account);
+                }
+                accounts.put(name, account);
+                if (fingerprint != null) {
+                    fingerprints.put(name, fingerprint);
+                }
+            }
+            removed = ImmutableSet.copyOf(Sets.difference(previous.keySet(), current.keySet()));
+        }
+
+        AccountChangeSet<T> changes() {
+            return new AccountChangeSet<>(added.build(), updated.build(), removed, unchanged.build());
+        }
+    }
+}
@@ -0,0 +1,162 @@
+/*
+ * Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License").
+ *   You may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *
+ */
+
+
+package com.amazon.aws.spinnaker.plugin.registration;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.netflix.spinnaker.clouddriver.aws.security.config.AccountsConfiguration;
+import com.netflix.spinnaker.clouddriver.ecs.security.ECSCredentialsConfig;
+import lombok.Data;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Keeps the accounts of the last successful sync in a local file, so a restarted clouddriver can publish them right
+ * away and continue with an incremental sync.
+ * <p>
+ * File layout: magic number, format version, CRC32 and length of the payload, then the payload, which is gzip
+ * compressed JSON. The file is written to a temporary file first and moved into place, so readers never see a partial
+ * file. A file with another version, a bad checksum or a different configuration fingerprint is ignored.
+ */
+@Slf4j
+class AccountsSnapshotStore {
+    static final int MAGIC = 0x41525353;
+    static final int FORMAT_VERSION = 1;
+    private static final ObjectMapper objectMapper = Jackson2ObjectMapperBuilder.json().build();
+
+    private final Path path;
+
+    AccountsSnapshotStore(Path path) {
+        this.path = path;
+    }
+
+    /**
+     * @return the stored state, or null if there is none or it can't be used with the given configuration.
+     */
+    State load(String configFingerprint) {
+        byte[] file;
+        try {
+            file = Files.readAllBytes(path);
+        } catch (NoSuchFileException e) {
+            log.info("No account snapshot found at {}.", path);
+            return null;
+        } catch (IOException e) {
+            log.warn("Could not read account snapshot at {}: {}", path, e.getMessage());
+            return null;
+        }
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(file))) {
+            if (in.readInt() != MAGIC) {
+                log.warn("{} is not an account snapshot. Ignoring it.", path);
+                return null;
+            }
+            int version = in.readInt();
+            if (version != FORMAT_VERSION) {
+                log.info("Account snapshot at {} has format version {}, expected {}. Ignoring it.", path, version, FORMAT_VERSION);
+                return null;
+            }
+            long checksum = in.readLong();
+            byte[] payload = new byte[in.readInt()];
+            in.readFully(payload);
+            if (checksum(payload) != checksum) {
+                log.warn("Account snapshot at {} is corrupt. Ignoring it.", path);
+                return null;
+            }
+            State state;
+            try (InputStream json = new GZIPInputStream(new ByteArrayInputStream(payload))) {
+                state = objectMapper.readValue(json, State.class);
+            }
+            if (configFingerprint != null && !configFingerprint.equals(state.getConfigFingerprint())) {
+                log.info("Account snapshot at {} was written with a different configuration. Ignoring it.", path);
+                return null;
+            }
+            return state;
+        } catch (IOException | RuntimeException e) {
+            log.warn("Could not read account snapshot at {}: {}", path, e.getMessage());
+            return null;
+        }
+    }
+
+    void save(State state) throws IOException {
+        ByteArrayOutputStream payload = new ByteArrayOutputStream();
+        try (OutputStream json = new GZIPOutputStream(payload)) {
+            objectMapper.writeValue(json, state);
+        }
+        byte[] bytes = payload.toByteArray();
+        Path parent = path.toAbsolutePath().getParent();
+        Files.createDirectories(parent);
+        Path temp = Files.createTempFile(parent, path.getFileName().toString(), ".tmp");
+        try {
+            try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE);
+                 DataOutputStream out = new DataOutputStream(Channels.newOutputStream(channel))) {
+                out.writeInt(MAGIC);
+                out.writeInt(FORMAT_VERSION);
+                out.writeLong(checksum(bytes));
+                out.writeInt(bytes.length);
+                out.write(bytes);
+                out.flush();
+                channel.force(true);
+            }
+            try {
+                Files.move(temp, path, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    private static long checksum(byte[] bytes) {
+        CRC32 crc = new CRC32();
+        crc.update(bytes);
+        return crc.getValue();
+    }
+
+    @Data
+    static class State {
+        // Fingerprint of the configuration the accounts were converted with.
+        private String configFingerprint;
+        private String lastSyncTime;
+        private List<AccountsConfiguration.Account> ec2Accounts = new ArrayList<>();
+        private List<ECSCredentialsConfig.Account> ecsAccounts = new ArrayList<>();
+        private Map<String, PageValidators> pageValidators = new HashMap<>();
+    }
+}
@@ -22,14 +22,16 @@ import com.amazonaws.auth.AWSCredentialsProvider;
 import com.amazonaws.auth.AWSStaticCredentialsProvider;
 import com.amazonaws.auth.BasicAWSCredentials;
 import com.amazonaws.auth.DefaultAWSCredentialsProviderChain;
-import com.google.common.collect.ImmutableList;
-import com.google.common.collect.Sets;
+import com.google.common.hash.HashCode;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.netflix.spectator.api.Registry;
 import com.netflix.spinnaker.clouddriver.aws.security.config.AccountsConfiguration;
 import com.netflix.spinnaker.clouddriver.aws.security.config.CredentialsConfig;
 import com.netflix.spinnaker.clouddriver.ecs.security.ECSCredentialsConfig;
-import com.netflix.spinnaker.credentials.definition.CredentialsDefinition;
 import lombok.Data;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.web.client.RestTemplateBuilder;
@@ -37,31 +39,41 @@ import org.springframework.http.HttpEntity;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpMethod;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.client.ClientHttpRequestFactory;
 import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.HttpMessageConverterExtractor;
+import org.springframework.web.client.RequestCallback;
+import org.springframework.web.client.ResponseExtractor;
 import org.springframework.web.client.RestTemplate;
 import org.springframework.web.util.UriComponentsBuilder;
+import org.springframework.web.util.UriUtils;
 
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.time.Clock;
 import java.time.Duration;
 import java.time.Instant;
-import java.time.OffsetDateTime;
-import java.time.format.DateTimeFormatter;
-import java.time.format.DateTimeParseException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
-import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Random;
+import java.util.Objects;
 import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.atomic.AtomicInteger;
-import java.util.stream.Collectors;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
+import java.util.regex.Pattern;
 
 @Slf4j
 @Data
-public class AccountsStatus {
-    public HashMap<String, AccountsConfiguration.Account> ec2Accounts;
-    public HashMap<String, ECSCredentialsConfig.Account> ecsAccounts;
+public class AccountsStatus implements InitializingBean, DisposableBean {
+    private final AtomicReference<AccountsSnapshot> snapshot = new AtomicReference<>(AccountsSnapshot.EMPTY);
     private String lastSyncTime;
     private String lastAttemptedTIme;
     private String remoteHostUrl;
@@ -71,6 +83,100 @@ public class AccountsStatus {
     private String region;
     @Value("${accountProvision.maxBackoffTime:3600000}")
     private long maxBackoffTime;
+    @Value("${accountProvision.maxPagesInFlight:0}")
+    private int maxPagesInFlight;
+    @Value("${accountProvision.streaming:false}")
+    private boolean streaming;
+    @Value("${accountProvision.conditionalRequests:false}")
+    private boolean conditionalRequests;
+    // Validators of the pages seen by the last successful sync, by request URL, i.e. the page URL with the UpdatedAt.gt
+    // query the page was requested with.
+    private volatile Map<String, PageValidators> pageValidators = Collections.emptyMap();
+    // Calls the remote host through a pool of keep-alive connections, or HTTP/2 with http2. When both are off, the
+    // request factory picked by RestTemplateBuilder is kept.
+    @Value("${accountProvision.httpClient.pooled:false}")
+    private boolean pooled;
+    @Value("${accountProvision.httpClient.maxConnections:10}")
+    private int maxConnections;
+    @Value("${accountProvision.httpClient.connectionTtl:300000}")
+    private long connectionTtl;
+    @Value("${accountProvision.httpClient.idleTimeout:60000}")
+    private long idleTimeout;
+    @Value("${accountProvision.httpClient.compression:true}")
+    private boolean compression;
+    @Value("${accountProvision.httpClient.http2:false}")
+    private boolean http2;
+    private final long connectionTimeout;
+    private final long readTimeout;
+    private ClientHttpRequestFactory requestFactory;
+    private SyncMetrics metrics = SyncMetrics.NOOP;
+    // How long, in milliseconds, pages gathered by a failed sync are kept for the next sync to resume from.
+    // 0 disables it.
+    @Value("${accountProvision.checkpointExpiry:600000}")
+    private long checkpointExpiry;
+    private SyncCheckpoint checkpoint;
+    // File the accounts of the last successful sync are kept in across restarts. Disabled when empty.
+    @Value("${accountProvision.snapshotFile:}")
+    private String snapshotFile;
+    // Set when pushes or lookups changed the accounts since the snapshot file was written. Written by the next sync,
+    // so bursts of pushes and lookups don't each write every account.
+    private boolean snapshotDirty;
+    // Threads converting the accounts of pages once a sync returned at least conversionParallelThreshold accounts. 0 or
+    // 1 converts on the syncing thread, and so does streaming.
+    @Value("${accountProvision.conversionParallelism:0}")
+    private int conversionParallelism;
+    @Value("${accountProvision.conversionParallelThreshold:5000}")
+    private int conversionParallelThreshold;
+    private ExecutorService conversionExecutor;
+    // Query strings of partitions of the remote host, each synced concurrently with its own watermark and backoff.
+    @Value("${accountProvision.partitions:}")
+    private String[] partitions = new String[0];
+    @Value("${accountProvision.partitionSyncTimeout:60000}")
+    private long partitionSyncTimeout;
+    private volatile SyncPartitions syncPartitions;
+    // Accounts changed by pushes and lookups while partitions are used, by key. Partitions may return them much later,
+    // or never when UpdatedAt is older than their watermark, so they are laid over the merged partitions until a
+    // partition does. null accounts were deleted.
+    private final Map<String, Applied<AccountsConfiguration.Account>> appliedEc2 = new HashMap<>();
+    private final Map<String, Applied<ECSCredentialsConfig.Account>> appliedEcs = new HashMap<>();
+    // When account changes are pushed to the webhook, the remote host is only polled every webhookPollInterval
+    // milliseconds to catch up on changes that were not pushed.
+    @Value("${accountProvision.webhook.enabled:false}")
+    private boolean webhookEnabled;
+    @Value("${accountProvision.webhook.pollInterval:600000}")
+    private long webhookPollInterval;
+    private Instant lastPoll;
+    // When the last successful poll started.
+    private Instant lastPollStart;
+    // Polls returning no changes space out the next poll up to adaptivePolling.maxInterval milliseconds. 0 polls
+    // whenever credentials are loaded.
+    @Value("${accountProvision.adaptivePolling.minInterval:0}")
+    private long minPollInterval;
+    @Value("${accountProvision.adaptivePolling.maxInterval:0}")
+    private long maxPollInterval;
+    // Consecutive failures after which the remote host is left alone for circuitBreaker.openDuration milliseconds.
+    // 0 disables the circuit breaker.
+    @Value("${accountProvision.circuitBreaker.failureThreshold:0}")
+    private int circuitFailureThreshold;
+    @Value("${accountProvision.circuitBreaker.openDuration:300000}")
+    private long circuitOpenDuration;
+    private final AtomicReference<PollScheduler> pollScheduler = new AtomicReference<>();
+    // How many sync reports are kept for the actuator endpoint.
+    @Value("${accountProvision.syncReports:20}")
+    private int syncReportCount;
+    private final AtomicReference<SyncReports> syncReports = new AtomicReference<>();
+    // URL returning a single account, with {name} standing for its name. Accounts missing from the credentials
+    // repository are looked up there instead of polling the remote host. Disabled when empty.
+    @Value("${accountProvision.accountUrl:}")
+    private String accountUrl;
+    // Names looked up at accountUrl. Anything else could change the path or query of the signed request.
+    private static final Pattern LOOKUP_NAME = Pattern.compile("[A-Za-z0-9][A-Za-z0-9._~-]*");
+    // Syncs completed less than refreshMaxAge milliseconds ago are reused when accounts are asked for, so the EC2 and
+    // ECS credentials sources read the same sync. 0 syncs on every call unless a sync is running.
+    @Value("${accountProvision.refreshMaxAge:0}")
+    private long refreshMaxAge;
+    private final AtomicReference<RefreshCoordinator> refreshCoordinator = new AtomicReference<>();
+    private ExecutorService paginationExecutor;
     private AtomicInteger retryCount = new AtomicInteger(0);
     private Instant nextTry;
     private RestTemplate restTemplate;
@@ -91,163 +197,773 @@ public class AccountsStatus {
         this.accountsConfiguration = accountsConfiguration;
         this.credentialsConfig = credentialsConfig;
         this.remoteHostUrl = url;
-        this.restTemplate = new RestTemplateBuilder()
+        this.connectionTimeout = connectionTimeout;
+        this.readTimeout = readTimeout;
+        this.restTemplate = TimedMessageConverter.timeReads(new RestTemplateBuilder()
                 .interceptors(new PlusEncoderInterceptor())
                 .setConnectTimeout(Duration.ofMillis(connectionTimeout))
                 .setReadTimeout(Duration.ofMillis(readTimeout))
-                .build();
-        this.ec2Accounts = new HashMap<>();
-        this.ecsAccounts = new HashMap<>();
+                .build(), nanos -> metrics.recordDeserialization(nanos));
         this.initialSync = true;
     }
 
+    /**
+     * Replaces the default request factory with a pooled keep-alive or HTTP/2 client, if enabled, once the HTTP client
+     * settings are set.
+     */
+    @Override
+    public void afterPropertiesSet() {
+        if (http2) {
+            requestFactory = RegistryHttpClients.http2(compression, connectionTimeout, readTimeout);
+        } else if (pooled) {
+            requestFactory = RegistryHttpClients.pooled(maxConnections, connectionTtl, idleTimeout, compression,
+                    connectionTimeout, readTimeout);
+        } else {
+            restoreSnapshot();
+            return;
+        }
+        log.info("Calling remote host with {}.", requestFactory.getClass().getSimpleName());
+        this.restTemplate = TimedMessageConverter.timeReads(new RestTemplateBuilder()
+                .requestFactory(() -> requestFactory)
+                .interceptors(new PlusEncoderInterceptor())
+                .build(), nanos -> metrics.recordDeserialization(nanos));
+        restoreSnapshot();
+    }
+
+    /**
+     * Publishes the accounts stored by a previous run, so they are available before the first sync. The next sync
+     * then only asks for accounts updated since.
+     */
+    synchronized void restoreSnapshot() {
+        if (snapshotFile == null || snapshotFile.isEmpty() || snapshot.get().getGeneration() > 0) {
+            return;
+        }
+        AccountsSnapshotStore.State state = new AccountsSnapshotStore(Paths.get(snapshotFile)).load(configFingerprint());
+        if (state == null || state.getLastSyncTime() == null) {
+            return;
+        }
+        Map<String, AccountsConfiguration.Account> ec2 = new LinkedHashMap<>();
+        state.getEc2Accounts().forEach(account -> ec2.put(account.getName(), AccountInterner.compact(account)));
+        Map<String, ECSCredentialsConfig.Account> ecs = new LinkedHashMap<>();
+        state.getEcsAccounts().forEach(account -> ecs.put(account.getName(), account));
+        snapshot.set(AccountsSnapshot.EMPTY.next(ec2, ecs, state.getLastSyncTime()));
+        lastAttemptedTIme = state.getLastSyncTime();
+        pageValidators = new HashMap<>(state.getPageValidators());
+        markSynced();
+        log.info("Restored {} EC2 and {} ECS accounts synced up to {} from {}.",
+                ec2.size(), ecs.size(), lastSyncTime, snapshotFile);
+    }
+
+    private void persistSnapshot() {
+        snapshotDirty = false;
+        if (snapshotFile == null || snapshotFile.isEmpty()) {
+            return;
+        }
+        AccountsSnapshot current = snapshot.get();
+        AccountsSnapshotStore.State state = new AccountsSnapshotStore.State();
+        state.setConfigFingerprint(configFingerprint());
+        state.setLastSyncTime(lastSyncTime);
+        state.setEc2Accounts(current.getEc2AccountsList());
+        state.setEcsAccounts(current.getEcsAccountsList());
+        state.setPageValidators(pageValidators);
+        try {
+            new AccountsSnapshotStore(Paths.get(snapshotFile)).save(state);
+        } catch (Exception e) {
+            log.warn("Could not write account snapshot to {}: {}", snapshotFile, e.getMessage());
+        }
+    }
+
+    // Stored accounts were converted from this configuration. Any change to it invalidates them.
+    private String configFingerprint() {
+        Map<String, Object> config = new LinkedHashMap<>();
+        config.put("url", remoteHostUrl);
+        config.put("credentials", credentialsConfig);
+        config.put("accounts", accountsConfiguration.getAccounts());
+        config.put("ecsAccounts", ecsCredentialsConfig == null ? null : ecsCredentialsConfig.getAccounts());
+        HashCode fingerprint = AccountFingerprint.of(config);
+        return fingerprint == null ? null : fingerprint.toString();
+    }
+
+    @Autowired(required = false)
+    void setRegistry(Registry registry) {
+        this.metrics = new SyncMetrics(registry);
+        this.metrics.monitor(this);
+    }
+
     @Autowired(required = false)
     void setECSCredentialsConfig(ECSCredentialsConfig ecsCredentialsConfig) {
         this.ecsCredentialsConfig = ecsCredentialsConfig;
     }
 
+    /**
+     * @return accounts published by the last successful sync. Safe to call from any thread.
+     */
+    public AccountsSnapshot getSnapshot() {
+        return snapshot.get();
+    }
+
+    public boolean hasChangedSince(long generation) {
+        return snapshot.get().hasChangedSince(generation);
+    }
+
+    public long getGeneration() {
+        return snapshot.get().getGeneration();
+    }
+
+    public Map<String, AccountsConfiguration.Account> getEc2Accounts() {
+        return snapshot.get().getEc2Accounts();
+    }
+
+    public Map<String, ECSCredentialsConfig.Account> getEcsAccounts() {
+        return snapshot.get().getEcsAccounts();
+    }
+
     public List<AccountsConfiguration.Account> getEC2AccountsAsList() {
-        return ImmutableList.copyOf(ec2Accounts.values());
+        return snapshot.get().getEc2AccountsList();
     }
 
     public List<ECSCredentialsConfig.Account> getECSAccountsAsList() {
-        return ImmutableList.copyOf(ecsAccounts.values());
+        return snapshot.get().getEcsAccountsList();
+    }
+
+    /**
+     * Syncs with the remote host unless a sync completed less than {@code refreshMaxAge} milliseconds ago.
+     *
+     * @return true if accounts were updated.
+     * @see #refresh(long)
+     */
+    public boolean getDesiredAccounts() {
+        return refresh(refreshMaxAge);
+    }
+
+    /**
+     * Syncs with the remote host unless a sync completed less than {@code maxAge} milliseconds ago. Callers asking
+     * while a sync is running wait for it and share its result instead of syncing again.
+     *
+     * @return true if the sync that was run or joined updated accounts.
+     */
+    public boolean refresh(long maxAge) {
+        RefreshCoordinator coordinator = refreshCoordinator.get();
+        if (coordinator == null) {
+            refreshCoordinator.compareAndSet(null, new RefreshCoordinator(this::sync, Clock.systemUTC()));
+            coordinator = refreshCoordinator.get();
+        }
+        return coordinator.refresh(maxAge);
     }
 
-    public synchronized boolean getDesiredAccounts() {
+    private synchronized boolean sync() {
+        try {
+            return syncWithRemoteHost();
+        } finally {
+            if (snapshotDirty) {
+                persistSnapshot();
+            }
+        }
+    }
+
+    private boolean syncWithRemoteHost() {
+        if (webhookEnabled && lastPoll != null && Instant.now().isBefore(lastPoll.plusMillis(webhookPollInterval))) {
+            log.debug("Account changes are pushed. Will not poll the remote host until {}.",
+                    lastPoll.plusMillis(webhookPollInterval));
+            return false;
+        }
+        if (partitions != null && partitions.length > 0) {
+            boolean updated = syncPartitions();
+            if (updated) {
+                lastPoll = Instant.now();
+            }
+            return updated;
+        }
         if (nextTry != null && Instant.now().isBefore(nextTry)) {
             log.debug("In backoff time. Will not attempt to retrieve accounts.");
+            metrics.recordBackoffSkip();
             return false;
         }
-        if (lastSyncTime != null) {
-            log.info("Last time synced with remote host is: {}", lastSyncTime);
-        } else {
-            log.info("Last sync time is not set. Will perform a full sync.");
+        if (!getPollScheduler().isDue(Instant.now())) {
+            log.debug("Recent polls returned no changes. Will not poll the remote host until {}.",
+                    getPollScheduler().getState().getNextPoll());
+            return false;
+        }
+        long start = System.nanoTime();
+        Instant started = Instant.now();
+        int failures = retryCount.get();
+        String result = "failure";
+        SyncReport.Builder report = SyncReport.builder("poll", remoteHostUrl);
+        try {
+            boolean updated = syncAccounts(report);
+            result = updated ? "updated" : retryCount.get() > failures ? "failure" : "unchanged";
+            if (!"failure".equals(result)) {
+                lastPoll = Instant.now();
+                lastPollStart = started;
+                getPollScheduler().succeeded(updated, lastPoll);
+            }
+            return updated;
+        } catch (RuntimeException e) {
+            report.error(e.getMessage());
+            throw e;
+        } finally {
+            metrics.recordSync(System.nanoTime() - start, result);
+            addReport(report.build(result));
+        }
+    }
+
+    private void addReport(SyncReport report) {
+        log.info("{}", report);
+        getSyncReports().add(report);
+    }
+
+    /**
+     * @return reports of the last syncs and pushes, most recent first.
+     */
+    public List<SyncReport> getReports() {
+        return getSyncReports().getReports();
+    }
+
+    private SyncReports getSyncReports() {
+        SyncReports reports = syncReports.get();
+        if (reports == null) {
+            syncReports.compareAndSet(null, new SyncReports(syncReportCount));
+            reports = syncReports.get();
+        }
+        return reports;
+    }
+
+    // Sync metrics are recorded by every partition, the merged accounts are published here.
+    private boolean syncPartitions() {
+        if (syncPartitions == null) {
+            syncPartitions = new SyncPartitions(Arrays.asList(partitions), this::newPartition, partitionSyncTimeout);
+        }
+        try {
+            if (!syncPartitions.sync()) {
+                return false;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            log.error("Interrupted while syncing partitions.");
+            return false;
         }
+        SyncReport.Builder report = SyncReport.builder("partitions", remoteHostUrl);
+        SyncPartitions.Merged merged = syncPartitions.merge(snapshot.get());
+        overlay(appliedEc2, merged.getEc2Accounts(), AccountsSnapshot::getEc2Accounts);
+        overlay(appliedEcs, merged.getEcsAccounts(), AccountsSnapshot::getEcsAccounts);
+        AccountsSnapshot next = snapshot.get().next(merged.getEc2Accounts(), merged.getEcsAccounts(), merged.getWatermark());
+        snapshot.set(next);
+        addReport(report.published(next).build("updated"));
+        this.lastAttemptedTIme = merged.getWatermark();
+        markSynced();
+        persistSnapshot();
+        return true;
+    }
+
+    private <T> void overlay(Map<String, Applied<T>> applied, Map<String, T> merged,
+                             Function<AccountsSnapshot, Map<String, T>> accounts) {
+        applied.entrySet().removeIf(entry -> syncPartitions.hasReported(
+                accounts::apply, entry.getKey(), entry.getValue().account == null, entry.getValue().at));
+        applied.forEach((key, change) -> {
+            if (change.account == null) {
+                merged.remove(key);
+            } else {
+                merged.put(key, change.account);
+            }
+        });
+    }
+
+    private static <T> void remember(Map<String, T> before, Map<String, T> after, Instant at,
+                                     Map<String, Applied<T>> applied) {
+        before.forEach((key, account) -> {
+            if (!after.containsKey(key)) {
+                applied.put(key, new Applied<>(at, null));
+            }
+        });
+        after.forEach((key, account) -> {
+            if (!Objects.equals(account, before.get(key))) {
+                applied.put(key, new Applied<>(at, account));
+            }
+        });
+    }
+
+    /**
+     * @return number of partitions that did not sync successfully yet. 0 when partitions are not used.
+     */
+    public int getUnsyncedPartitionCount() {
+        SyncPartitions current = syncPartitions;
+        return current == null ? 0 : current.getUnsynced().size();
+    }
+
+    /**
+     * Applies accounts pushed by the remote host on top of the published accounts. Pushed accounts are validated and
+     * converted like the accounts of a page. The {@code UpdatedAt} watermark is left alone, so the next poll still
+     * returns every account updated since the last one, including changes that were never pushed.
+     *
+     * @return the published snapshot, or null if nothing was applied because no sync succeeded yet.
+     */
+    public synchronized AccountsSnapshot applyPushedAccounts(Response pushed) {
+        if (initialSync) {
+            // Static accounts are only resolved against the first full sync. Pushes can't stand in for it.
+            log.info("Ignoring {} pushed accounts until the first sync with the remote host.", pushed.getAccounts().size());
+            return null;
+        }
+        return apply(pushed, SyncReport.builder("push", remoteHostUrl));
+    }
+
+    /**
+     * Result of {@link #fetchAccount(String)}.
+     */
+    public enum Lookup {
+        FOUND, NOT_FOUND, FAILED
+    }
+
+    /**
+     * Looks up a single account at {@code accountUrl} and publishes it on top of the published accounts, like a
+     * pushed account. The {@code UpdatedAt} watermark is left alone.
+     *
+     * @return FAILED if the account could not be looked up, e.g. because {@code accountUrl} is not set, no sync
+     * succeeded yet, the remote host is being backed off from or the name contains characters other than letters,
+     * digits, {@code .}, {@code _}, {@code ~} and {@code -}.
+     */
+    public synchronized Lookup fetchAccount(String name) {
+        if (accountUrl == null || accountUrl.isEmpty() || initialSync || name == null) {
+            return Lookup.FAILED;
+        }
+        if (snapshot.get().getEc2Accounts().containsKey(name)) {
+            return Lookup.FOUND;
+        }
+        if (!LOOKUP_NAME.matcher(name).matches() || name.contains("..")) {
+            log.debug("Will not look up account, {}, by name.", name);
+            return Lookup.FAILED;
+        }
+        Instant now = Instant.now();
+        if ((nextTry != null && now.isBefore(nextTry))
+                || getPollScheduler().getState().getCircuit() == PollScheduler.Circuit.OPEN) {
+            log.debug("In backoff time. Will not look up account, {}.", name);
+            return Lookup.FAILED;
+        }
+        String url = accountUrl.replace("{name}", UriUtils.encodePathSegment(name, StandardCharsets.UTF_8));
+        SyncReport.Builder report = SyncReport.builder("lookup", url);
         Response response;
         try {
-            response = getResourceFromRemoteHost(remoteHostUrl);
+            log.debug("Looking up account, {}, at {}.", name, url);
+            response = iamAuth ? getResourceFromApiGateway(url, new HttpHeaders(), null, null)
+                    : getResources(url, new HttpHeaders(), null, null);
+        } catch (HttpClientErrorException.NotFound e) {
+            response = new Response();
         } catch (Exception e) {
-            log.error("Could not get account information from remote host.", e);
-            setBackoffTime();
-            return false;
+            log.error("Could not look up account, {}: {}", name, e.getMessage());
+            addReport(report.error(e.getMessage()).build("failure"));
+            return Lookup.FAILED;
         }
         if (response == null) {
-            setBackoffTime();
-            return false;
+            addReport(report.error("invalid response from " + url).build("failure"));
+            return Lookup.FAILED;
         }
-        
-        // Handle null or empty accounts lists
-        if (response.getAccounts() == null) {
-            log.warn("Response accounts list is null, treating as empty list");
-            response.setAccounts(new ArrayList<>());
+        List<Account> accounts = new ArrayList<>();
+        if (response.getAccounts() != null) {
+            // Filtering endpoints may return other accounts as well. Those are left to the next poll.
+            response.getAccounts().stream().filter(account -> name.equals(account.getName())).forEach(accounts::add);
+        }
+        response.setAccounts(accounts);
+        response.setPagination(null);
+        apply(response, report);
+        return snapshot.get().getEc2Accounts().containsKey(name) ? Lookup.FOUND : Lookup.NOT_FOUND;
+    }
+
+    private AccountsSnapshot apply(Response pushed, SyncReport.Builder report) {
+        PageAccumulator pages = new PageAccumulator(credentialsConfig);
+        report.pages(pages);
+        pages.addPage(pushed);
+        metrics.recordOutcomes(pages.getOutcomes());
+        Response converted = pages.getConverted();
+        AccountsSnapshot current = snapshot.get();
+        if (!converted.finishConversion()) {
+            addReport(report.build("unchanged"));
+            return current;
+        }
+        Instant at = Instant.now();
+        publish(converted.getEc2Accounts(), converted.getEcsAccounts(), converted.getDeletedAccounts(),
+                converted.getAccountsToCheck(), current.getEc2AccountsList(), current.getEcsAccountsList(),
+                current.getWatermark());
+        if (partitions != null && partitions.length > 0) {
+            remember(current.getEc2Accounts(), snapshot.get().getEc2Accounts(), at, appliedEc2);
+            remember(current.getEcsAccounts(), snapshot.get().getEcsAccounts(), at, appliedEcs);
+        }
+        snapshotDirty = true;
+        addReport(report.published(snapshot.get()).build("updated"));
+        return snapshot.get();
+    }
+
+    private AccountsStatus newPartition(String query) {
+        String url = remoteHostUrl + (remoteHostUrl.contains("?") ? "&" : "?") + query;
+        AccountsStatus partition = new AccountsStatus(accountsConfiguration, credentialsConfig, url, connectionTimeout, readTimeout);
+        partition.setECSCredentialsConfig(ecsCredentialsConfig);
+        partition.setRestTemplate(restTemplate);
+        partition.setIamAuth(iamAuth);
+        partition.setRegion(region);
+        partition.setMaxBackoffTime(maxBackoffTime);
+        partition.setMaxPagesInFlight(maxPagesInFlight);
+        partition.setStreaming(streaming);
+        partition.setConditionalRequests(conditionalRequests);
+        partition.setCheckpointExpiry(checkpointExpiry);
+        partition.setConversionParallelism(conversionParallelism);
+        partition.setConversionParallelThreshold(conversionParallelThreshold);
+        partition.setMinPollInterval(minPollInterval);
+        partition.setMaxPollInterval(maxPollInterval);
+        partition.setCircuitFailureThreshold(circuitFailureThreshold);
+        partition.setCircuitOpenDuration(circuitOpenDuration);
+        partition.setMetrics(metrics);
+        // Partition syncs are reported along with the merged accounts.
+        partition.syncReports.set(getSyncReports());
+        return partition;
+    }
+
+    private boolean syncAccounts(SyncReport.Builder report) {
+        if (lastSyncTime != null) {
+            log.info("Last time synced with remote host is: {}", lastSyncTime);
+        } else {
+            log.info("Last sync time is not set. Will perform a full sync.");
+        }
+        PageAccumulator pages;
+        String nextUrl;
+        SyncCheckpoint resumed = takeCheckpoint();
+        if (resumed != null) {
+            pages = resumed.getPages();
+            nextUrl = resumed.getNextUrl();
+            report.pages(pages);
+            log.info("Resuming sync at {} after {} pages with accounts updated up to {}.",
+                    nextUrl, pages.getPageCount(), pages.getMostRecentTime());
+        } else {
+            pages = new PageAccumulator(credentialsConfig, getParallelConversion());
+            report.pages(pages);
+            Response response;
+            try {
+                response = getResourceFromRemoteHost(remoteHostUrl, pages);
+            } catch (Exception e) {
+                log.error("Could not get account information from remote host.", e);
+                report.error(e.getMessage());
+                setBackoffTime();
+                return false;
+            }
+            if (response == null) {
+                report.error("invalid response from " + remoteHostUrl);
+                setBackoffTime();
+                return false;
+            }
+            pages.addPage(response);
+            nextUrl = response.getPagination() == null ? null : response.getPagination().getNextUrl();
         }
-        
+
         // Process pagination if present
-        if (response.getPagination() != null && !"".equals(response.getPagination().getNextUrl())) {
-            String nextUrl = response.getPagination().getNextUrl();
-            // Create a mutable copy of the accounts list to avoid UnsupportedOperationException
-            // Also handle the case where getAccounts() might return null
-            List<Account> accounts = new ArrayList<>(response.getAccounts());
-            while (nextUrl != null && !"".equals(nextUrl)) {
-                log.info("Calling next URL, {}", nextUrl);
-                Response nextResponse = getResourceFromRemoteHost(nextUrl);
-                if (nextResponse != null) {
-                    // Handle null accounts list from nextResponse
-                    if (nextResponse.getAccounts() != null) {
-                        accounts.addAll(nextResponse.getAccounts());
-                    } else {
-                        log.warn("Next page response accounts list is null");
-                    }
-                    if (nextResponse.getPagination() == null) {
-                        nextUrl = null;
-                        continue;
-                    }
-                    nextUrl = nextResponse.getPagination().getNextUrl();
-                    continue;
+        if (nextUrl != null && !"".equals(nextUrl)) {
+            try {
+                if (!getRemainingPages(nextUrl, pages)) {
+                    report.error("could not get every page");
+                    setBackoffTime();
+                    return false;
                 }
-                nextUrl = null;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                log.error("Interrupted while gathering accounts from remote host.");
+                return false;
             }
-            response.setAccounts(accounts);
         }
-        
+
         // Check if the accounts list is empty after all processing
-        if (response.getAccounts().isEmpty()) {
+        if (pages.getAccountCount() == 0) {
+            if (pages.getNotModifiedPageCount() > 0) {
+                log.info("Remote host reported {} of {} pages as not modified. Nothing to update.",
+                        pages.getNotModifiedPageCount(), pages.getPageCount());
+                retryCount.set(0);
+                nextTry = null;
+                return false;
+            }
             log.info("Returned response contained empty accounts.");
             return false;
         }
-        log.info("Finished gathering accounts from remote host. Processing {} accounts.", response.getAccounts().size());
-        log.debug(response.getAccounts().toString());
-        String mostRecentTime = findMostRecentTime(response);
+        String mostRecentTime = pages.getMostRecentTime();
         if (mostRecentTime == null) {
             log.error("Failed to find most recent timestamp in payload.");
+            report.error("no valid UpdatedAt timestamp");
             return false;
         }
-        log.info("Setting last sync attempt time to {}", mostRecentTime);
         this.lastAttemptedTIme = mostRecentTime;
-        log.info("Converting {} accounts to Spinnaker account types.", response.getAccounts().size());
-        if (response.convertCredentials(credentialsConfig)) {
-            buildDesiredAccountConfig(response.getEc2Accounts(), response.getEcsAccounts(), response.getDeletedAccounts(),
-                    response.getAccountsToCheck());
+        Response converted = pages.getConverted();
+        metrics.recordOutcomes(pages.getOutcomes());
+        long conversionStart = System.nanoTime();
+        boolean hasChanges = converted.finishConversion();
+        metrics.recordConversion(pages.getConversionNanos() + System.nanoTime() - conversionStart);
+        if (hasChanges) {
+            long buildStart = System.nanoTime();
+            buildDesiredAccountConfig(converted.getEc2Accounts(), converted.getEcsAccounts(), converted.getDeletedAccounts(),
+                    converted.getAccountsToCheck());
+            metrics.recordBuildConfig(System.nanoTime() - buildStart);
+            report.published(snapshot.get());
             markSynced();
+            if (conditionalRequests) {
+                pageValidators = new HashMap<>(pages.getValidators());
+            }
+            persistSnapshot();
             return true;
         }
         log.info("No valid accounts to process.");
         return false;
     }
 
-    private void buildDesiredAccountConfig(HashMap<String, AccountsConfiguration.Account> ec2AccountsFromRemote,
-                                           HashMap<String, ECSCredentialsConfig.Account> ecsAccountsFromRemote,
-                                           List<String> deletedAccounts, List<String> accountsToCheck) {
+    // Follows the NextUrl chain starting at the given page. When a page can't be retrieved, the pages gathered so far
+    // are kept as a checkpoint the next sync resumes from.
+    private boolean getRemainingPages(String firstUrl, PageAccumulator pages) throws InterruptedException {
+        AtomicReference<String> requestedUrl = new AtomicReference<>(firstUrl);
+        AtomicInteger accountsBeforeRequest = new AtomicInteger(pages.getAccountCount());
+        Function<String, Response> fetcher = url -> {
+            requestedUrl.set(url);
+            accountsBeforeRequest.set(pages.getAccountCount());
+            return getResourceFromRemoteHost(url, pages);
+        };
+        try {
+            // Streamed pages are converted while they are read, so there is nothing to overlap with fetching ahead.
+            if (maxPagesInFlight > 0 && !streaming) {
+                AtomicReference<String> lastNextUrl = new AtomicReference<>(firstUrl);
+                new PaginationPipeline(getPaginationExecutor(), maxPagesInFlight).run(firstUrl, fetcher, page -> {
+                    pages.addPage(page);
+                    lastNextUrl.set(page.getPagination() == null ? null : page.getPagination().getNextUrl());
+                });
+                if (lastNextUrl.get() == null || "".equals(lastNextUrl.get())) {
+                    return true;
+                }
+            } else {
+                String nextUrl = firstUrl;
+                while (nextUrl != null && !"".equals(nextUrl)) {
+                    log.info("Calling next URL, {}", nextUrl);
+                    Response nextResponse = fetcher.apply(nextUrl);
+                    if (nextResponse == null) {
+                        break;
+                    }
+                    pages.addPage(nextResponse);
+                    nextUrl = nextResponse.getPagination() == null ? null : nextResponse.getPagination().getNextUrl();
+                }
+                if (nextUrl == null || "".equals(nextUrl)) {
+                    return true;
+                }
+            }
+        } catch (RuntimeException e) {
+            // Counted like a failed first page, so the backoff and the circuit breaker see it.
+            saveCheckpoint(pages, requestedUrl.get(), accountsBeforeRequest.get());
+            setBackoffTime();
+            throw e;
+        }
+        log.error("Could not get account information from {}.", requestedUrl.get());
+        saveCheckpoint(pages, requestedUrl.get(), accountsBeforeRequest.get());
+        return false;
+    }
+
+    private void saveCheckpoint(PageAccumulator pages, String failedUrl, int accountsBeforeRequest) {
+        if (checkpointExpiry <= 0) {
+            return;
+        }
+        if (streaming && pages.getAccountCount() != accountsBeforeRequest) {
+            // Part of the failed page was streamed into the accumulator already. It would be converted twice.
+            log.info("Page {} failed after it was partially read. The next sync starts over.", failedUrl);
+            return;
+        }
+        checkpoint = new SyncCheckpoint(pages, failedUrl, lastSyncTime);
+        log.info("Kept {} pages with {} accounts. The next sync resumes at {}.",
+                pages.getPageCount(), pages.getAccountCount(), failedUrl);
+    }
+
+    // Returns the checkpoint left by the previous sync if it can be resumed, and clears it.
+    private SyncCheckpoint takeCheckpoint() {
+        SyncCheckpoint previous = checkpoint;
+        checkpoint = null;
+        if (previous == null) {
+            return null;
+        }
+        if (checkpointExpiry <= 0 || previous.isExpired(Instant.now(), Duration.ofMillis(checkpointExpiry))) {
+            log.info("Sync started at {} expired. Starting over.", previous.getPages().getStartedAt());
+            return null;
+        }
+        if (!Objects.equals(previous.getSince(), lastSyncTime)) {
+            log.info("Accounts were synced since the checkpoint at {} was taken. Starting over.", previous.getNextUrl());
+            return null;
+        }
+        return previous;
+    }
+
+    @Override
+    public synchronized void destroy() throws Exception {
+        if (snapshotDirty) {
+            persistSnapshot();
+        }
+        if (paginationExecutor != null) {
+            paginationExecutor.shutdownNow();
+            paginationExecutor = null;
+        }
+        if (conversionExecutor != null) {
+            conversionExecutor.shutdownNow();
+            conversionExecutor = null;
+        }
+        if (syncPartitions != null) {
+            syncPartitions.destroy();
+            syncPartitions = null;
+        }
+        if (requestFactory instanceof DisposableBean) {
+            ((DisposableBean) requestFactory).destroy();
+        }
+    }
+
+    private synchronized ParallelConversion getParallelConversion() {
+        if (conversionParallelism <= 1) {
+            return null;
+        }
+        if (conversionExecutor == null) {
+            conversionExecutor = Executors.newFixedThreadPool(conversionParallelism, new ThreadFactoryBuilder()
+                    .setNameFormat("account-registration-conversion-%d")
+                    .setDaemon(true)
+                    .build());
+        }
+        return new ParallelConversion(conversionExecutor, conversionParallelism, conversionParallelThreshold);
+    }
+
+    /**
+     * @return when the remote host is polled next and whether the circuit is open.
+     */
+    public PollScheduler getPollScheduler() {
+        PollScheduler scheduler = pollScheduler.get();
+        if (scheduler == null) {
+            pollScheduler.compareAndSet(null, new PollScheduler(minPollInterval, maxPollInterval, maxBackoffTime,
+                    circuitFailureThreshold, circuitOpenDuration));
+            scheduler = pollScheduler.get();
+        }
+        return scheduler;
+    }
+
+    private synchronized ExecutorService getPaginationExecutor() {
+        if (paginationExecutor == null) {
+            paginationExecutor = Executors.newSingleThreadExecutor(new ThreadFactoryBuilder()
+                    .setNameFormat("account-registration-pagination-%d")
+                    .setDaemon(true)
+                    .build());
+        }
+        return paginationExecutor;
+    }
+
+    void buildDesiredAccountConfig(HashMap<String, AccountsConfiguration.Account> ec2AccountsFromRemote,
+                                   HashMap<String, ECSCredentialsConfig.Account> ecsAccountsFromRemote,
+                                   List<String> deletedAccounts, List<String> accountsToCheck) {
         // Always use external source as credentials repo's correct state.
         // AccountsConfiguration should be considered on initial sync only since it contains accounts from local file only.
         if (accountsConfiguration.getAccounts() == null) {
             log.error("Current configured accounts is null. Very likely this is a configuration issue.");
             return;
         }
-        log.debug("Current configured EC2 accounts: {}", getEC2AccountsAsList().stream()
-                .map(AccountsConfiguration.Account::getName).collect(Collectors.toList()));
-        log.debug("Current configured ECS accounts: {}", getECSAccountsAsList().stream()
-                .map(ECSCredentialsConfig.Account::getName).collect(Collectors.toList()));
+        AccountsSnapshot current = snapshot.get();
+        List<AccountsConfiguration.Account> currentEc2 = current.getEc2AccountsList();
+        List<ECSCredentialsConfig.Account> currentEcs = current.getEcsAccountsList();
         if (initialSync) {
-            log.debug("Initial sync. EC2 Accounts from file {}", accountsConfiguration.getAccounts().stream()
-                    .map(AccountsConfiguration.Account::getName).collect(Collectors.toList()));
-            log.debug("Initial sync. ECS Accounts from file {}", ecsCredentialsConfig.getAccounts().stream()
-                    .map(ECSCredentialsConfig.Account::getName).collect(Collectors.toList()));
-            resolveAccounts(ec2AccountsFromRemote, accountsConfiguration.getAccounts(), deletedAccounts);
-            resolveAccounts(ecsAccountsFromRemote, ecsCredentialsConfig.getAccounts(), deletedAccounts);
-        } else {
-            resolveAccounts(ec2AccountsFromRemote, getEC2AccountsAsList(), deletedAccounts);
-            resolveAccounts(ecsAccountsFromRemote, getECSAccountsAsList(), deletedAccounts);
+            currentEc2 = accountsConfiguration.getAccounts();
+            currentEcs = ecsCredentialsConfig.getAccounts();
+            log.debug("Initial sync. Resolving remote accounts against {} EC2 and {} ECS accounts from file.",
+                    currentEc2.size(), currentEcs == null ? 0 : currentEcs.size());
+        }
+        publish(ec2AccountsFromRemote, ecsAccountsFromRemote, deletedAccounts, accountsToCheck, currentEc2, currentEcs,
+                lastAttemptedTIme);
+    }
+
+    // Resolves converted accounts against the current ones and publishes the result.
+    private void publish(HashMap<String, AccountsConfiguration.Account> ec2AccountsFromRemote,
+                         HashMap<String, ECSCredentialsConfig.Account> ecsAccountsFromRemote,
+                         List<String> deletedAccounts, List<String> accountsToCheck,
+                         List<AccountsConfiguration.Account> currentEc2, List<ECSCredentialsConfig.Account> currentEcs,
+                         String watermark) {
+        AccountReconciler.Result reconciled = new AccountReconciler(deletedAccounts, accountsToCheck)
+                .reconcile(ec2AccountsFromRemote, ecsAccountsFromRemote, currentEc2, currentEcs);
+        log.debug("Reconciled remote accounts with current accounts: {}", reconciled);
+        if (log.isDebugEnabled()) {
+            log.debug("Accounts to be in credentials source: {}", ec2AccountsFromRemote.keySet());
+            log.debug("ECS accounts to be in ECS credential source: {}", ecsAccountsFromRemote.keySet());
         }
+        snapshot.set(snapshot.get().next(ec2AccountsFromRemote, ecsAccountsFromRemote, watermark));
+    }
 
-        // Ensure ECS account, which did not contain "ecs" in providers field in payload but ec2 account is to be kept, are removed.
-        for (String ecsAccountsToRemove : accountsToCheck) {
-            String ecsAccountName = ecsAccountsToRemove + "-ecs";
-            log.info("ECS account, {}, will be removed.", ecsAccountName);
-            ecsAccountsFromRemote.remove(ecsAccountName);
+    // When streaming is enabled, accounts are converted into the given pages while the response body is read and the
+    // returned response contains pagination information only.
+    // When conditional requests are enabled and the page was not modified since the last sync, the returned response
+    // contains no accounts and continues with the NextUrl the page had then.
+    private Response getResourceFromRemoteHost(String url, PageAccumulator pages) {
+        long start = System.nanoTime();
+        int notModifiedBefore = pages.getNotModifiedPageCount();
+        String result = "failure";
+        try {
+            Response response = fetchPage(url, pages);
+            if (response != null) {
+                result = pages.getNotModifiedPageCount() > notModifiedBefore ? "notModified" : "success";
+            }
+            return response;
+        } finally {
+            metrics.recordPageFetch(System.nanoTime() - start, result);
         }
-        log.debug("Accounts to be in credentials source: {}", ec2AccountsFromRemote.keySet());
-        log.debug("ECS accounts to be in ECS credential source: {}", ecsAccountsFromRemote.keySet());
-        log.info("EC2 accounts to be removed: {}. To be added {}", Sets.difference(ec2Accounts.keySet(), ec2AccountsFromRemote.keySet()), Sets.difference(ec2AccountsFromRemote.keySet(), ec2Accounts.keySet()));
-        log.info("ECS accounts to be removed: {}. To be added {}", Sets.difference(ecsAccounts.keySet(), ecsAccountsFromRemote.keySet()), Sets.difference(ecsAccountsFromRemote.keySet(), ecsAccounts.keySet()));
-        this.setEc2Accounts(ec2AccountsFromRemote);
-        this.setEcsAccounts(ecsAccountsFromRemote);
     }
 
-    private Response getResourceFromRemoteHost(String url) {
+    private Response fetchPage(String url, PageAccumulator pages) {
         log.info("Getting account information from {}.", url);
+        ResponseExtractor<Response> extractor = null;
+        int accountsBefore = 0;
+        if (streaming) {
+            accountsBefore = pages.getAccountCount();
+            extractor = timed(new StreamingResponseExtractor(pages::addAccount));
+        }
+        String updatedAfter = lastSyncTime;
+        HttpHeaders conditionalHeaders = new HttpHeaders();
+        ConditionalResponseExtractor conditional = null;
+        PageValidators previousValidators = null;
+        String requestUrl = null;
+        if (conditionalRequests) {
+            // The same page filtered by another watermark is another resource.
+            requestUrl = requestUrl(url, updatedAfter);
+            previousValidators = pageValidators.get(requestUrl);
+            if (previousValidators != null) {
+                if (previousValidators.getEtag() != null) {
+                    conditionalHeaders.setIfNoneMatch(previousValidators.getEtag());
+                }
+                if (previousValidators.getLastModified() != null) {
+                    conditionalHeaders.set(HttpHeaders.IF_MODIFIED_SINCE, previousValidators.getLastModified());
+                }
+            }
+            // The message converters of restTemplate time reading the page.
+            conditional = new ConditionalResponseExtractor(extractor != null ? extractor :
+                    new HttpMessageConverterExtractor<>(Response.class, restTemplate.getMessageConverters()));
+            extractor = conditional;
+        }
         Response response;
         if (iamAuth) {
-            response = getResourceFromApiGateway(url);
+            response = getResourceFromApiGateway(url, conditionalHeaders, extractor, updatedAfter);
         } else {
-            response = getResources(url);
+            response = getResources(url, conditionalHeaders, extractor, updatedAfter);
+        }
+
+        if (conditional != null && conditional.isNotModified()) {
+            if (previousValidators == null) {
+                log.error("Remote host returned 304 Not Modified for {} without a conditional request.", url);
+                return null;
+            }
+            log.info("Accounts at {} were not modified since the last sync.", url);
+            pages.pageNotModified();
+            pages.addValidators(requestUrl, previousValidators);
+            return previousValidators.toUnmodifiedPage();
+        }
+        if (conditional != null && response != null) {
+            PageValidators validators = new PageValidators(conditional.getEtag(), conditional.getLastModified(),
+                    response.getPagination() == null ? null : response.getPagination().getNextUrl());
+            if (!validators.isEmpty()) {
+                pages.addValidators(requestUrl, validators);
+            }
         }
 
         if (response == null) {
             log.error("Response from remote host was invalid.");
             return null;
         }
+        if (streaming && pages.getAccountCount() > accountsBefore) {
+            log.info("Received a valid response from remote host.");
+            return response;
+        }
         if (response.getAccounts() == null || response.getAccounts().isEmpty()) {
             log.info("No accounts returned from remote host.");
             response.setAccounts(new ArrayList<>());
@@ -264,7 +980,8 @@ public class AccountsStatus {
         this.initialSync = false;
     }
 
-    private Response getResourceFromApiGateway(String url) {
+    private Response getResourceFromApiGateway(String url, HttpHeaders requestHeaders, ResponseExtractor<Response> extractor,
+                                               String updatedAfter) {
         if (this.headerGenerator == null) {
             makeHeaderGenerator(url);
             if (this.headerGenerator == null) {
@@ -272,7 +989,7 @@ public class AccountsStatus {
                 return null;
             }
         }
-        return callApiGateway(url);
+        return callApiGateway(url, requestHeaders, extractor, updatedAfter);
     }
 
     private void makeHeaderGenerator(String url) {
@@ -291,27 +1008,62 @@ public class AccountsStatus {
         );
     }
 
-    private Response getResources(String url) {
+    private static String requestUrl(String url, String updatedAfter) {
+        if (updatedAfter == null) {
+            return url;
+        }
+        return UriComponentsBuilder.fromHttpUrl(url).queryParam("UpdatedAt.gt", updatedAfter).toUriString();
+    }
+
+    private Response getResources(String url, HttpHeaders requestHeaders, ResponseExtractor<Response> extractor,
+                                  String updatedAfter) {
         UriComponentsBuilder builder = UriComponentsBuilder.fromHttpUrl(url);
-        if (lastSyncTime != null) {
-            builder.queryParam("UpdatedAt.gt", lastSyncTime);
+        if (updatedAfter != null) {
+            builder.queryParam("UpdatedAt.gt", updatedAfter);
+        }
+        if (extractor != null) {
+            return restTemplate.execute(builder.toUriString(), HttpMethod.GET, acceptJson(requestHeaders), extractor);
         }
         return restTemplate.getForObject(builder.toUriString(), Response.class);
     }
 
-    private Response callApiGateway(String url) {
+    // Reading a page through RestTemplate.getForObject or exchange can't be timed separately from fetching it.
+    private ResponseExtractor<Response> timed(ResponseExtractor<Response> extractor) {
+        return response -> {
+            long start = System.nanoTime();
+            try {
+                return extractor.extractData(response);
+            } finally {
+                metrics.recordDeserialization(System.nanoTime() - start);
+            }
+        };
+    }
+
+    private RequestCallback acceptJson(HttpHeaders headers) {
+        return request -> {
+            request.getHeaders().setAccept(Collections.singletonList(MediaType.APPLICATION_JSON));
+            request.getHeaders().addAll(headers);
+        };
+    }
+
+    private Response callApiGateway(String url, HttpHeaders requestHeaders, ResponseExtractor<Response> extractor,
+                                    String updatedAfter) {
         int retry = 0;
         while (retry <= 1) {
             try {
-                return doCallApiGateway(url);
+                return doCallApiGateway(url, requestHeaders, extractor, updatedAfter);
+            } catch (HttpClientErrorException.NotFound e) {
+                // Tells a lookup that the account doesn't exist. Polls handle it like other failed requests.
+                throw e;
             } catch (Exception e) {
                 if (e instanceof HttpClientErrorException) {
                     HttpClientErrorException ex = (HttpClientErrorException) e;
                     if (HttpStatus.FORBIDDEN == ex.getStatusCode()) {
                         log.info("Received 403 from API Gateway: {}", e.getMessage());
-                        makeHeaderGenerator(url);
-                        if (this.headerGenerator == null) {
-                            log.error("Failed to generate resources required for AWS Signature V4 to authenticate with API Gateway.");
+                        try {
+                            headerGenerator.refreshCredentials();
+                        } catch (Exception refreshException) {
+                            log.error("Failed to refresh AWS credentials required for AWS Signature V4 to authenticate with API Gateway.", refreshException);
                             break;
                         }
                         retry += 1;
@@ -325,26 +1077,30 @@ public class AccountsStatus {
         return null;
     }
 
-    private Response doCallApiGateway(String url) {
+    private Response doCallApiGateway(String url, HttpHeaders requestHeaders, ResponseExtractor<Response> extractor,
+                                      String updatedAfter) {
         UriComponentsBuilder builder = UriComponentsBuilder.fromHttpUrl(url);
         HashMap<String, List<String>> queryStrings = new HashMap<>();
         for (Map.Entry<String, List<String>> entry : builder.build().getQueryParams().entrySet()) {
             queryStrings.put(entry.getKey(), entry.getValue());
         }
-        if (lastSyncTime != null) {
-            log.debug("Setting UpdatedAt.gt query string to {}", lastSyncTime);
-            queryStrings.put("UpdatedAt.gt", new ArrayList<String>(Collections.singletonList(lastSyncTime)));
-            builder.queryParam("UpdatedAt.gt", lastSyncTime);
+        if (updatedAfter != null) {
+            log.debug("Setting UpdatedAt.gt query string to {}", updatedAfter);
+            queryStrings.put("UpdatedAt.gt", new ArrayList<String>(Collections.singletonList(updatedAfter)));
+            builder.queryParam("UpdatedAt.gt", updatedAfter);
         }
-        TreeMap<String, String> generatedHeaders = headerGenerator.generateHeaders(queryStrings);
+        TreeMap<String, String> generatedHeaders = headerGenerator.generateHeaders(url, queryStrings, requestHeaders.toSingleValueMap());
         HttpHeaders headers = new HttpHeaders();
         for (Map.Entry<String, String> entry : generatedHeaders.entrySet()) {
             log.trace("Generated Auth header: {}", entry.getValue());
             headers.add(entry.getKey(), entry.getValue());
         }
 
-        HttpEntity entity = new HttpEntity<>(headers);
         log.debug("calling API Gateway: {}", builder.toUriString());
+        if (extractor != null) {
+            return restTemplate.execute(builder.toUriString(), HttpMethod.GET, acceptJson(headers), extractor);
+        }
+        HttpEntity entity = new HttpEntity<>(headers);
         HttpEntity<Response> response = restTemplate.exchange(
                 builder.toUriString(),
                 HttpMethod.GET,
@@ -354,70 +1110,18 @@ public class AccountsStatus {
         return response.getBody();
     }
 
-    private String findMostRecentTime(Response response) {
-        List<Instant> instants = new ArrayList<>();
-        HashMap<Instant, String> map = new HashMap<>();
-        DateTimeFormatter timeFormatter = DateTimeFormatter.ISO_DATE_TIME;
-        for (Account account : response.getAccounts()) {
-            try {
-                String updatedString = account.getUpdatedAt();
-                OffsetDateTime offsetDateTime = OffsetDateTime.parse(updatedString, timeFormatter);
-                Instant instant = Instant.from(offsetDateTime);
-                instants.add(instant);
-                map.put(instant, updatedString);
-            } catch (DateTimeParseException e) {
-                log.error(String.format("Unable to parse date string, %s.", account.getUpdatedAt()));
-            }
-        }
-        if (instants.isEmpty()) {
-            log.debug("No valid timestamps found.");
-            return null;
-        }
-        log.debug("Finding most recent timestamp, {}", instants);
-        Instant oldest = Collections.max(instants);
-
-        log.debug("Most recent timestamp is {}", oldest.toString());
-        return map.get(oldest);
-    }
-
     private void setBackoffTime() {
-        int count = retryCount.getAndIncrement();
-        long waitTime = (long) Math.pow(2, count) * 1000L;
-        if (waitTime > maxBackoffTime) {
-            waitTime = maxBackoffTime;
-        }
-        Random random = new Random();
-        long randWait = random.nextInt(10) * 100L;
-        nextTry = Instant.now().plusMillis(waitTime - randWait);
+        nextTry = getPollScheduler().failed(retryCount.incrementAndGet(), Instant.now());
         log.info("Next try: {}", nextTry.toString());
     }
 
-    private <T extends CredentialsDefinition> void resolveAccounts(HashMap<String, T> changedAccounts,
-                                    List<T> currentAccounts,
-                                    List<String> deletedAccounts) {
-        if (currentAccounts == null) {
-            log.debug("ECS is not configured. Nothing to do.");
-            return;
-        }
-        for (T currentAccount : currentAccounts) {
-            if (currentAccount instanceof ECSCredentialsConfig.Account) {
-                if (deletedAccounts.contains(((ECSCredentialsConfig.Account) currentAccount).getAwsAccount())) {
-                    log.debug("ECS account \"{}\"'s corresponding EC2 account is in deleted account list. ECS account will be removed.", currentAccount.getName());
-                    continue;
-                } else if (changedAccounts.containsKey(currentAccount.getName())){
-                    log.info("ECS account \"{}\" will be updated.", currentAccount.getName());
-                    continue;
-                }
-            } else {
-                if (deletedAccounts.contains(currentAccount.getName())) {
-                    log.debug("EC2 account \"{}\" is in deleted account list and will be removed.", currentAccount.getName());
-                    continue;
-                } else if (changedAccounts.containsKey(currentAccount.getName())) {
-                    log.info("EC2 account \"{}\" will be updated.", currentAccount.getName());
-                    continue;
-                }
-            }
-            changedAccounts.put(currentAccount.getName(), currentAccount);
+    private static final class Applied<T> {
+        private final Instant at;
+        private final T account;
+
+        private Applied(Instant at, T account) {
+            this.at = at;
+            this.account = account;
         }
     }
 }
@@ -8,12 +8,21 @@ import org.springframework.beans.factory.annotation.Autowired;
 
 import java.util.List;
 import java.util.Collections;
+import java.util.Set;
+import java.util.stream.Collectors;
 
 @Slf4j
 public class AwsCredentialsDefinitionSource implements CredentialsDefinitionSource<AccountsConfiguration.Account> {
     private final AccountsStatus accountsStatus;
     private final AccountsConfiguration accountsConfiguration;
     private List<AccountsConfiguration.Account> awsCredentialsDefinitions;
+    // Generation of the published accounts last returned. Accounts pushed to the webhook or looked up one at a time
+    // are published in between syncs, and are returned without polling the remote host.
+    private long returnedGeneration;
+    private AccountsRefresher accountsRefresher;
+    private DeferredCredentials deferredCredentials;
+    // Accounts returned in deferred mode, reused until the accounts or the looked up accounts change.
+    private DeferredSelection deferredSelection;
 
     @Autowired
     AwsCredentialsDefinitionSource(AccountsStatus accountsStatus, AccountsConfiguration accountsConfiguration) {
@@ -21,14 +30,28 @@ public class AwsCredentialsDefinitionSource implements CredentialsDefinitionSour
         this.accountsConfiguration = accountsConfiguration;
     }
 
+    @Autowired(required = false)
+    void setAccountsRefresher(AccountsRefresher accountsRefresher) {
+        this.accountsRefresher = accountsRefresher;
+    }
+
+    @Autowired(required = false)
+    void setDeferredCredentials(DeferredCredentials deferredCredentials) {
+        this.deferredCredentials = deferredCredentials;
+    }
+
     @Override
     public List<AccountsConfiguration.Account> getCredentialsDefinitions() {
         try {
             if (awsCredentialsDefinitions == null) {
-                // Initialize with accounts from config if available
-                if (accountsConfiguration != null && accountsConfiguration.getAccounts() != null) {
+                // Initialize with accounts restored from a previous run, or with accounts from config if available
+                AccountsSnapshot restored = accountsStatus.getSnapshot();
+                if (restored != null && restored.getGeneration() > 0 && !restored.getEc2AccountsList().isEmpty()) {
+                    log.debug("Initializing with {} accounts restored from snapshot", restored.getEc2AccountsList().size());
+                    awsCredentialsDefinitions = restored.getEc2AccountsList();
+                } else if (accountsConfiguration != null && accountsConfiguration.getAccounts() != null) {
                     log.debug("Initializing with {} accounts from configuration", accountsConfiguration.getAccounts().size());
-                    awsCredentialsDefinitions = accountsConfiguration.getAccounts();
+                    awsCredentialsDefinitions = ImmutableList.copyOf(accountsConfiguration.getAccounts());
                 } else {
                     // Provide empty list rather than null
                     log.warn("No accounts available in configuration, using empty list");
@@ -36,10 +59,21 @@ public class AwsCredentialsDefinitionSource implements CredentialsDefinitionSour
                 }
             }
             
+            if (accountsRefresher != null && accountsRefresher.isEnabled()) {
+                // Accounts are synced in the background. Only pick up what was published last.
+                accountsRefresher.start();
+                List<AccountsConfiguration.Account> publishedAccounts = accountsRefresher.getEc2Accounts();
+                if (publishedAccounts != null && !publishedAccounts.isEmpty()) {
+                    awsCredentialsDefinitions = publishedAccounts;
+                }
+                return deferred(awsCredentialsDefinitions);
+            }
+
             // Try to get updated accounts but don't fail if it doesn't work
             try {
                 log.debug("Attempting to retrieve accounts from remote source");
-                if (accountsStatus.getDesiredAccounts()) {
+                if (accountsStatus.hasChangedSince(returnedGeneration) || accountsStatus.getDesiredAccounts()) {
+                    returnedGeneration = accountsStatus.getGeneration();
                     List<AccountsConfiguration.Account> updatedAccounts = accountsStatus.getEC2AccountsAsList();
                     if (updatedAccounts != null && !updatedAccounts.isEmpty()) {
                         log.info("Successfully updated accounts from remote source, found {} accounts", updatedAccounts.size());
@@ -56,11 +90,62 @@ public class AwsCredentialsDefinitionSource implements CredentialsDefinitionSour
                     ImmutableList.of() : awsCredentialsDefinitions;
             }
             
-            return ImmutableList.copyOf(awsCredentialsDefinitions);
+            return deferred(ImmutableList.copyOf(awsCredentialsDefinitions));
         } catch (Exception e) {
             // Return empty list instead of null to prevent NPEs
             log.error("Unexpected error in getCredentialsDefinitions, returning empty accounts list: {}", e.getMessage(), e);
             return ImmutableList.of();
         }
     }
+
+    // In deferred mode, credentials are only built for accounts from configuration and accounts looked up by name.
+    private List<AccountsConfiguration.Account> deferred(List<AccountsConfiguration.Account> accounts) {
+        if (deferredCredentials == null || !deferredCredentials.isEnabled()) {
+            return accounts;
+        }
+        DeferredSelection selection = deferredSelection;
+        if (selection != null && selection.accounts == accounts
+                && !deferredCredentials.hasChangedSince(selection.version, selection.nextEviction)) {
+            return selection.selected;
+        }
+        Set<String> configured = accountsConfiguration == null || accountsConfiguration.getAccounts() == null
+                ? Collections.emptySet()
+                : accountsConfiguration.getAccounts().stream()
+                        .map(AccountsConfiguration.Account::getName)
+                        .collect(Collectors.toSet());
+        deferredCredentials.retain(accounts.stream()
+                .map(AccountsConfiguration.Account::getName)
+                .collect(Collectors.toSet()));
+        // Read before selecting, so lookups made while selecting are picked up by the next call.
+        long version = deferredCredentials.getVersion();
+        List<AccountsConfiguration.Account> selected = accounts.stream()
+                .filter(account -> configured.contains(account.getName())
+                        || deferredCredentials.isRequested(account.getName()))
+                .collect(ImmutableList.toImmutableList());
+        deferredSelection = new DeferredSelection(accounts, selected, version, deferredCredentials.nextEviction());
+        return selected;
+    }
+
+    private static class DeferredSelection {
+        private final List<AccountsConfiguration.Account> accounts;
+        private final List<AccountsConfiguration.Account> selected;
+        private final long version;
+        private final long nextEviction;
+
+        DeferredSelection(List<AccountsConfiguration.Account> accounts, List<AccountsConfiguration.Account> selected,
+                          long version, long nextEviction) {
+            this.accounts = accounts;
+            this.selected = selected;
+            this.version = version;
+            this.nextEviction = nextEviction;
+        }
+    }
+
+    /**
+     * @return accounts added, updated and removed by the last successful sync, compared to the sync before it.
+     * Unchanged accounts are returned by {@link #getCredentialsDefinitions()} as the same instances as before.
+     */
+    public AccountChangeSet<AccountsConfiguration.Account> getChangeSet() {
+        return accountsStatus.getSnapshot().getEc2Changes();
+    }
 }
@@ -0,0 +1,55 @@
+/*
+ * Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License").
+ *   You may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *
+ */
+
+
+package com.amazon.aws.spinnaker.plugin.registration;
+
+import lombok.Getter;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.client.ClientHttpResponse;
+import org.springframework.web.client.ResponseExtractor;
+
+import java.io.IOException;
+
+/**
+ * Records the validators of a response and whether the remote host answered 304 Not Modified. The body of a 304
+ * response is never read. Any other response is read by the given extractor.
+ */
+@Getter
+class ConditionalResponseExtractor implements ResponseExtractor<Response> {
+    private final ResponseExtractor<Response> delegate;
+    private boolean notModified;
+    private String etag;
+    private String lastModified;
+
+    ConditionalResponseExtractor(ResponseExtractor<Response> delegate) {
+        this.delegate = delegate;
+    }
+
+    @Override
+    public Response extractData(ClientHttpResponse response) throws IOException {
+        if (response.getRawStatusCode() == HttpStatus.NOT_MODIFIED.value()) {
+            notModified = true;
+            return null;
+        }
+        HttpHeaders headers = response.getHeaders();
+        etag = headers.getETag();
+        lastModified = headers.getFirst(HttpHeaders.LAST_MODIFIED);
+        return delegate.extractData(response);
+    }
+}
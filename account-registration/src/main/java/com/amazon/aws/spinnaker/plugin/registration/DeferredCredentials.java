@@ -0,0 +1,123 @@
+/*
+ * Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License").
+ *   You may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *
+ */
+
+
+package com.amazon.aws.spinnaker.plugin.registration;
+
+import lombok.AccessLevel;
+import lombok.Getter;
+import lombok.Setter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+
+import java.time.Clock;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Tracks which synced AWS accounts Clouddriver builds credentials for when deferred credentials are enabled.
+ * <p>
+ * Building credentials sets up assume role providers and per region clients, which adds up in organizations with
+ * thousands of accounts. In deferred mode only the definitions of synced accounts are kept, and credentials are built
+ * the first time an account is looked up by name. Accounts that were not looked up for {@code idleTimeout}
+ * milliseconds are handed back, so Clouddriver deletes their credentials until they are looked up again.
+ * <p>
+ * Accounts without credentials are not listed by Clouddriver, so they are missing from the UI and have no caching
+ * agents until they are looked up.
+ */
+@Slf4j
+class DeferredCredentials {
+    @Value("${accountProvision.deferredCredentials.enabled:false}")
+    @Getter
+    @Setter(AccessLevel.PACKAGE)
+    private boolean enabled;
+    // Milliseconds an account may go without a lookup before its credentials are deleted. 0 keeps them.
+    @Value("${accountProvision.deferredCredentials.idleTimeout:0}")
+    @Setter(AccessLevel.PACKAGE)
+    private long idleTimeout;
+    @Setter(AccessLevel.PACKAGE)
+    private Clock clock = Clock.systemUTC();
+    // Account name to the time it was last looked up. Only holds synced accounts, see retain.
+    private final Map<String, Long> lastUsed = new ConcurrentHashMap<>();
+    // Increases whenever an account is added to or removed from lastUsed.
+    private final AtomicLong version = new AtomicLong();
+
+    /**
+     * Records a lookup of the given account, so its credentials are built on the next load if they weren't yet.
+     */
+    void used(String name) {
+        if (enabled && name != null && lastUsed.put(name, clock.millis()) == null) {
+            version.incrementAndGet();
+        }
+    }
+
+    /**
+     * Forgets lookups of accounts that are no longer synced.
+     */
+    void retain(Set<String> names) {
+        if (lastUsed.keySet().retainAll(names)) {
+            version.incrementAndGet();
+        }
+    }
+
+    long getVersion() {
+        return version.get();
+    }
+
+    /**
+     * @return the time after which {@link #isRequested} may evict an idle account, or Long.MAX_VALUE if it won't.
+     */
+    long nextEviction() {
+        if (idleTimeout <= 0) {
+            return Long.MAX_VALUE;
+        }
+        long oldest = Long.MAX_VALUE;
+        for (long used : lastUsed.values()) {
+            oldest = Math.min(oldest, used);
+        }
+        return oldest == Long.MAX_VALUE ? Long.MAX_VALUE : oldest + idleTimeout;
+    }
+
+    /**
+     * @return true if {@link #isRequested} may answer differently than it did when {@code version} and
+     * {@code nextEviction} were read.
+     */
+    boolean hasChangedSince(long version, long nextEviction) {
+        return this.version.get() != version || clock.millis() > nextEviction;
+    }
+
+    /**
+     * @return true if credentials of the given account should be built, evicting it first if it has been idle for
+     * longer than {@code idleTimeout}.
+     */
+    boolean isRequested(String name) {
+        Long used = lastUsed.get(name);
+        if (used == null) {
+            return false;
+        }
+        if (idleTimeout > 0 && clock.millis() - used > idleTimeout) {
+            if (lastUsed.remove(name, used)) {
+                version.incrementAndGet();
+                log.info("Account, {}, was not used for {} ms. Deleting its credentials.", name, idleTimeout);
+            }
+            return false;
+        }
+        return true;
+    }
+}
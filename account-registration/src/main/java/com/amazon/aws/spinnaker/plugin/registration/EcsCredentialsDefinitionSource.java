@@ -3,27 +3,59 @@ package com.amazon.aws.spinnaker.plugin.registration;
 import com.google.common.collect.ImmutableList;
 import com.netflix.spinnaker.clouddriver.ecs.security.ECSCredentialsConfig;
 import com.netflix.spinnaker.credentials.definition.CredentialsDefinitionSource;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
 
 import java.util.List;
 
+@Slf4j
 public class EcsCredentialsDefinitionSource implements CredentialsDefinitionSource<ECSCredentialsConfig.Account> {
     private final AccountsStatus accountsStatus;
     private final ECSCredentialsConfig ecsCredentialsConfig;
+    private AccountsRefresher accountsRefresher;
 
     public EcsCredentialsDefinitionSource(AccountsStatus accountsStatus, ECSCredentialsConfig ecsCredentialsConfig) {
         this.accountsStatus = accountsStatus;
         this.ecsCredentialsConfig = ecsCredentialsConfig;
     }
 
+    @Autowired(required = false)
+    void setAccountsRefresher(AccountsRefresher accountsRefresher) {
+        this.accountsRefresher = accountsRefresher;
+    }
+
     @Override
     public List<ECSCredentialsConfig.Account> getCredentialsDefinitions() {
-        List<ECSCredentialsConfig.Account> remoteList = accountsStatus.getECSAccountsAsList();
+        List<ECSCredentialsConfig.Account> remoteList;
+        if (accountsRefresher != null && accountsRefresher.isEnabled()) {
+            accountsRefresher.start();
+            remoteList = accountsRefresher.getEcsAccounts();
+        } else {
+            if (accountsStatus.getRefreshMaxAge() > 0) {
+                // Joins or reuses the sync the AWS credentials source asked for, whichever source is loaded first.
+                try {
+                    accountsStatus.getDesiredAccounts();
+                } catch (Exception e) {
+                    log.error("Error retrieving accounts from remote source, continuing with existing accounts: {}",
+                            e.getMessage(), e);
+                }
+            }
+            remoteList = accountsStatus.getECSAccountsAsList();
+        }
         List<ECSCredentialsConfig.Account> ecsCredentialsDefinitions;
-        if (!remoteList.isEmpty()) {
+        if (remoteList != null && !remoteList.isEmpty()) {
             ecsCredentialsDefinitions = remoteList;
         } else {
             ecsCredentialsDefinitions = ecsCredentialsConfig.getAccounts();
         }
         return ImmutableList.copyOf(ecsCredentialsDefinitions);
     }
+
+    /**
+     * @return accounts added, updated and removed by the last successful sync, compared to the sync before it.
+     * Unchanged accounts are returned by {@link #getCredentialsDefinitions()} as the same instances as before.
+     */
+    public AccountChangeSet<ECSCredentialsConfig.Account> getChangeSet() {
+        return accountsStatus.getSnapshot().getEcsChanges();
+    }
 }
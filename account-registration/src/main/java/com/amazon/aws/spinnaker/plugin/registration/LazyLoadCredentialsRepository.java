@@ -17,17 +17,45 @@
 
 package com.amazon.aws.spinnaker.plugin.registration;
 
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.netflix.spectator.api.Registry;
 import com.netflix.spinnaker.clouddriver.aws.security.NetflixAmazonCredentials;
 import com.netflix.spinnaker.credentials.CredentialsLifecycleHandler;
 import com.netflix.spinnaker.credentials.MapBackedCredentialsRepository;
 import com.netflix.spinnaker.credentials.definition.AbstractCredentialsLoader;
+import lombok.AccessLevel;
+import lombok.Setter;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Lazy;
 
+import java.util.Collection;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
 @Slf4j
 class LazyLoadCredentialsRepository extends MapBackedCredentialsRepository<NetflixAmazonCredentials> {
     AbstractCredentialsLoader<? extends NetflixAmazonCredentials> loader;
+    // Maximum number of account names remembered as missing after a load.
+    @Value("${accountProvision.missingAccountCacheSize:1000}")
+    @Setter(AccessLevel.PACKAGE)
+    private long missingAccountCacheSize;
+    // How long, in milliseconds, an account name is remembered as missing. 0 disables the cache.
+    @Value("${accountProvision.missingAccountCacheTtl:60000}")
+    @Setter(AccessLevel.PACKAGE)
+    private long missingAccountCacheTtl;
+    private volatile Cache<String, Boolean> missingAccounts;
+    // Load that callers missing an account currently wait on, if any.
+    private final AtomicReference<CompletableFuture<Void>> inFlightLoad = new AtomicReference<>();
+    private SyncMetrics metrics = SyncMetrics.NOOP;
+    private DeferredCredentials deferredCredentials;
+    private AccountsStatus accountsStatus;
 
     public LazyLoadCredentialsRepository(
             @Lazy CredentialsLifecycleHandler<NetflixAmazonCredentials> eventHandler,
@@ -36,14 +64,133 @@ class LazyLoadCredentialsRepository extends MapBackedCredentialsRepository<Netfl
         this.loader = loader;
     }
 
+    @Autowired(required = false)
+    void setRegistry(Registry registry) {
+        this.metrics = new SyncMetrics(registry);
+    }
+
+    @Autowired(required = false)
+    void setDeferredCredentials(DeferredCredentials deferredCredentials) {
+        this.deferredCredentials = deferredCredentials;
+    }
+
+    @Autowired(required = false)
+    void setAccountsStatus(AccountsStatus accountsStatus) {
+        this.accountsStatus = accountsStatus;
+    }
+
     @Override
     public NetflixAmazonCredentials getOne(String key) {
         NetflixAmazonCredentials cred = super.getOne(key);
         if (cred == null) {
+            Cache<String, Boolean> missing = getMissingAccounts();
+            if (missing != null && missing.getIfPresent(key) != null) {
+                log.debug("Account, {}, was not found in remote repository recently. Not checking again.", key);
+                metrics.recordLookup("knownMissing");
+                return null;
+            }
+            metrics.recordLookup("miss");
+            if (accountsStatus != null && accountsStatus.fetchAccount(key) == AccountsStatus.Lookup.NOT_FOUND) {
+                log.info("Could not find account, {}, in remote repository.", key);
+                if (missing != null) {
+                    missing.put(key, Boolean.TRUE);
+                }
+                return null;
+            }
+            // A looked up account is published already, so the load only builds its credentials.
             log.info("Could not find account, {}. Checking remote repository.", key);
-            loader.load();
-            return super.getOne(key);
+            markUsed(key);
+            if (!load()) {
+                return super.getOne(key);
+            }
+            cred = super.getOne(key);
+            if (cred == null && missing != null) {
+                missing.put(key, Boolean.TRUE);
+            }
+            return cred;
         }
+        metrics.recordLookup("hit");
+        markUsed(key);
         return cred;
     }
+
+    // Credentials of synced accounts are built on the next load once they were looked up. Other names are not
+    // remembered, so typos and missing accounts don't pile up.
+    private void markUsed(String key) {
+        if (deferredCredentials == null || accountsStatus == null) {
+            return;
+        }
+        AccountsSnapshot published = accountsStatus.getSnapshot();
+        if (published != null && published.getEc2Accounts().containsKey(key)) {
+            deferredCredentials.used(key);
+        }
+    }
+
+    @Override
+    public void save(NetflixAmazonCredentials credentials) {
+        super.save(credentials);
+        Cache<String, Boolean> missing = missingAccounts;
+        if (missing != null) {
+            missing.invalidate(credentials.getName());
+        }
+    }
+
+    /**
+     * Forgets that the given account names were missing, e.g. because the remote host pushed them since.
+     */
+    void forgetMissing(Collection<String> names) {
+        Cache<String, Boolean> missing = missingAccounts;
+        if (missing != null) {
+            missing.invalidateAll(names);
+        }
+    }
+
+    /**
+     * Runs the loader, or waits for the load another caller already started.
+     *
+     * @return true if the load completed successfully.
+     */
+    private boolean load() {
+        CompletableFuture<Void> load = new CompletableFuture<>();
+        CompletableFuture<Void> running = inFlightLoad.compareAndExchange(null, load);
+        if (running != null) {
+            metrics.recordLoad("shared");
+            try {
+                running.join();
+                return true;
+            } catch (CompletionException | CancellationException e) {
+                log.error("Loading accounts from remote repository failed: {}", e.getMessage());
+                return false;
+            }
+        }
+        try {
+            loader.load();
+            load.complete(null);
+            metrics.recordLoad("success");
+            return true;
+        } catch (RuntimeException e) {
+            load.completeExceptionally(e);
+            metrics.recordLoad("failure");
+            throw e;
+        } finally {
+            inFlightLoad.set(null);
+        }
+    }
+
+    private Cache<String, Boolean> getMissingAccounts() {
+        if (missingAccountCacheTtl <= 0 || missingAccountCacheSize <= 0) {
+            return null;
+        }
+        if (missingAccounts == null) {
+            synchronized (this) {
+                if (missingAccounts == null) {
+                    missingAccounts = CacheBuilder.newBuilder()
+                            .maximumSize(missingAccountCacheSize)
+                            .expireAfterWrite(missingAccountCacheTtl, TimeUnit.MILLISECONDS)
+                            .build();
+                }
+            }
+        }
+        return missingAccounts;
+    }
 }
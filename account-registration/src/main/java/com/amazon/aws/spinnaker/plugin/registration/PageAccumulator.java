@@ -0,0 +1,136 @@
+/*
+ * Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License").
+ *   You may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *
+ */
+
+package com.amazon.aws.spinnaker.plugin.registration;
+
+import com.netflix.spinnaker.clouddriver.aws.security.config.CredentialsConfig;
+import lombok.AccessLevel;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Collects the accounts returned by the remote host one page at a time. Accounts are validated and converted as soon
+ * as their page arrives, so this work overlaps with fetching the remaining pages. Pages must be added in the order the
+ * remote host returned them.
+ */
+@Slf4j
+@Getter
+class PageAccumulator {
+    private final CredentialsConfig credentialsConfig;
+    private final Response converted;
+    private final Instant startedAt = Instant.now();
+    // Only the thread adding pages writes the counts, but the thread fetching pages ahead reads them, see
+    // PaginationPipeline.
+    private volatile int pageCount;
+    private volatile int accountCount;
+    // Number of accounts per conversion outcome and time spent converting them.
+    private final Map<Response.Outcome, Integer> outcomes = new EnumMap<>(Response.Outcome.class);
+    private long conversionNanos;
+    private String mostRecentTime;
+    private Instant mostRecentInstant;
+    // Validators of the pages visited by this sync, by request URL. Pages may be fetched ahead on another thread.
+    private final Map<String, PageValidators> validators = new ConcurrentHashMap<>();
+    @Getter(AccessLevel.NONE)
+    private final AtomicInteger notModifiedPageCount = new AtomicInteger();
+
+    @Getter(AccessLevel.NONE)
+    private final ParallelConversion parallelConversion;
+
+    PageAccumulator(CredentialsConfig credentialsConfig) {
+        this(credentialsConfig, null);
+    }
+
+    PageAccumulator(CredentialsConfig credentialsConfig, ParallelConversion parallelConversion) {
+        this.credentialsConfig = credentialsConfig;
+        this.parallelConversion = parallelConversion;
+        this.converted = new Response();
+        this.converted.startConversion();
+    }
+
+    void addPage(Response page) {
+        pageCount++;
+        if (page.getAccounts() == null) {
+            log.warn("Page response accounts list is null");
+            return;
+        }
+        if (parallelConversion != null && parallelConversion.appliesTo(accountCount, page.getAccounts())) {
+            addAccountsInParallel(page.getAccounts());
+            return;
+        }
+        for (Account account : page.getAccounts()) {
+            addAccount(account);
+        }
+    }
+
+    private void addAccountsInParallel(List<Account> accounts) {
+        long start = System.nanoTime();
+        List<Response.PreparedAccount> prepared = parallelConversion.prepare(converted, credentialsConfig, accounts);
+        for (int i = 0; i < accounts.size(); i++) {
+            accountCount++;
+            trackUpdatedAt(accounts.get(i).getUpdatedAt());
+            outcomes.merge(converted.mergeAccount(prepared.get(i)), 1, Integer::sum);
+        }
+        conversionNanos += System.nanoTime() - start;
+    }
+
+    void addValidators(String url, PageValidators pageValidators) {
+        validators.put(url, pageValidators);
+    }
+
+    void pageNotModified() {
+        notModifiedPageCount.incrementAndGet();
+    }
+
+    int getNotModifiedPageCount() {
+        return notModifiedPageCount.get();
+    }
+
+    void addAccount(Account account) {
+        accountCount++;
+        trackUpdatedAt(account.getUpdatedAt());
+        long start = System.nanoTime();
+        Response.Outcome outcome = converted.convertAccount(credentialsConfig, account);
+        conversionNanos += System.nanoTime() - start;
+        outcomes.merge(outcome, 1, Integer::sum);
+    }
+
+    void trackUpdatedAt(String updatedAt) {
+        if (updatedAt == null) {
+            log.error("Unable to parse date string, null.");
+            return;
+        }
+        try {
+            Instant instant = Instant.from(OffsetDateTime.parse(updatedAt, DateTimeFormatter.ISO_DATE_TIME));
+            if (mostRecentInstant == null || !instant.isBefore(mostRecentInstant)) {
+                mostRecentInstant = instant;
+                mostRecentTime = updatedAt;
+            }
+        } catch (DateTimeParseException e) {
+            log.error(String.format("Unable to parse date string, %s.", updatedAt));
+        }
+    }
+}
@@ -0,0 +1,60 @@
+/*
+ * Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License").
+ *   You may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *
+ */
+
+
+package com.amazon.aws.spinnaker.plugin.registration;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import lombok.Data;
+
+/**
+ * HTTP validators the remote host returned for a page, used to make the next request for the same page conditional.
+ */
+@Data
+class PageValidators {
+    private final String etag;
+    private final String lastModified;
+    // NextUrl of the page, followed when the remote host reports the page as not modified.
+    private final String nextUrl;
+
+    @JsonCreator
+    PageValidators(@JsonProperty("etag") String etag,
+                   @JsonProperty("lastModified") String lastModified,
+                   @JsonProperty("nextUrl") String nextUrl) {
+        this.etag = etag;
+        this.lastModified = lastModified;
+        this.nextUrl = nextUrl;
+    }
+
+    boolean isEmpty() {
+        return etag == null && lastModified == null;
+    }
+
+    /**
+     * @return a response with no accounts that continues pagination where the unmodified page did.
+     */
+    Response toUnmodifiedPage() {
+        Response response = new Response();
+        if (nextUrl != null && !nextUrl.isEmpty()) {
+            AccountPagination pagination = new AccountPagination();
+            pagination.setNextUrl(nextUrl);
+            response.setPagination(pagination);
+        }
+        return response;
+    }
+}
@@ -0,0 +1,95 @@
+/*
+ * Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License").
+ *   You may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *
+ */
+
+package com.amazon.aws.spinnaker.plugin.registration;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Follows the {@code NextUrl} chain on a separate thread while the caller processes pages that already arrived.
+ * The next page is requested as soon as its URL is known, up to {@code maxPagesInFlight} pages ahead of the caller.
+ * Pages are handed to the consumer in the order the remote host returned them.
+ */
+@Slf4j
+class PaginationPipeline {
+    private static final Response END_OF_PAGES = new Response();
+
+    private final ExecutorService executor;
+    private final int maxPagesInFlight;
+
+    PaginationPipeline(ExecutorService executor, int maxPagesInFlight) {
+        this.executor = executor;
+        this.maxPagesInFlight = maxPagesInFlight;
+    }
+
+    /**
+     * Fetches every page starting at {@code firstUrl} and passes them to {@code consumer} on the calling thread.
+     * Stops at the first page the fetcher could not retrieve. Exceptions thrown by the fetcher are rethrown once all
+     * pages fetched before the failure were consumed.
+     */
+    void run(String firstUrl, Function<String, Response> fetcher, Consumer<Response> consumer)
+            throws InterruptedException {
+        BlockingQueue<Response> pages = new LinkedBlockingQueue<>();
+        Semaphore inFlight = new Semaphore(maxPagesInFlight);
+        AtomicReference<RuntimeException> failure = new AtomicReference<>();
+        Future<?> producer = executor.submit(() -> {
+            try {
+                String url = firstUrl;
+                while (url != null && !"".equals(url)) {
+                    inFlight.acquire();
+                    log.info("Calling next URL, {}", url);
+                    Response page = fetcher.apply(url);
+                    if (page == null) {
+                        break;
+                    }
+                    pages.add(page);
+                    url = page.getPagination() == null ? null : page.getPagination().getNextUrl();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (RuntimeException e) {
+                failure.set(e);
+            } finally {
+                pages.add(END_OF_PAGES);
+            }
+        });
+        try {
+            Response page;
+            while ((page = pages.take()) != END_OF_PAGES) {
+                try {
+                    consumer.accept(page);
+                } finally {
+                    inFlight.release();
+                }
+            }
+        } finally {
+            producer.cancel(true);
+        }
+        if (failure.get() != null) {
+            throw failure.get();
+        }
+    }
+}
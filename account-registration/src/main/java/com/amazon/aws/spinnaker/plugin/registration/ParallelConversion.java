@@ -0,0 +1,93 @@
+/*
+ * Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License").
+ *   You may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *
+ */
+
+
+package com.amazon.aws.spinnaker.plugin.registration;
+
+import com.netflix.spinnaker.clouddriver.aws.security.config.CredentialsConfig;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * Validates and converts the accounts of pages on several threads once a sync returned many accounts. Only
+ * {@link Response#prepareAccount} runs in parallel. Prepared accounts are returned in page order, so merging them gives
+ * the same result as converting the page on one thread.
+ * <p>
+ * Streamed pages are converted while their body is read, on the syncing thread, and never use this.
+ */
+class ParallelConversion {
+    private final ExecutorService executor;
+    private final int parallelism;
+    private final int threshold;
+
+    /**
+     * @param executor    bounded pool of {@code parallelism} threads.
+     * @param threshold   pages are converted on the calling thread until the sync returned this many accounts, counting
+     *                    the page being converted.
+     */
+    ParallelConversion(ExecutorService executor, int parallelism, int threshold) {
+        this.executor = executor;
+        this.parallelism = parallelism;
+        this.threshold = threshold;
+    }
+
+    /**
+     * @param accountsBefore accounts the sync returned on earlier pages.
+     * @param accounts       accounts of the page being converted.
+     */
+    boolean appliesTo(int accountsBefore, List<Account> accounts) {
+        return parallelism > 1 && accounts.size() > 1 && (long) accountsBefore + accounts.size() >= threshold;
+    }
+
+    List<Response.PreparedAccount> prepare(Response converted, CredentialsConfig credentialsConfig,
+                                           List<Account> accounts) {
+        // A few chunks per thread even out accounts that take longer to convert than others.
+        int chunks = Math.min(accounts.size(), parallelism * 4);
+        List<Callable<List<Response.PreparedAccount>>> tasks = new ArrayList<>(chunks);
+        for (int i = 0; i < chunks; i++) {
+            List<Account> chunk = accounts.subList(
+                    (int) ((long) accounts.size() * i / chunks), (int) ((long) accounts.size() * (i + 1) / chunks));
+            tasks.add(() -> {
+                List<Response.PreparedAccount> prepared = new ArrayList<>(chunk.size());
+                for (Account account : chunk) {
+                    prepared.add(converted.prepareAccount(credentialsConfig, account));
+                }
+                return prepared;
+            });
+        }
+        List<Response.PreparedAccount> prepared = new ArrayList<>(accounts.size());
+        try {
+            for (Future<List<Response.PreparedAccount>> chunk : executor.invokeAll(tasks)) {
+                prepared.addAll(chunk.get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while converting accounts.", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IllegalStateException("Could not convert accounts.", e.getCause());
+        }
+        return prepared;
+    }
+}
@@ -0,0 +1,150 @@
+/*
+ * Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License").
+ *   You may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *
+ */
+
+package com.amazon.aws.spinnaker.plugin.registration;
+
+import lombok.Getter;
+import lombok.ToString;
+import lombok.extern.slf4j.Slf4j;
+
+import java.time.Instant;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Decides when the remote host is polled next.
+ * <ul>
+ *   <li>Failed polls are retried after a decorrelated jitter backoff, a random delay between one second and three
+ *   times the previous delay, so replicas that failed together don't retry together.</li>
+ *   <li>After {@code failureThreshold} consecutive failures the circuit opens and the remote host is left alone for
+ *   {@code openDuration} milliseconds. Then a single poll is let through. The circuit closes if it succeeds and opens
+ *   again if it fails.</li>
+ *   <li>When {@code maxInterval} is set, polls that return no changes lengthen the interval until the next poll the
+ *   same way, up to {@code maxInterval}. A poll that returns changes resets it to {@code minInterval}.</li>
+ * </ul>
+ */
+@Slf4j
+public class PollScheduler {
+    static final long BASE_DELAY = 1000L;
+
+    public enum Circuit {
+        CLOSED, OPEN, HALF_OPEN
+    }
+
+    private final long minInterval;
+    private final long maxInterval;
+    private final long maxBackoff;
+    private final int failureThreshold;
+    private final long openDuration;
+    private Circuit circuit = Circuit.CLOSED;
+    private long backoff;
+    private long interval;
+    private Instant nextPoll;
+
+    /**
+     * @param minInterval  milliseconds between polls after one that returned changes.
+     * @param maxInterval  longest interval between polls that return no changes. 0 polls whenever asked to.
+     * @param maxBackoff  longest delay before a failed poll is retried.
+     * @param failureThreshold  consecutive failures that open the circuit. 0 never opens it.
+     * @param openDuration  milliseconds the circuit stays open.
+     */
+    PollScheduler(long minInterval, long maxInterval, long maxBackoff, int failureThreshold, long openDuration) {
+        this.minInterval = minInterval;
+        this.maxInterval = maxInterval;
+        this.maxBackoff = maxBackoff;
+        this.failureThreshold = failureThreshold;
+        this.openDuration = openDuration;
+    }
+
+    /**
+     * Called once the backoff after the last failure, if any, is over. Lets a single poll through an open circuit.
+     *
+     * @return true if the remote host should be polled now.
+     */
+    synchronized boolean isDue(Instant now) {
+        if (nextPoll != null && now.isBefore(nextPoll)) {
+            return false;
+        }
+        if (circuit == Circuit.OPEN) {
+            log.info("Circuit is half open. Polling the remote host once to see if it recovered.");
+            circuit = Circuit.HALF_OPEN;
+        }
+        return true;
+    }
+
+    /**
+     * Records a successful poll and schedules the next one.
+     */
+    synchronized void succeeded(boolean changed, Instant now) {
+        if (circuit != Circuit.CLOSED) {
+            log.info("Remote host recovered. Closing the circuit.");
+            circuit = Circuit.CLOSED;
+        }
+        backoff = 0;
+        if (maxInterval <= 0) {
+            nextPoll = null;
+            return;
+        }
+        interval = changed ? minInterval
+                : Math.min(maxInterval, decorrelatedJitter(Math.max(minInterval, BASE_DELAY), interval));
+        nextPoll = interval > 0 ? now.plusMillis(interval) : null;
+    }
+
+    /**
+     * Records a failed poll.
+     *
+     * @param failures consecutive failures, including this one.
+     * @return when the remote host may be polled again.
+     */
+    synchronized Instant failed(int failures, Instant now) {
+        nextPoll = null;
+        if (circuit == Circuit.HALF_OPEN || (failureThreshold > 0 && failures >= failureThreshold)) {
+            if (circuit != Circuit.OPEN) {
+                log.warn("Remote host failed {} times in a row. Opening the circuit for {} ms.", failures, openDuration);
+            }
+            circuit = Circuit.OPEN;
+            return now.plusMillis(openDuration);
+        }
+        backoff = Math.min(maxBackoff, decorrelatedJitter(BASE_DELAY, backoff));
+        return now.plusMillis(backoff);
+    }
+
+    public synchronized State getState() {
+        return new State(circuit, interval, nextPoll);
+    }
+
+    // A random delay between base and three times the previous one.
+    static long decorrelatedJitter(long base, long previous) {
+        long upper = Math.max(base, previous * 3);
+        return upper == base ? base : ThreadLocalRandom.current().nextLong(base, upper + 1);
+    }
+
+    @Getter
+    @ToString
+    public static final class State {
+        private final Circuit circuit;
+        // Milliseconds between the last poll and the next one. 0 when polls are not spaced out.
+        private final long interval;
+        // Earliest time of the next poll. Null when the remote host is polled whenever asked to.
+        private final Instant nextPoll;
+
+        private State(Circuit circuit, long interval, Instant nextPoll) {
+            this.circuit = circuit;
+            this.interval = interval;
+            this.nextPoll = nextPoll;
+        }
+    }
+}
@@ -0,0 +1,95 @@
+/*
+ * Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License").
+ *   You may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *
+ */
+
+
+package com.amazon.aws.spinnaker.plugin.registration;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Shares syncs with the remote host between callers. A caller asking for a refresh while a sync is running waits for
+ * that sync instead of queueing up for the next one, and a sync that completed less than {@code maxAge} milliseconds
+ * ago is not repeated. The EC2 and ECS credentials sources therefore read the accounts of the same sync.
+ */
+class RefreshCoordinator {
+    private final BooleanSupplier sync;
+    private final Clock clock;
+    private final AtomicReference<CompletableFuture<Boolean>> inFlight = new AtomicReference<>();
+    private volatile Instant lastCompleted;
+
+    /**
+     * @param sync  syncs with the remote host and returns true if accounts were updated.
+     */
+    RefreshCoordinator(BooleanSupplier sync, Clock clock) {
+        this.sync = sync;
+        this.clock = clock;
+    }
+
+    /**
+     * Syncs with the remote host, joins the sync already running or reuses the last one.
+     *
+     * @param maxAge  milliseconds a completed sync is reused for. 0 syncs unless a sync is running.
+     * @return true if the sync that was run or joined updated accounts. False when the last sync was reused.
+     */
+    boolean refresh(long maxAge) {
+        while (true) {
+            CompletableFuture<Boolean> running = inFlight.get();
+            if (running != null) {
+                return join(running);
+            }
+            Instant last = lastCompleted;
+            if (maxAge > 0 && last != null && clock.instant().isBefore(last.plusMillis(maxAge))) {
+                return false;
+            }
+            CompletableFuture<Boolean> refresh = new CompletableFuture<>();
+            if (inFlight.compareAndSet(null, refresh)) {
+                return run(refresh);
+            }
+        }
+    }
+
+    private boolean run(CompletableFuture<Boolean> refresh) {
+        try {
+            boolean updated = sync.getAsBoolean();
+            refresh.complete(updated);
+            return updated;
+        } catch (RuntimeException | Error e) {
+            refresh.completeExceptionally(e);
+            throw e;
+        } finally {
+            // Set before the sync is cleared, so callers that don't see it running see it completed.
+            lastCompleted = clock.instant();
+            inFlight.set(null);
+        }
+    }
+
+    private static boolean join(CompletableFuture<Boolean> running) {
+        try {
+            return running.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+    }
+}
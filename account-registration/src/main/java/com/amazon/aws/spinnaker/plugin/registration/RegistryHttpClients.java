@@ -0,0 +1,82 @@
+/*
+ * Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License").
+ *   You may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *
+ */
+
+
+package com.amazon.aws.spinnaker.plugin.registration;
+
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClientBuilder;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.springframework.http.client.ClientHttpRequestFactory;
+import org.springframework.http.client.HttpComponentsClientHttpRequestFactory;
+
+import java.net.http.HttpClient;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Request factories used to call the remote host. Connections are kept alive and reused across pages and syncs.
+ */
+final class RegistryHttpClients {
+
+    private RegistryHttpClients() {
+    }
+
+    /**
+     * Apache HttpClient backed factory with a connection pool. Connections are closed once they reach
+     * {@code connectionTtl} or were idle for {@code idleTimeout} milliseconds.
+     */
+    static HttpComponentsClientHttpRequestFactory pooled(int maxConnections, long connectionTtl, long idleTimeout,
+                                                         boolean compression, long connectionTimeout, long readTimeout) {
+        PoolingHttpClientConnectionManager connectionManager =
+                new PoolingHttpClientConnectionManager(connectionTtl, TimeUnit.MILLISECONDS);
+        connectionManager.setMaxTotal(maxConnections);
+        // All requests go to the same host, so it may use the whole pool.
+        connectionManager.setDefaultMaxPerRoute(maxConnections);
+        HttpClientBuilder builder = HttpClients.custom()
+                .useSystemProperties()
+                .setConnectionManager(connectionManager)
+                .evictExpiredConnections()
+                .evictIdleConnections(idleTimeout, TimeUnit.MILLISECONDS)
+                .setDefaultRequestConfig(RequestConfig.custom()
+                        .setConnectTimeout((int) connectionTimeout)
+                        .setSocketTimeout((int) readTimeout)
+                        .build());
+        if (!compression) {
+            builder.disableContentCompression();
+        }
+        CloseableHttpClient httpClient = builder.build();
+        return new HttpComponentsClientHttpRequestFactory(httpClient);
+    }
+
+    /**
+     * JDK HttpClient backed factory that negotiates HTTP/2 when the remote host supports it. Requests are multiplexed
+     * over one connection per host. Timeouts of 0 or less wait forever, like the other factories.
+     */
+    static ClientHttpRequestFactory http2(boolean compression, long connectionTimeout, long readTimeout) {
+        HttpClient.Builder builder = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_2)
+                .followRedirects(HttpClient.Redirect.NEVER);
+        if (connectionTimeout > 0) {
+            builder.connectTimeout(Duration.ofMillis(connectionTimeout));
+        }
+        return new JdkClientHttpRequestFactory(builder.build(),
+                readTimeout > 0 ? Duration.ofMillis(readTimeout) : null, compression);
+    }
+}
@@ -17,8 +17,6 @@
 
 package com.amazon.aws.spinnaker.plugin.registration;
 
-import com.amazonaws.regions.Region;
-import com.amazonaws.regions.RegionUtils;
 import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import com.netflix.spinnaker.clouddriver.aws.security.config.AmazonCredentialsParser;
@@ -29,7 +27,6 @@ import lombok.Data;
 import lombok.extern.slf4j.Slf4j;
 
 import java.util.*;
-import java.util.regex.Pattern;
 
 @Slf4j
 @Data
@@ -37,11 +34,6 @@ public class Response {
 
     Response() {
         this.accounts = new ArrayList<>();
-        this.regions = new HashSet<>();
-        List<Region> awsRegions = RegionUtils.getRegions();
-        for (Region awsRegion : awsRegions) {
-            regions.add(awsRegion.getName());
-        }
     }
 
     @JsonProperty("SpinnakerAccounts")
@@ -58,8 +50,9 @@ public class Response {
     List<String> deletedAccounts;
     @JsonIgnore
     List<String> accountsToCheck;
+    // Rejected and duplicate accounts, up to SyncReport.MAX_NAMES of them.
     @JsonIgnore
-    Set<String> regions;
+    List<SyncReport.Rejection> rejections;
 
 
     private ECSCredentialsConfig.Account makeECSAccount(Account account) {
@@ -70,12 +63,7 @@ public class Response {
     }
 
     private AccountsConfiguration.Account makeEC2Account(CredentialsConfig credentialsConfig, Account account) {
-        List<CredentialsConfig.Region> regions = new ArrayList<>();
-        for (String region : account.getRegions()) {
-            CredentialsConfig.Region regionToAdd = new CredentialsConfig.Region();
-            regionToAdd.setName(region.trim().toLowerCase());
-            regions.add(regionToAdd);
-        }
+        List<CredentialsConfig.Region> regions = AccountInterner.regions(account.getRegions());
         AccountsConfiguration.Account ec2Account = new AccountsConfiguration.Account() {{
             setName(account.getName());
             setAccountId(account.getAccountId());
@@ -87,66 +75,105 @@ public class Response {
         if (!account.getAssumeRole().toLowerCase().startsWith("role/")) {
             ec2Account.setAssumeRole(String.format("role/%s", account.getAssumeRole()));
         }
-        return setDefaults(credentialsConfig, ec2Account);
+        return AccountInterner.compact(setDefaults(credentialsConfig, ec2Account));
     }
 
     public boolean convertCredentials(CredentialsConfig credentialsConfig) {
-        HashMap<String, AccountsConfiguration.Account> ec2Accounts = new HashMap<>();
-        HashMap<String, ECSCredentialsConfig.Account> ecsAccounts = new HashMap<>();
-        List<String> deletedAccounts = new ArrayList<>();
-        List<String> accountsToCheck = new ArrayList<>();
+        startConversion();
         for (Account account : accounts) {
-            log.info("Converting {} to Spinnaker account type.", account.getName());
-            log.debug("Converting {}", account.toString());
-            if (!shouldConvert(account)) {
-                continue;
-            }
-            String accountName = account.getName();
-            if (ec2Accounts.get(accountName) != null) {
-                log.info("Found a possible duplicate account, {}. Will not process this.", accountName);
-                continue;
-            }
-            if ("SUSPENDED".equals(account.getStatus()) || account.getProviders() == null || account.getProviders().isEmpty()) {
-                log.info("Account, {}, will be removed because it's suspended or no valid provider list was provided: {}",
-                        accountName, account);
-                deletedAccounts.add(accountName);
-                continue;
-            }
-            AccountsConfiguration.Account ec2Account = makeEC2Account(credentialsConfig, account);
-            ec2Account.setLambdaEnabled(false);
-            Set<String> cleanedProviders = generateCleanedSet(account.getProviders());
-            for (String provider : cleanedProviders) {
-                switch(provider) {
-                    case "ec2":
-                        log.trace("Nothing to do for EC2.");
-                        continue;
-                    case "lambda":
-                        log.info("Enabling Lambda support for {}", accountName);
-                        ec2Account.setLambdaEnabled(true);
-                        continue;
-                    case "ecs":
-                        log.info("Enabling ECS account for {}", accountName);
-                        ECSCredentialsConfig.Account ecsAccount = makeECSAccount(account);
-                        ecsAccounts.put(ecsAccount.getName(), ecsAccount);
-                        continue;
-                    default:
-                        log.info("Unsupported provider {}, encountered. Ignoring this provider.", provider);
-                }
-            }
-            if (!cleanedProviders.contains("ecs")) {
-                accountsToCheck.add(accountName);
+            convertAccount(credentialsConfig, account);
+        }
+        return finishConversion();
+    }
+
+    void startConversion() {
+        this.ec2Accounts = new HashMap<>();
+        this.ecsAccounts = new HashMap<>();
+        this.deletedAccounts = new ArrayList<>();
+        this.accountsToCheck = new ArrayList<>();
+        this.rejections = new ArrayList<>();
+    }
+
+    // Converts a single account and merges it into the converted accounts. Accounts must be passed in payload order
+    // since the first occurrence of a duplicated account name wins.
+    Outcome convertAccount(CredentialsConfig credentialsConfig, Account account) {
+        return mergeAccount(prepareAccount(credentialsConfig, account));
+    }
+
+    // Validates and converts a single account without touching the converted accounts, so accounts can be prepared on
+    // several threads at once.
+    PreparedAccount prepareAccount(CredentialsConfig credentialsConfig, Account account) {
+        log.trace("Converting {}", account);
+        String rejectionReason = rejectionReason(account);
+        if (rejectionReason != null) {
+            log.debug("Rejecting account {}: {}", account.getName(), rejectionReason);
+            PreparedAccount rejected = new PreparedAccount(account, Outcome.REJECTED);
+            rejected.rejectionReason = rejectionReason;
+            return rejected;
+        }
+        PreparedAccount prepared = new PreparedAccount(account, Outcome.DELETED);
+        if ("SUSPENDED".equals(account.getStatus()) || account.getProviders() == null || account.getProviders().isEmpty()) {
+            return prepared;
+        }
+        String accountName = account.getName();
+        AccountsConfiguration.Account ec2Account = makeEC2Account(credentialsConfig, account);
+        ec2Account.setLambdaEnabled(false);
+        Set<String> cleanedProviders = generateCleanedSet(account.getProviders());
+        for (String provider : cleanedProviders) {
+            switch(provider) {
+                case "ec2":
+                    log.trace("Nothing to do for EC2.");
+                    continue;
+                case "lambda":
+                    log.debug("Enabling Lambda support for {}", accountName);
+                    ec2Account.setLambdaEnabled(true);
+                    continue;
+                case "ecs":
+                    log.debug("Enabling ECS account for {}", accountName);
+                    prepared.ecsAccount = makeECSAccount(account);
+                    continue;
+                default:
+                    log.debug("Unsupported provider {}, encountered. Ignoring this provider.", provider);
             }
-            log.debug("Finished converting {}", ec2Account.getName());
-            ec2Accounts.put(ec2Account.getName(), ec2Account);
         }
+        prepared.outcome = Outcome.CONVERTED;
+        prepared.ec2Account = ec2Account;
+        return prepared;
+    }
+
+    // Merges a prepared account into the converted accounts. Accounts must be merged in payload order.
+    Outcome mergeAccount(PreparedAccount prepared) {
+        if (prepared.outcome == Outcome.REJECTED) {
+            reject(prepared.account.getName(), prepared.rejectionReason);
+            return Outcome.REJECTED;
+        }
+        String accountName = prepared.account.getName();
+        if (ec2Accounts.get(accountName) != null) {
+            log.debug("Found a possible duplicate account, {}. Will not process this.", accountName);
+            reject(accountName, "duplicate account name");
+            return Outcome.DUPLICATE;
+        }
+        if (prepared.outcome == Outcome.DELETED) {
+            log.debug("Account, {}, will be removed because it's suspended or no valid provider list was provided: {}",
+                    accountName, prepared.account);
+            deletedAccounts.add(accountName);
+            return Outcome.DELETED;
+        }
+        if (prepared.ecsAccount != null) {
+            ecsAccounts.put(prepared.ecsAccount.getName(), prepared.ecsAccount);
+        } else {
+            accountsToCheck.add(accountName);
+        }
+        log.debug("Finished converting {}", prepared.ec2Account.getName());
+        ec2Accounts.put(prepared.ec2Account.getName(), prepared.ec2Account);
+        return Outcome.CONVERTED;
+    }
+
+    boolean finishConversion() {
         log.debug("Converted AWS accounts {}", ec2Accounts.keySet());
         log.debug("Converted ECS accounts {}", ecsAccounts.keySet());
         log.debug("Accounts to be deleted {}", deletedAccounts);
         log.debug("Accounts to ensure providers are disabled: {}", accountsToCheck);
-        this.deletedAccounts = deletedAccounts;
-        this.ec2Accounts = ec2Accounts;
-        this.ecsAccounts = ecsAccounts;
-        this.accountsToCheck = accountsToCheck;
         if (ec2Accounts.isEmpty() && ecsAccounts.isEmpty() && deletedAccounts.isEmpty() && accountsToCheck.isEmpty()) {
             log.info("Processed remote accounts resulted in no valid accounts to process.");
             return false;
@@ -165,98 +192,84 @@ public class Response {
         if (account.getDefaultSecurityGroups() == null) {
             account.setDefaultSecurityGroups(credentialsConfig.getDefaultSecurityGroups());
         }
-        if (account.getLifecycleHooks() == null) {
-            account.setLifecycleHooks(credentialsConfig.getDefaultLifecycleHooks());
+        if (account.getLifecycleHooks() == null && credentialsConfig.getDefaultLifecycleHooks() != null) {
+            // Hooks are templated per account below. Sharing the default hooks would resolve them for the first account only.
+            List<CredentialsConfig.LifecycleHook> lifecycleHooks = new ArrayList<>();
+            for (CredentialsConfig.LifecycleHook defaultHook : credentialsConfig.getDefaultLifecycleHooks()) {
+                lifecycleHooks.add(copyOf(defaultHook));
+            }
+            account.setLifecycleHooks(lifecycleHooks);
         }
         account.setEnabled(Optional.ofNullable(account.getEnabled()).orElse(true));
 
-        Map<String, String> templateContext = new HashMap<>();
-        templateContext.put("name", account.getName());
-        templateContext.put("accountId", account.getAccountId());
-        templateContext.put("environment", account.getEnvironment());
-        templateContext.put("accountType", account.getAccountType());
+        AccountTemplates templates = AccountTemplates.forConfig(credentialsConfig);
+        String[] templateContext = {
+                account.getName(), account.getAccountId(), account.getEnvironment(), account.getAccountType()
+        };
         account.setDefaultKeyPair(
-                getDefaultValue(templateContext, account.getDefaultKeyPair(), credentialsConfig.getDefaultKeyPairTemplate())
-        );
+                AccountTemplates.resolve(templateContext, account.getDefaultKeyPair(), templates.keyPair));
         account.setEdda(
-                getDefaultValue(templateContext, account.getEdda(), credentialsConfig.getDefaultEddaTemplate()));
+                AccountTemplates.resolve(templateContext, account.getEdda(), templates.edda));
         account.setFront50(
-                getDefaultValue(
-                        templateContext, account.getFront50(), credentialsConfig.getDefaultFront50Template()));
+                AccountTemplates.resolve(templateContext, account.getFront50(), templates.front50));
         account.setDiscovery(
-                getDefaultValue(
-                        templateContext, account.getDiscovery(), credentialsConfig.getDefaultDiscoveryTemplate()));
+                AccountTemplates.resolve(templateContext, account.getDiscovery(), templates.discovery));
         account.setAssumeRole(
-                getDefaultValue(
-                        templateContext, account.getAssumeRole(), credentialsConfig.getDefaultAssumeRole()));
+                AccountTemplates.resolve(templateContext, account.getAssumeRole(), templates.assumeRole));
         account.setSessionName(
-                getDefaultValue(
-                        templateContext, account.getSessionName(), credentialsConfig.getDefaultSessionName()));
+                AccountTemplates.resolve(templateContext, account.getSessionName(), templates.sessionName));
         account.setBastionHost(
-                getDefaultValue(
-                        templateContext, account.getBastionHost(), credentialsConfig.getDefaultBastionHostTemplate()));
+                AccountTemplates.resolve(templateContext, account.getBastionHost(), templates.bastionHost));
         if (account.getLifecycleHooks() != null) {
             for (CredentialsConfig.LifecycleHook lifecycleHook : account.getLifecycleHooks()) {
                 lifecycleHook.setRoleARN(
-                        getDefaultValue(
-                                templateContext,
-                                lifecycleHook.getRoleARN(),
-                                credentialsConfig.getDefaultLifecycleHookRoleARNTemplate()));
+                        AccountTemplates.resolve(
+                                templateContext, lifecycleHook.getRoleARN(), templates.lifecycleHookRoleARN));
                 lifecycleHook.setNotificationTargetARN(
-                        getDefaultValue(
+                        AccountTemplates.resolve(
                                 templateContext,
                                 lifecycleHook.getNotificationTargetARN(),
-                                credentialsConfig.getDefaultLifecycleHookNotificationTargetARNTemplate()));
+                                templates.lifecycleHookNotificationTargetARN));
             }
         }
         return account;
     }
 
-    private static String getDefaultValue(Map<String, String> substitutions, String... values) {
-        for (String value : values) {
-            if (value != null) {
-                String base = value;
-                int iterations = 0;
-                boolean changed = true;
-                while (changed && iterations < 10) {
-                    iterations++;
-                    String previous = base;
-                    for (Map.Entry<String, String> substitution : substitutions.entrySet()) {
-                        base =
-                                base.replaceAll(
-                                        Pattern.quote("{{" + substitution.getKey() + "}}"), substitution.getValue());
-                    }
-                    changed = !previous.equals(base);
-                }
-                if (changed) {
-                    throw new RuntimeException("too many levels of templatery");
-                }
-                return base;
-            }
+    private static CredentialsConfig.LifecycleHook copyOf(CredentialsConfig.LifecycleHook hook) {
+        CredentialsConfig.LifecycleHook copy = new CredentialsConfig.LifecycleHook();
+        copy.setName(hook.getName());
+        copy.setRoleARN(hook.getRoleARN());
+        copy.setNotificationTargetARN(hook.getNotificationTargetARN());
+        copy.setLifecycleTransition(hook.getLifecycleTransition());
+        copy.setHeartbeatTimeout(hook.getHeartbeatTimeout());
+        copy.setDefaultResult(hook.getDefaultResult());
+        return copy;
+    }
+
+    private void reject(String accountName, String reason) {
+        if (rejections.size() < SyncReport.MAX_NAMES) {
+            rejections.add(new SyncReport.Rejection(accountName, reason));
         }
-        return null;
     }
 
-    private boolean shouldConvert(Account account) {
+    // Rejected accounts are counted and listed in the sync report instead of being logged one by one.
+    private String rejectionReason(Account account) {
         for (String attributes : new ArrayList<>(Arrays.asList(
                 account.getName(), account.getAccountId(), account.getAssumeRole(), account.getStatus()
         ))) {
             if (attributes == null || attributes.trim().isEmpty()) {
-                log.error("Received account contained a field which is null or empty. Account: {}", account);
-                return false;
+                return "name, account ID, assume role or status is null or empty";
             }
         }
         if (account.getRegions() == null || account.getRegions().isEmpty()) {
-            log.error("Received account's region was null or empty. Account: {}", account);
-            return false;
+            return "regions are null or empty";
         }
         for (String regionInResponse : account.getRegions()) {
-            if (!regions.contains(regionInResponse.trim().toLowerCase())) {
-                log.error("Invalid region was specified. Region: {}", regionInResponse);
-                return false;
+            if (!AccountInterner.isKnownRegion(regionInResponse)) {
+                return "invalid region " + regionInResponse;
             }
         }
-        return true;
+        return null;
     }
 
     private HashSet<String> generateCleanedSet(List<String> providedList) {
@@ -267,4 +280,23 @@ public class Response {
         }
         return setToReturn;
     }
+
+    // What happened to an account received from the remote host.
+    enum Outcome {
+        CONVERTED, REJECTED, DUPLICATE, DELETED
+    }
+
+    // An account converted by prepareAccount, waiting to be merged. Outcome is CONVERTED, REJECTED or DELETED.
+    static final class PreparedAccount {
+        private final Account account;
+        private Outcome outcome;
+        private String rejectionReason;
+        private AccountsConfiguration.Account ec2Account;
+        private ECSCredentialsConfig.Account ecsAccount;
+
+        private PreparedAccount(Account account, Outcome outcome) {
+            this.account = account;
+            this.outcome = outcome;
+        }
+    }
 }
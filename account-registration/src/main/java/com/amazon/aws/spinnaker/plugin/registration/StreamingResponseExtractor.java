@@ -0,0 +1,81 @@
+/*
+ * Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License").
+ *   You may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *
+ */
+
+package com.amazon.aws.spinnaker.plugin.registration;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.client.ClientHttpResponse;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.web.client.ResponseExtractor;
+
+import java.io.IOException;
+import java.util.function.Consumer;
+
+/**
+ * Reads the {@code SpinnakerAccounts} payload from the response body one account at a time. Each account is handed to
+ * the consumer as soon as it is read, so the full list of accounts is never held in memory. The returned response
+ * only carries the pagination information and its accounts list is always empty.
+ */
+@Slf4j
+class StreamingResponseExtractor implements ResponseExtractor<Response> {
+    // Same configuration RestTemplate uses when deserializing the whole response.
+    private static final ObjectMapper objectMapper = Jackson2ObjectMapperBuilder.json().build();
+
+    private final Consumer<Account> consumer;
+
+    StreamingResponseExtractor(Consumer<Account> consumer) {
+        this.consumer = consumer;
+    }
+
+    @Override
+    public Response extractData(ClientHttpResponse response) throws IOException {
+        try (JsonParser parser = objectMapper.getFactory().createParser(response.getBody())) {
+            if (parser.nextToken() == null) {
+                return null;
+            }
+            if (!parser.isExpectedStartObjectToken()) {
+                throw new IOException("Expected a JSON object but found " + parser.currentToken());
+            }
+            Response page = new Response();
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.getCurrentName();
+                JsonToken value = parser.nextToken();
+                if ("SpinnakerAccounts".equals(field) && value == JsonToken.START_ARRAY) {
+                    readAccounts(parser);
+                } else if ("Pagination".equals(field) && value == JsonToken.START_OBJECT) {
+                    page.setPagination(parser.readValueAs(AccountPagination.class));
+                } else {
+                    parser.skipChildren();
+                }
+            }
+            return page;
+        }
+    }
+
+    private void readAccounts(JsonParser parser) throws IOException {
+        while (parser.nextToken() != JsonToken.END_ARRAY) {
+            if (parser.currentToken() == JsonToken.VALUE_NULL) {
+                log.warn("Ignoring null entry in accounts list.");
+                continue;
+            }
+            consumer.accept(parser.readValueAs(Account.class));
+        }
+    }
+}
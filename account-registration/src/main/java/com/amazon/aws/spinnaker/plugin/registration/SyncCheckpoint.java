@@ -0,0 +1,50 @@
+/*
+ * Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License").
+ *   You may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *
+ */
+
+
+package com.amazon.aws.spinnaker.plugin.registration;
+
+import lombok.Getter;
+
+import java.time.Duration;
+import java.time.Instant;
+
+/**
+ * Pages gathered by a sync that failed part way through the {@code NextUrl} chain. The next sync continues at the
+ * page that failed instead of requesting every page again.
+ */
+@Getter
+final class SyncCheckpoint {
+    private final PageAccumulator pages;
+    // Page to request next.
+    private final String nextUrl;
+    // UpdatedAt.gt value the pages were requested with.
+    private final String since;
+
+    SyncCheckpoint(PageAccumulator pages, String nextUrl, String since) {
+        this.pages = pages;
+        this.nextUrl = nextUrl;
+        this.since = since;
+    }
+
+    /**
+     * @return true if the sync these pages belong to started more than {@code expiry} before {@code now}.
+     */
+    boolean isExpired(Instant now, Duration expiry) {
+        return pages.getStartedAt().plus(expiry).isBefore(now);
+    }
+}
@@ -0,0 +1,180 @@
+/*
+ * Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License").
+ *   You may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *
+ */
+
+
+package com.amazon.aws.spinnaker.plugin.registration;
+
+import com.netflix.spectator.api.Id;
+import com.netflix.spectator.api.NoopRegistry;
+import com.netflix.spectator.api.Registry;
+import com.netflix.spectator.api.patterns.PolledMeter;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Metrics of the account sync. Names and tags are documented in doc/metrics.md; keep both in sync.
+ */
+class SyncMetrics {
+    static final SyncMetrics NOOP = new SyncMetrics(new NoopRegistry());
+
+    static final String SYNC_DURATION = "accountRegistration.sync.duration";
+    static final String SYNC_BACKOFF_SKIPS = "accountRegistration.sync.backoffSkips";
+    static final String PAGE_FETCH_DURATION = "accountRegistration.page.fetch.duration";
+    static final String PAGE_DESERIALIZATION_DURATION = "accountRegistration.page.deserialization.duration";
+    static final String CONVERSION_DURATION = "accountRegistration.conversion.duration";
+    static final String BUILD_CONFIG_DURATION = "accountRegistration.buildConfig.duration";
+    static final String ACCOUNTS_RECEIVED = "accountRegistration.accounts.received";
+    static final String ACCOUNTS_CURRENT = "accountRegistration.accounts.current";
+    static final String RETRY_COUNT = "accountRegistration.sync.retryCount";
+    static final String SECONDS_UNTIL_NEXT_TRY = "accountRegistration.sync.secondsUntilNextTry";
+    static final String WATERMARK_LAG = "accountRegistration.sync.watermarkLagSeconds";
+    static final String CIRCUIT_STATE = "accountRegistration.sync.circuitState";
+    static final String POLL_INTERVAL = "accountRegistration.sync.pollIntervalSeconds";
+    static final String UNSYNCED_PARTITIONS = "accountRegistration.sync.unsyncedPartitions";
+    static final String LAZY_LOAD_LOOKUPS = "accountRegistration.lazyLoad.lookups";
+    static final String LAZY_LOAD_LOADS = "accountRegistration.lazyLoad.loads";
+    static final String WEBHOOK_REQUESTS = "accountRegistration.webhook.requests";
+
+    private final Registry registry;
+    private final Id syncDuration;
+    private final Id pageFetchDuration;
+    private final Id lazyLoadLookups;
+    private final Id lazyLoadLoads;
+    private final Id webhookRequests;
+    private final Id accountsReceived;
+
+    SyncMetrics(Registry registry) {
+        this.registry = registry;
+        this.syncDuration = registry.createId(SYNC_DURATION);
+        this.pageFetchDuration = registry.createId(PAGE_FETCH_DURATION);
+        this.lazyLoadLookups = registry.createId(LAZY_LOAD_LOOKUPS);
+        this.lazyLoadLoads = registry.createId(LAZY_LOAD_LOADS);
+        this.webhookRequests = registry.createId(WEBHOOK_REQUESTS);
+        this.accountsReceived = registry.createId(ACCOUNTS_RECEIVED);
+    }
+
+    Registry getRegistry() {
+        return registry;
+    }
+
+    /**
+     * @param result updated, unchanged or failure
+     */
+    void recordSync(long nanos, String result) {
+        registry.timer(syncDuration.withTag("result", result)).record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    void recordBackoffSkip() {
+        registry.counter(SYNC_BACKOFF_SKIPS).increment();
+    }
+
+    /**
+     * @param result success, notModified or failure
+     */
+    void recordPageFetch(long nanos, String result) {
+        registry.timer(pageFetchDuration.withTag("result", result)).record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    void recordDeserialization(long nanos) {
+        registry.timer(PAGE_DESERIALIZATION_DURATION).record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    void recordConversion(long nanos) {
+        registry.timer(CONVERSION_DURATION).record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    void recordBuildConfig(long nanos) {
+        registry.timer(BUILD_CONFIG_DURATION).record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    void recordOutcomes(Map<Response.Outcome, Integer> outcomes) {
+        outcomes.forEach((outcome, count) ->
+                registry.counter(accountsReceived.withTag("outcome", outcome.name().toLowerCase())).increment(count));
+    }
+
+    /**
+     * @param result hit, miss or knownMissing
+     */
+    void recordLookup(String result) {
+        registry.counter(lazyLoadLookups.withTag("result", result)).increment();
+    }
+
+    /**
+     * @param result success, shared or failure
+     */
+    void recordLoad(String result) {
+        registry.counter(lazyLoadLoads.withTag("result", result)).increment();
+    }
+
+    /**
+     * @param result applied, ignored, unauthorized, invalid or disabled
+     */
+    void recordWebhookRequest(String result) {
+        registry.counter(webhookRequests.withTag("result", result)).increment();
+    }
+
+    /**
+     * Registers gauges that are polled from the given accounts status for as long as it is alive.
+     */
+    void monitor(AccountsStatus status) {
+        PolledMeter.using(registry).withName(ACCOUNTS_CURRENT).withTag("provider", "ec2")
+                .monitorValue(status, s -> s.getSnapshot().getEc2Accounts().size());
+        PolledMeter.using(registry).withName(ACCOUNTS_CURRENT).withTag("provider", "ecs")
+                .monitorValue(status, s -> s.getSnapshot().getEcsAccounts().size());
+        PolledMeter.using(registry).withName(RETRY_COUNT)
+                .monitorValue(status, s -> s.getRetryCount().get());
+        PolledMeter.using(registry).withName(SECONDS_UNTIL_NEXT_TRY)
+                .monitorValue(status, SyncMetrics::secondsUntilNextTry);
+        PolledMeter.using(registry).withName(WATERMARK_LAG)
+                .monitorValue(status, SyncMetrics::watermarkLagSeconds);
+        for (PollScheduler.Circuit circuit : PollScheduler.Circuit.values()) {
+            PolledMeter.using(registry).withName(CIRCUIT_STATE).withTag("state", circuit.name().toLowerCase())
+                    .monitorValue(status, s -> s.getPollScheduler().getState().getCircuit() == circuit ? 1 : 0);
+        }
+        PolledMeter.using(registry).withName(POLL_INTERVAL)
+                .monitorValue(status, s -> s.getPollScheduler().getState().getInterval() / 1000.0);
+        PolledMeter.using(registry).withName(UNSYNCED_PARTITIONS)
+                .monitorValue(status, AccountsStatus::getUnsyncedPartitionCount);
+    }
+
+    static double secondsUntilNextTry(AccountsStatus status) {
+        Instant nextTry = status.getNextTry();
+        if (nextTry == null) {
+            return 0;
+        }
+        return Math.max(0, Duration.between(Instant.now(), nextTry).toMillis() / 1000.0);
+    }
+
+    // Age of the newest UpdatedAt value applied so far, NaN before the first successful sync.
+    static double watermarkLagSeconds(AccountsStatus status) {
+        String lastSyncTime = status.getLastSyncTime();
+        if (lastSyncTime == null) {
+            return Double.NaN;
+        }
+        try {
+            Instant watermark = Instant.from(OffsetDateTime.parse(lastSyncTime, DateTimeFormatter.ISO_DATE_TIME));
+            return Duration.between(watermark, Instant.now()).toMillis() / 1000.0;
+        } catch (RuntimeException e) {
+            return Double.NaN;
+        }
+    }
+}
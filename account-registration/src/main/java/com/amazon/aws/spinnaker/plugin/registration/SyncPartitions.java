@@ -0,0 +1,208 @@
+/*
+ * Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License").
+ *   You may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *
+ */
+
+
+package com.amazon.aws.spinnaker.plugin.registration;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.netflix.spinnaker.clouddriver.aws.security.config.AccountsConfiguration;
+import com.netflix.spinnaker.clouddriver.ecs.security.ECSCredentialsConfig;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Syncs several query partitions of the remote host concurrently, each on its own thread and with its own
+ * {@link AccountsStatus}, so every partition keeps its own {@code UpdatedAt} watermark, backoff and checkpoint. A
+ * partition that is slow or failing keeps the accounts it published last while the others move on. Partitions are
+ * published as soon as they synced. Until every partition synced once, previously published accounts that no synced
+ * partition returned are kept, since they may belong to a partition that did not sync yet.
+ */
+@Slf4j
+class SyncPartitions {
+    private final List<Partition> partitions = new ArrayList<>();
+    private final ExecutorService executor;
+    private final long timeoutMillis;
+
+    /**
+     * @param queries  query string of each partition, in order of precedence for accounts returned by several.
+     * @param factory  creates the sync state of the partition with the given query string.
+     * @param timeoutMillis  how long a sync waits for partitions. Partitions still syncing are waited for next time.
+     */
+    SyncPartitions(List<String> queries, Function<String, AccountsStatus> factory, long timeoutMillis) {
+        for (String query : queries) {
+            partitions.add(new Partition(query, factory.apply(query)));
+        }
+        this.executor = Executors.newFixedThreadPool(partitions.size(), new ThreadFactoryBuilder()
+                .setNameFormat("account-registration-partition-%d")
+                .setDaemon(true)
+                .build());
+        this.timeoutMillis = timeoutMillis;
+    }
+
+    /**
+     * Starts syncing every partition that is not syncing already and waits for them up to the timeout.
+     *
+     * @return true if a partition published accounts that were not merged yet.
+     */
+    boolean sync() throws InterruptedException {
+        for (Partition partition : partitions) {
+            if (partition.running == null) {
+                partition.running = executor.submit(partition.status::getDesiredAccounts);
+            }
+        }
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        for (Partition partition : partitions) {
+            try {
+                boolean updated = partition.running.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+                // A partition without accounts to return is synced as well, as long as it didn't fail.
+                partition.synced |= updated || partition.status.getRetryCount().get() == 0;
+            } catch (TimeoutException e) {
+                log.info("Partition {} is still syncing. Its accounts are merged once it finishes.", partition.query);
+                continue;
+            } catch (ExecutionException e) {
+                log.error("Could not sync partition {}.", partition.query, e.getCause());
+            }
+            partition.running = null;
+        }
+        List<String> pending = getUnsynced();
+        if (!pending.isEmpty()) {
+            log.warn("Partitions {} did not sync yet. Publishing the accounts of the other partitions.", pending);
+        }
+        return partitions.stream().anyMatch(partition -> partition.synced
+                && partition.status.getSnapshot().getGeneration() != partition.mergedGeneration);
+    }
+
+    /**
+     * @return query strings of the partitions that did not sync successfully yet.
+     */
+    List<String> getUnsynced() {
+        return partitions.stream()
+                .filter(partition -> !partition.synced)
+                .map(partition -> partition.query)
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Merges the accounts last published by every partition that synced. An account returned by several partitions is
+     * taken from the first one.
+     *
+     * @param current  accounts published so far. Kept while some partitions did not sync yet.
+     */
+    Merged merge(AccountsSnapshot current) {
+        Merged merged = new Merged();
+        OffsetDateTime oldest = null;
+        for (Partition partition : partitions) {
+            if (!partition.synced) {
+                continue;
+            }
+            AccountsSnapshot published = partition.status.getSnapshot();
+            published.getEc2Accounts().forEach(merged.ec2Accounts::putIfAbsent);
+            published.getEcsAccounts().forEach(merged.ecsAccounts::putIfAbsent);
+            partition.mergedGeneration = published.getGeneration();
+            String watermark = partition.status.getLastSyncTime();
+            if (watermark != null) {
+                try {
+                    OffsetDateTime time = OffsetDateTime.parse(watermark, DateTimeFormatter.ISO_DATE_TIME);
+                    if (oldest == null || time.isBefore(oldest)) {
+                        oldest = time;
+                        merged.watermark = watermark;
+                    }
+                } catch (DateTimeParseException e) {
+                    log.warn("Partition {} has an invalid watermark, {}.", partition.query, watermark);
+                }
+            }
+        }
+        if (!getUnsynced().isEmpty()) {
+            current.getEc2Accounts().forEach(merged.ec2Accounts::putIfAbsent);
+            current.getEcsAccounts().forEach(merged.ecsAccounts::putIfAbsent);
+        }
+        return merged;
+    }
+
+    void destroy() throws Exception {
+        executor.shutdownNow();
+        for (Partition partition : partitions) {
+            partition.status.destroy();
+        }
+    }
+
+    /**
+     * Tells whether the partitions caught up with an account that was changed outside of partition syncs, e.g. by a
+     * push or a lookup.
+     *
+     * @param accounts  EC2 or ECS accounts of a partition snapshot.
+     * @param key       key of the account in those accounts.
+     * @param deleted   true if the account was deleted.
+     * @param since     when the account was changed.
+     * @return true if a partition that polled successfully since then returned the account, or, for a deleted account,
+     * every partition polled successfully since then and none returned it.
+     */
+    boolean hasReported(Function<AccountsSnapshot, Map<String, ?>> accounts, String key, boolean deleted,
+                        Instant since) {
+        boolean allPolled = true;
+        for (Partition partition : partitions) {
+            Instant polled = partition.status.getLastPollStart();
+            if (polled == null || polled.isBefore(since)) {
+                allPolled = false;
+            } else if (accounts.apply(partition.status.getSnapshot()).containsKey(key)) {
+                return true;
+            }
+        }
+        return deleted && allPolled;
+    }
+
+    /**
+     * Accounts of every partition.
+     */
+    @Getter
+    static final class Merged {
+        private final Map<String, AccountsConfiguration.Account> ec2Accounts = new LinkedHashMap<>();
+        private final Map<String, ECSCredentialsConfig.Account> ecsAccounts = new LinkedHashMap<>();
+        // Oldest UpdatedAt watermark of all partitions.
+        private String watermark;
+    }
+
+    private static final class Partition {
+        private final String query;
+        private final AccountsStatus status;
+        private Future<Boolean> running;
+        private volatile boolean synced;
+        private long mergedGeneration = -1;
+
+        private Partition(String query, AccountsStatus status) {
+            this.query = query;
+            this.status = status;
+        }
+    }
+}
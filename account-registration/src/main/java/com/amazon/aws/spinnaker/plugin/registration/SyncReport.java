@@ -0,0 +1,212 @@
+/*
+ * Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License").
+ *   You may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *
+ */
+
+package com.amazon.aws.spinnaker.plugin.registration;
+
+import com.google.common.collect.ImmutableList;
+import lombok.Getter;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * What a single sync with the remote host, a single push to the webhook or a single account lookup, did. Account
+ * names are capped at {@link #MAX_NAMES} per list so a large sync doesn't produce a large report.
+ */
+@Getter
+public final class SyncReport {
+    static final int MAX_NAMES = 50;
+
+    // poll, push, lookup or partitions.
+    private final String source;
+    private final String url;
+    private final Instant startedAt;
+    private final long durationMillis;
+    // updated, unchanged or failure.
+    private final String result;
+    private final String error;
+    private final int pages;
+    private final int accountsReceived;
+    // Received accounts by outcome: converted, rejected, duplicate and deleted.
+    private final Map<String, Integer> outcomes;
+    private final long conversionMillis;
+    private final List<Rejection> rejected;
+    private final Changes ec2Changes;
+    private final Changes ecsChanges;
+    private final long generation;
+    private final String watermark;
+
+    private SyncReport(Builder builder, String result, long durationMillis) {
+        this.source = builder.source;
+        this.url = builder.url;
+        this.startedAt = builder.startedAt;
+        this.durationMillis = durationMillis;
+        this.result = result;
+        this.error = builder.error;
+        PageAccumulator pages = builder.pages;
+        Map<String, Integer> outcomes = new LinkedHashMap<>();
+        if (pages != null) {
+            this.pages = pages.getPageCount();
+            this.accountsReceived = pages.getAccountCount();
+            pages.getOutcomes().forEach((outcome, count) -> outcomes.put(outcome.name().toLowerCase(), count));
+            this.conversionMillis = Duration.ofNanos(pages.getConversionNanos()).toMillis();
+            this.rejected = ImmutableList.copyOf(pages.getConverted().getRejections());
+        } else {
+            this.pages = 0;
+            this.accountsReceived = 0;
+            this.conversionMillis = 0;
+            this.rejected = ImmutableList.of();
+        }
+        this.outcomes = Collections.unmodifiableMap(outcomes);
+        this.ec2Changes = builder.ec2Changes;
+        this.ecsChanges = builder.ecsChanges;
+        this.generation = builder.generation;
+        this.watermark = builder.watermark;
+    }
+
+    static Builder builder(String source, String url) {
+        return new Builder(source, url);
+    }
+
+    /**
+     * @return a single line summary, logged once per sync.
+     */
+    @Override
+    public String toString() {
+        StringBuilder summary = new StringBuilder()
+                .append("Account ").append(source).append(' ').append(result)
+                .append(" in ").append(durationMillis).append(" ms");
+        if (error != null) {
+            summary.append(": ").append(error);
+        }
+        summary.append(". Received ").append(accountsReceived).append(" accounts in ").append(pages).append(" pages");
+        if (!outcomes.isEmpty()) {
+            summary.append(' ').append(outcomes);
+        }
+        if (ec2Changes != null) {
+            summary.append(". EC2: ").append(ec2Changes).append(". ECS: ").append(ecsChanges)
+                    .append(". Generation ").append(generation).append(", watermark ").append(watermark);
+        }
+        return summary.append('.').toString();
+    }
+
+    /**
+     * An account that was not converted, and why.
+     */
+    @Getter
+    public static final class Rejection {
+        private final String name;
+        private final String reason;
+
+        Rejection(String name, String reason) {
+            this.name = name;
+            this.reason = reason;
+        }
+    }
+
+    /**
+     * Accounts added, updated and removed by the sync. Name lists hold up to {@link #MAX_NAMES} names.
+     */
+    @Getter
+    public static final class Changes {
+        private final int addedCount;
+        private final int updatedCount;
+        private final int removedCount;
+        private final int unchangedCount;
+        private final List<String> added;
+        private final List<String> updated;
+        private final List<String> removed;
+
+        <T> Changes(AccountChangeSet<T> changes, Function<T, String> name) {
+            this.addedCount = changes.getAdded().size();
+            this.updatedCount = changes.getUpdated().size();
+            this.removedCount = changes.getRemoved().size();
+            this.unchangedCount = changes.getUnchanged().size();
+            this.added = capped(changes.getAdded(), name);
+            this.updated = capped(changes.getUpdated(), name);
+            this.removed = capped(changes.getRemoved(), Function.identity());
+        }
+
+        private static <T> List<String> capped(Collection<T> accounts, Function<T, String> name) {
+            List<String> names = new ArrayList<>(Math.min(accounts.size(), MAX_NAMES));
+            for (T account : accounts) {
+                if (names.size() == MAX_NAMES) {
+                    break;
+                }
+                names.add(name.apply(account));
+            }
+            return Collections.unmodifiableList(names);
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%d added, %d updated, %d removed, %d unchanged",
+                    addedCount, updatedCount, removedCount, unchangedCount);
+        }
+    }
+
+    /**
+     * Collects the report while a sync runs. Not thread safe.
+     */
+    static final class Builder {
+        private final String source;
+        private final String url;
+        private final Instant startedAt = Instant.now();
+        private final long startNanos = System.nanoTime();
+        private String error;
+        private PageAccumulator pages;
+        private Changes ec2Changes;
+        private Changes ecsChanges;
+        private long generation;
+        private String watermark;
+
+        private Builder(String source, String url) {
+            this.source = source;
+            this.url = url;
+        }
+
+        Builder error(String error) {
+            this.error = error;
+            return this;
+        }
+
+        // Pages are read when the report is built, so accounts added after this call are reported as well.
+        Builder pages(PageAccumulator pages) {
+            this.pages = pages;
+            return this;
+        }
+
+        Builder published(AccountsSnapshot snapshot) {
+            this.ec2Changes = new Changes(snapshot.getEc2Changes(), account -> account.getName());
+            this.ecsChanges = new Changes(snapshot.getEcsChanges(), account -> account.getName());
+            this.generation = snapshot.getGeneration();
+            this.watermark = snapshot.getWatermark();
+            return this;
+        }
+
+        SyncReport build(String result) {
+            return new SyncReport(this, result, Duration.ofNanos(System.nanoTime() - startNanos).toMillis());
+        }
+    }
+}
@@ -0,0 +1,54 @@
+/*
+ * Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License").
+ *   You may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *
+ */
+
+package com.amazon.aws.spinnaker.plugin.registration;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The last {@code capacity} sync reports, in a fixed-size ring buffer.
+ */
+class SyncReports {
+    private final SyncReport[] reports;
+    private int next;
+    private int size;
+
+    SyncReports(int capacity) {
+        this.reports = new SyncReport[Math.max(0, capacity)];
+    }
+
+    synchronized void add(SyncReport report) {
+        if (reports.length == 0) {
+            return;
+        }
+        reports[next] = report;
+        next = (next + 1) % reports.length;
+        size = Math.min(size + 1, reports.length);
+    }
+
+    /**
+     * @return the kept reports, most recent first.
+     */
+    synchronized List<SyncReport> getReports() {
+        List<SyncReport> newestFirst = new ArrayList<>(size);
+        for (int i = 1; i <= size; i++) {
+            newestFirst.add(reports[(next - i + reports.length) % reports.length]);
+        }
+        return newestFirst;
+    }
+}
@@ -0,0 +1,91 @@
+/*
+ * Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License").
+ *   You may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *
+ */
+
+package com.amazon.aws.spinnaker.plugin.registration;
+
+import org.springframework.http.HttpInputMessage;
+import org.springframework.http.HttpOutputMessage;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.HttpMessageConverter;
+import org.springframework.web.client.RestTemplate;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.function.LongConsumer;
+
+/**
+ * Times how long a message converter of a {@link RestTemplate} takes to read a page of accounts, so the time spent
+ * parsing pages is recorded whichever way the page was requested. Everything else is passed on as is.
+ */
+class TimedMessageConverter<T> implements HttpMessageConverter<T> {
+    private final HttpMessageConverter<T> delegate;
+    private final LongConsumer recorder;
+
+    TimedMessageConverter(HttpMessageConverter<T> delegate, LongConsumer recorder) {
+        this.delegate = delegate;
+        this.recorder = recorder;
+    }
+
+    /**
+     * Replaces the message converters of the given template with timed ones.
+     *
+     * @param recorder called with the nanoseconds taken to read every page.
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    static RestTemplate timeReads(RestTemplate restTemplate, LongConsumer recorder) {
+        restTemplate.getMessageConverters().replaceAll(converter -> new TimedMessageConverter(converter, recorder));
+        return restTemplate;
+    }
+
+    @Override
+    public boolean canRead(Class<?> clazz, MediaType mediaType) {
+        return delegate.canRead(clazz, mediaType);
+    }
+
+    @Override
+    public boolean canWrite(Class<?> clazz, MediaType mediaType) {
+        return delegate.canWrite(clazz, mediaType);
+    }
+
+    @Override
+    public List<MediaType> getSupportedMediaTypes() {
+        return delegate.getSupportedMediaTypes();
+    }
+
+    @Override
+    public List<MediaType> getSupportedMediaTypes(Class<?> clazz) {
+        return delegate.getSupportedMediaTypes(clazz);
+    }
+
+    @Override
+    public T read(Class<? extends T> clazz, HttpInputMessage inputMessage) throws IOException {
+        if (!Response.class.equals(clazz)) {
+            return delegate.read(clazz, inputMessage);
+        }
+        long start = System.nanoTime();
+        try {
+            return delegate.read(clazz, inputMessage);
+        } finally {
+            recorder.accept(System.nanoTime() - start);
+        }
+    }
+
+    @Override
+    public void write(T t, MediaType contentType, HttpOutputMessage outputMessage) throws IOException {
+        delegate.write(t, contentType, outputMessage);
+    }
+}
@@ -19,50 +19,225 @@ package com.amazon.aws.spinnaker.plugin.registration.auth.iam;
 
 import com.amazonaws.DefaultRequest;
 import com.amazonaws.auth.AWS4Signer;
+import com.amazonaws.auth.AWSCredentials;
 import com.amazonaws.auth.AWSCredentialsProvider;
+import com.amazonaws.auth.ProcessCredentialsProvider;
 import com.amazonaws.http.HttpMethodName;
+import org.joda.time.DateTime;
+import org.springframework.web.util.UriComponents;
 import org.springframework.web.util.UriComponentsBuilder;
 
+import java.net.URI;
+import java.time.Duration;
+import java.time.Instant;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
 
+/**
+ * Generates AWS Signature Version 4 headers for GET requests. Safe to use from several threads at once.
+ * <p>
+ * The configured URL is parsed once, and the endpoint of other URLs, e.g. page URLs, once per scheme, host and port.
+ * AWS4Signer already caches the derived signing key per credentials, date, region and service, so signing a request is
+ * a handful of HMACs. Credentials are read from the provider again shortly before they expire when the provider tells
+ * when that is, otherwise at most once per {@code credentialsMaxAge}, and always after {@link #refreshCredentials()}.
+ */
 public class HeaderGenerator {
+    private static final Duration DEFAULT_CREDENTIALS_MAX_AGE = Duration.ofMinutes(1);
+    private static final Duration EXPIRATION_MARGIN = Duration.ofMinutes(5);
+    private static final int MAX_ENDPOINTS = 16;
+
     private final String targetServiceName;
     private final AWSCredentialsProvider aWSCredentialsProvider;
+    private final long credentialsMaxAgeNanos;
     protected final AWS4Signer aws4Signer;
-    private String targetURL;
+    private volatile Target target;
+    private volatile CachedCredentials credentials;
+    private final ConcurrentMap<String, URI> endpoints = new ConcurrentHashMap<>();
 
     public HeaderGenerator(String targetServiceName, String region,
                            AWSCredentialsProvider aWSCredentialsProvider, String targetURL) {
+        this(targetServiceName, region, aWSCredentialsProvider, targetURL, DEFAULT_CREDENTIALS_MAX_AGE);
+    }
+
+    public HeaderGenerator(String targetServiceName, String region,
+                           AWSCredentialsProvider aWSCredentialsProvider, String targetURL,
+                           Duration credentialsMaxAge) {
         this.aWSCredentialsProvider = aWSCredentialsProvider;
-        this.targetURL = targetURL;
+        this.target = new Target(targetURL);
         this.targetServiceName = targetServiceName;
+        this.credentialsMaxAgeNanos = credentialsMaxAge.toNanos();
         this.aws4Signer = new AWS4Signer() {{
             setServiceName(targetServiceName);
             setRegionName(region);
         }};
     }
 
+    /**
+     * Signs a GET request for the configured URL.
+     */
     public TreeMap<String, String> generateHeaders(HashMap<String, List<String>> params) {
-        UriComponentsBuilder builder = UriComponentsBuilder.fromHttpUrl(targetURL);
+        return sign(target, params, Collections.emptyMap());
+    }
 
-        DefaultRequest request = new DefaultRequest(targetServiceName) {{
-            setHttpMethod(HttpMethodName.GET);
-            setResourcePath(builder.build().getPath());
-            setEndpoint(builder.replacePath("").replaceQuery("").build().toUri());
-        }};
+    /**
+     * Signs a GET request for the given URL, e.g. a page URL returned by the remote host. The host and path of the
+     * signature are taken from this URL.
+     */
+    public TreeMap<String, String> generateHeaders(String url, Map<String, List<String>> params) {
+        return generateHeaders(url, params, Collections.emptyMap());
+    }
+
+    /**
+     * Signs a GET request for the given URL that carries the given headers, e.g. conditional request headers. The
+     * headers are part of the signature and of the returned headers.
+     */
+    public TreeMap<String, String> generateHeaders(String url, Map<String, List<String>> params,
+                                                   Map<String, String> headers) {
+        return sign(target(url), params, headers);
+    }
+
+    public void setURI(String uri) {
+        target = new Target(uri);
+    }
+
+    /**
+     * Drops cached credentials and asks the provider to refresh them, e.g. after API Gateway rejected a signature.
+     */
+    public void refreshCredentials() {
+        credentials = null;
+        aWSCredentialsProvider.refresh();
+    }
+
+    private TreeMap<String, String> sign(Target target, Map<String, List<String>> params, Map<String, String> headers) {
+        DefaultRequest request = new DefaultRequest(targetServiceName);
+        request.setHttpMethod(HttpMethodName.GET);
+        request.setResourcePath(target.path);
+        request.setEndpoint(target.endpoint);
         if (params != null) {
             request.setParameters(params);
         }
-        request.setHeaders(Collections.singletonMap("Content-type", "application/json"));
-        aws4Signer.sign(request, aWSCredentialsProvider.getCredentials());
+        if (headers.isEmpty()) {
+            request.setHeaders(Collections.singletonMap("Content-type", "application/json"));
+        } else {
+            Map<String, String> requestHeaders = new HashMap<>(headers);
+            requestHeaders.put("Content-type", "application/json");
+            request.setHeaders(requestHeaders);
+        }
+        aws4Signer.sign(request, getCredentials());
 
         return (TreeMap<String, String>) request.getHeaders();
     }
 
-    public void setURI(String uri) {
-        targetURL = uri;
+    private Target target(String url) {
+        Target current = target;
+        if (current.url.equals(url)) {
+            return current;
+        }
+        int hostStart = url.indexOf("://");
+        int pathStart = hostStart < 0 ? -1 : url.indexOf('/', hostStart + 3);
+        if (pathStart < 0 || url.indexOf('#') >= 0) {
+            return new Target(url);
+        }
+        String base = url.substring(0, pathStart);
+        int pathEnd = pathEnd(url, pathStart);
+        URI endpoint = endpoints.get(base);
+        if (endpoint == null || pathEnd < 0) {
+            Target parsed = new Target(url);
+            if (endpoints.size() < MAX_ENDPOINTS && pathEnd >= 0) {
+                endpoints.putIfAbsent(base, parsed.endpoint);
+            }
+            return parsed;
+        }
+        return new Target(url, url.substring(pathStart, pathEnd), endpoint);
+    }
+
+    /**
+     * Returns where the path starting at {@code pathStart} ends, or -1 if the authority holds characters, e.g. user
+     * info or a query before the first slash, that only the full parser handles.
+     */
+    private static int pathEnd(String url, int pathStart) {
+        for (int i = url.indexOf("://") + 3; i < pathStart; i++) {
+            char c = url.charAt(i);
+            if (c == '?' || c == '@') {
+                return -1;
+            }
+        }
+        for (int i = pathStart; i < url.length(); i++) {
+            char c = url.charAt(i);
+            if (c == '?') {
+                return i;
+            }
+        }
+        return url.length();
+    }
+
+    private AWSCredentials getCredentials() {
+        CachedCredentials cached = credentials;
+        long now = System.nanoTime();
+        if (cached == null || now - cached.readAt > cached.maxAgeNanos) {
+            AWSCredentials read = aWSCredentialsProvider.getCredentials();
+            cached = new CachedCredentials(read, now, maxAgeNanos(expiration(aWSCredentialsProvider)));
+            credentials = cached;
+        }
+        return cached.credentials;
+    }
+
+    private long maxAgeNanos(Instant expiration) {
+        if (expiration == null) {
+            return credentialsMaxAgeNanos;
+        }
+        long millis = expiration.toEpochMilli() - EXPIRATION_MARGIN.toMillis() - System.currentTimeMillis();
+        return TimeUnit.MILLISECONDS.toNanos(Math.max(0, millis));
+    }
+
+    /**
+     * Returns when the provider's current credentials expire, or null if the provider doesn't tell. Of the SDK
+     * providers only the process provider does; the others, e.g. the default chain, are read once per max age and
+     * renew their session credentials themselves.
+     */
+    Instant expiration(AWSCredentialsProvider provider) {
+        if (provider instanceof ProcessCredentialsProvider) {
+            DateTime expiration = ((ProcessCredentialsProvider) provider).getCredentialExpirationTime();
+            return expiration == null ? null : Instant.ofEpochMilli(expiration.getMillis());
+        }
+        return null;
+    }
+
+    private static class Target {
+        private final String url;
+        private final String path;
+        private final URI endpoint;
+
+        Target(String url) {
+            UriComponentsBuilder builder = UriComponentsBuilder.fromHttpUrl(url);
+            UriComponents components = builder.build();
+            this.url = url;
+            this.path = components.getPath();
+            this.endpoint = builder.replacePath("").replaceQuery("").build().toUri();
+        }
+
+        Target(String url, String path, URI endpoint) {
+            this.url = url;
+            this.path = path;
+            this.endpoint = endpoint;
+        }
+    }
+
+    private static class CachedCredentials {
+        private final AWSCredentials credentials;
+        private final long readAt;
+        private final long maxAgeNanos;
+
+        CachedCredentials(AWSCredentials credentials, long readAt, long maxAgeNanos) {
+            this.credentials = credentials;
+            this.readAt = readAt;
+            this.maxAgeNanos = maxAgeNanos;
+        }
     }
 }
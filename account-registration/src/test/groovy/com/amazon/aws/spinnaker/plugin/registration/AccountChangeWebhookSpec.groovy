@@ -0,0 +1,173 @@
+package com.amazon.aws.spinnaker.plugin.registration
+
+import com.netflix.spinnaker.clouddriver.aws.security.config.AccountsConfiguration
+import com.netflix.spinnaker.clouddriver.aws.security.config.CredentialsConfig
+import com.netflix.spinnaker.clouddriver.ecs.security.ECSCredentialsConfig
+import org.springframework.http.HttpStatus
+import org.springframework.web.client.RestTemplate
+import spock.lang.Specification
+import spock.lang.Unroll
+
+import java.nio.charset.StandardCharsets
+import java.time.Clock
+import java.time.Instant
+import java.time.ZoneOffset
+
+class AccountChangeWebhookSpec extends Specification {
+    static final String SECRET = "s3cr3t"
+    static final Instant NOW = Instant.parse("2020-10-01T00:00:00Z")
+
+    RestTemplate mockRest = Mock(RestTemplate)
+    AccountsConfiguration accountsConfiguration = new AccountsConfiguration(accounts: [])
+    AccountsStatus accountsStatus = new AccountsStatus(accountsConfiguration, new CredentialsConfig(), "http://localhost:8080/hello/", 0L, 0L)
+    AccountChangeWebhook webhook = new AccountChangeWebhook(accountsStatus)
+
+    def setup() {
+        accountsStatus.setRestTemplate(mockRest)
+        accountsStatus.setECSCredentialsConfig(new ECSCredentialsConfig(accounts: []))
+        accountsStatus.setWebhookEnabled(true)
+        accountsStatus.setWebhookPollInterval(600000)
+        webhook.setEnabled(true)
+        webhook.setSecret(SECRET)
+        webhook.setTolerance(300000)
+        webhook.setClock(Clock.fixed(NOW, ZoneOffset.UTC))
+    }
+
+    static String body(String name, String providers = '"ec2"') {
+        return """{"SpinnakerAccounts": [{"AccountId": "${name.replace("test", "")}", "SpinnakerAccountName": "${name}",
+            "Regions": ["us-west-2"], "SpinnakerStatus": "ACTIVE", "SpinnakerAssumeRole": "role/${name}",
+            "SpinnakerProviders": [${providers}], "UpdatedAt": "2020-09-30T16:52:59.026696+00:00"}]}"""
+    }
+
+    def push(String body, String timestamp = String.valueOf(NOW.epochSecond), String secret = SECRET) {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8)
+        return webhook.pushAccounts(timestamp, "sha256=" + AccountChangeWebhook.sign(secret, timestamp, bytes), bytes)
+    }
+
+    def initialSync() {
+        1 * mockRest.getForObject("http://localhost:8080/hello/", _) >> new Response(accounts: [
+                new Account(name: "test1", accountId: "1", assumeRole: "role/test1", regions: ["us-west-2"],
+                        providers: ["ec2"], updatedAt: "2020-08-31T16:52:59.026696+00:00", status: "ACTIVE")])
+        assert accountsStatus.getDesiredAccounts()
+    }
+
+    def 'it should apply signed accounts right away and poll only as a safety net'() {
+        given:
+        def awsSource = new AwsCredentialsDefinitionSource(accountsStatus, accountsConfiguration)
+        def ecsSource = new EcsCredentialsDefinitionSource(accountsStatus, new ECSCredentialsConfig(accounts: []))
+        initialSync()
+
+        when:
+        def response = push(body("test2", '"ec2", "ecs"'))
+
+        then:
+        response.statusCode == HttpStatus.OK
+        accountsStatus.getEc2Accounts().keySet() == ["test1", "test2"] as Set
+        accountsStatus.getLastSyncTime() == "2020-08-31T16:52:59.026696+00:00"
+
+        when:
+        def ec2Accounts = awsSource.getCredentialsDefinitions()
+        def ecsAccounts = ecsSource.getCredentialsDefinitions()
+
+        then:
+        0 * mockRest._
+        ec2Accounts*.name as Set == ["test1", "test2"] as Set
+        ecsAccounts*.name == ["test2-ecs"]
+
+        when:
+        push(body("test1", ""))
+
+        then:
+        accountsStatus.getEc2Accounts().keySet() == ["test2"] as Set
+        awsSource.getCredentialsDefinitions()*.name == ["test2"]
+    }
+
+    def 'it should poll on every sync after the poll interval'() {
+        given:
+        accountsStatus.setWebhookPollInterval(0)
+        initialSync()
+
+        when:
+        accountsStatus.getDesiredAccounts()
+
+        then:
+        1 * mockRest.getForObject({ it.contains("UpdatedAt.gt=2020-08-31") }, _) >> new Response()
+    }
+
+    @Unroll
+    def 'it should reject pushed accounts #description'() {
+        given:
+        initialSync()
+        webhook.setSecret(configuredSecret)
+        byte[] bytes = body("test2").getBytes(StandardCharsets.UTF_8)
+
+        when:
+        def response = webhook.pushAccounts(timestamp, signature?.call(bytes), bytes)
+
+        then:
+        response.statusCode == HttpStatus.UNAUTHORIZED
+        !accountsStatus.getEc2Accounts().containsKey("test2")
+
+        where:
+        description                    | configuredSecret | timestamp                             | signature
+        "without a signature"          | SECRET           | String.valueOf(NOW.epochSecond)       | null
+        "signed with another secret"   | SECRET           | String.valueOf(NOW.epochSecond)       | { "sha256=" + AccountChangeWebhook.sign("other", String.valueOf(NOW.epochSecond), it) }
+        "signed for another timestamp" | SECRET           | String.valueOf(NOW.epochSecond)       | { "sha256=" + AccountChangeWebhook.sign(SECRET, String.valueOf(NOW.epochSecond - 1), it) }
+        "signed too long ago"          | SECRET           | String.valueOf(NOW.epochSecond - 301) | { "sha256=" + AccountChangeWebhook.sign(SECRET, String.valueOf(NOW.epochSecond - 301), it) }
+        "without a configured secret"  | ""               | String.valueOf(NOW.epochSecond)       | { "sha256=" + AccountChangeWebhook.sign("other", String.valueOf(NOW.epochSecond), it) }
+    }
+
+    def 'it should reject a replayed push'() {
+        given:
+        initialSync()
+        byte[] bytes = body("test2").getBytes(StandardCharsets.UTF_8)
+        String timestamp = String.valueOf(NOW.epochSecond)
+        String signature = "sha256=" + AccountChangeWebhook.sign(SECRET, timestamp, bytes)
+
+        expect:
+        webhook.pushAccounts(timestamp, signature, bytes).statusCode == HttpStatus.OK
+        webhook.pushAccounts(timestamp, signature, bytes).statusCode == HttpStatus.UNAUTHORIZED
+        push(body("test2"), String.valueOf(NOW.epochSecond + 1)).statusCode == HttpStatus.OK
+    }
+
+    def 'it should only forget missing accounts that were pushed'() {
+        given:
+        def credentialsRepository = Mock(LazyLoadCredentialsRepository)
+        webhook.setCredentialsRepository(credentialsRepository)
+        initialSync()
+
+        when:
+        push(body("test2"))
+
+        then:
+        1 * credentialsRepository.forgetMissing(["test2"] as Set)
+    }
+
+    def 'it should not apply pushed accounts before the first sync'() {
+        when:
+        def response = push(body("test2"))
+
+        then:
+        response.statusCode == HttpStatus.SERVICE_UNAVAILABLE
+        accountsStatus.getEc2Accounts().isEmpty()
+    }
+
+    def 'it should answer with 404 when disabled'() {
+        given:
+        webhook.setEnabled(false)
+
+        expect:
+        push(body("test2")).statusCode == HttpStatus.NOT_FOUND
+    }
+
+    def 'it should reject invalid bodies'() {
+        given:
+        initialSync()
+
+        expect:
+        push(invalid).statusCode == HttpStatus.BAD_REQUEST
+
+        where:
+        invalid << ['{"SpinnakerAccounts": [', '{"SpinnakerAccounts": []}']
+    }
+}
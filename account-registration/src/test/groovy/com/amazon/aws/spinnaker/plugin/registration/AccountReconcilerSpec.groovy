@@ -0,0 +1,97 @@
+package com.amazon.aws.spinnaker.plugin.registration
+
+import com.netflix.spinnaker.clouddriver.aws.security.config.AccountsConfiguration
+import com.netflix.spinnaker.clouddriver.ecs.security.ECSCredentialsConfig
+import spock.lang.Specification
+
+class AccountReconcilerSpec extends Specification {
+
+    static AccountsConfiguration.Account ec2(String name) {
+        return new AccountsConfiguration.Account(name: name, accountId: name.replace("test", ""), assumeRole: "role/" + name)
+    }
+
+    static ECSCredentialsConfig.Account ecs(String awsAccount) {
+        return new ECSCredentialsConfig.Account(name: awsAccount + "-ecs", awsAccount: awsAccount)
+    }
+
+    def 'it should replace, carry over, delete and revoke current accounts'() {
+        given:
+        def current = ["test1", "test2", "test3", "test4"].collect { ec2(it) }
+        def currentEcs = ["test1", "test2", "test3", "test4"].collect { ecs(it) }
+        def updated = ec2("test2")
+        def added = ec2("test5")
+        def addedEcs = ecs("test5")
+        HashMap<String, AccountsConfiguration.Account> remote = ["test2": updated, "test5": added]
+        HashMap<String, ECSCredentialsConfig.Account> remoteEcs = ["test5-ecs": addedEcs]
+
+        when:
+        def result = new AccountReconciler(["test3"], ["test2"]).reconcile(remote, remoteEcs, current, currentEcs)
+
+        then:
+        result.ec2Accounts == ["test1": current[0], "test2": updated, "test4": current[3], "test5": added]
+        result.ec2Accounts["test2"].is(updated)
+        result.ecsAccounts == ["test1-ecs": currentEcs[0], "test4-ecs": currentEcs[3], "test5-ecs": addedEcs]
+        result.received == 3
+        result.replaced == 1
+        result.carriedOver == 4
+        result.deleted == 2
+        result.revoked == 1
+    }
+
+    def 'it should remove ECS accounts returned for AWS accounts without the ecs provider'() {
+        given:
+        HashMap<String, AccountsConfiguration.Account> remote = ["test1": ec2("test1")]
+        HashMap<String, ECSCredentialsConfig.Account> remoteEcs = ["test1-ecs": ecs("test1")]
+
+        when:
+        def result = new AccountReconciler([], ["test1"]).reconcile(remote, remoteEcs, [], null)
+
+        then:
+        result.ec2Accounts.keySet() == ["test1"] as Set
+        result.ecsAccounts.isEmpty()
+        result.revoked == 1
+    }
+
+    def 'it should reconcile 50k accounts with 10% deletions in one pass over the deleted names'() {
+        given:
+        int size = 50000
+        def current = (0..<size).collect { ec2("test" + it) }
+        def currentEcs = (0..<size).collect { ecs("test" + it) }
+        def passes = [deleted: 0, revoked: 0]
+        def lookups = [deleted: 0, revoked: 0]
+        // Counts passes over and lookups in the given names. Time is measured by ReconciliationBenchmark instead.
+        def counted = { String key, List<String> names ->
+            new ArrayList<String>(names) {
+                @Override
+                Iterator<String> iterator() {
+                    passes[key]++
+                    return super.iterator()
+                }
+
+                @Override
+                boolean contains(Object o) {
+                    lookups[key]++
+                    return super.contains(o)
+                }
+            }
+        }
+        def deleted = counted("deleted", (0..<size).findAll { it % 10 == 0 }.collect { "test" + it })
+        def revoked = counted("revoked", (0..<size).findAll { it % 10 == 1 }.collect { "test" + it })
+        HashMap<String, AccountsConfiguration.Account> remote = [:]
+        HashMap<String, ECSCredentialsConfig.Account> remoteEcs = [:]
+        revoked.toArray().each { remote[it] = ec2(it) }
+
+        when:
+        def result = new AccountReconciler(deleted, revoked).reconcile(remote, remoteEcs, current, currentEcs)
+
+        then:
+        result.ec2Accounts.size() == size - deleted.size()
+        result.ecsAccounts.size() == size - deleted.size() - revoked.size()
+        result.deleted == 2 * deleted.size()
+        result.revoked == revoked.size()
+        result.replaced == revoked.size()
+        // Scanning the deleted names for every current account would look them up 100k times.
+        passes == [deleted: 1, revoked: 1]
+        lookups == [deleted: 0, revoked: 0]
+    }
+}
@@ -0,0 +1,87 @@
+package com.amazon.aws.spinnaker.plugin.registration
+
+import com.netflix.spinnaker.clouddriver.aws.security.config.CredentialsConfig
+import spock.lang.Specification
+import spock.lang.Unroll
+
+class AccountTemplatesSpec extends Specification {
+
+    @Unroll
+    def 'it should render #template the same way as iterative resolution'() {
+        given:
+        String[] values = [name, "123456789012", "prod", "main"]
+
+        expect:
+        AccountTemplates.Template.compile(template).render(values) ==
+                AccountTemplates.resolveIteratively(AccountTemplates.toMap(values), template)
+
+        where:
+        template                                        | name
+        "{{name}}-keypair"                              | "test1"
+        "no placeholders"                               | "test1"
+        "{{unknown}}-{{name}}"                          | "test1"
+        "{{{{name}}}}"                                  | "name"
+        "arn:aws:iam::{{accountId}}:role/{{name}}"      | "test1"
+        "{{environment}}/{{accountType}}/{{name}}{{"    | "test1"
+        "{{name}}"                                      | "{{accountId}}"
+        "{{accountId}}-{{name}}"                        | "dots.and-dashes"
+    }
+
+    def 'it should substitute values literally'() {
+        given:
+        String[] values = ['weird$1\\name', "1", "env", "type"]
+
+        expect:
+        AccountTemplates.Template.compile("{{name}}-keypair").render(values) == 'weird$1\\name-keypair'
+    }
+
+    def 'it should substitute values literally when they hold placeholders'() {
+        given:
+        String[] values = ['{{accountId}}$1\\name', '$0', "env", "type"]
+
+        expect:
+        AccountTemplates.resolveIteratively(AccountTemplates.toMap(values), "{{name}}-keypair") == '$0$1\\name-keypair'
+        AccountTemplates.Template.compile("{{name}}-keypair").render(values) == '$0$1\\name-keypair'
+    }
+
+    def 'it should detect templates that never stop expanding'() {
+        given:
+        String[] values = ["{{name}}x", "1", "env", "type"]
+
+        when:
+        AccountTemplates.Template.compile("{{name}}").render(values)
+
+        then:
+        def e = thrown(RuntimeException)
+        e.message == "too many levels of templatery"
+    }
+
+    def 'it should prefer account values over default templates'() {
+        given:
+        String[] values = ["test1", "1", "env", "type"]
+        def template = AccountTemplates.Template.compile("{{name}}-default")
+
+        expect:
+        AccountTemplates.resolve(values, "role/{{name}}", template) == "role/test1"
+        AccountTemplates.resolve(values, null, template) == "test1-default"
+        AccountTemplates.resolve(values, null, null) == null
+    }
+
+    def 'it should reuse compiled templates until the credentials config changes'() {
+        given:
+        CredentialsConfig credentialsConfig = new CredentialsConfig() {{
+            setDefaultKeyPairTemplate("{{name}}-keypair")
+        }}
+
+        when:
+        def first = AccountTemplates.forConfig(credentialsConfig)
+        def second = AccountTemplates.forConfig(credentialsConfig)
+        credentialsConfig.setDefaultKeyPairTemplate("{{name}}-other")
+        def third = AccountTemplates.forConfig(credentialsConfig)
+
+        then:
+        first.is(second)
+        !third.is(first)
+        third.keyPair.render(["test1", "1", "env", "type"] as String[]) == "test1-other"
+    }
+}
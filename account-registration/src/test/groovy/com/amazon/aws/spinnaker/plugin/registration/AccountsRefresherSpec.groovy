@@ -0,0 +1,100 @@
+package com.amazon.aws.spinnaker.plugin.registration
+
+import com.netflix.spinnaker.clouddriver.aws.security.config.AccountsConfiguration
+import com.netflix.spinnaker.clouddriver.ecs.security.ECSCredentialsConfig
+import spock.lang.Specification
+import spock.util.concurrent.PollingConditions
+
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.TimeUnit
+
+class AccountsRefresherSpec extends Specification {
+    def accountsStatus = Mock(AccountsStatus)
+
+    def 'it should publish accounts from a successful sync'() {
+        given:
+        def refresher = new AccountsRefresher(accountsStatus) {{
+            enabled = true
+            interval = 60000
+            initialSyncTimeout = 5000
+        }}
+        def ec2Account = new AccountsConfiguration.Account(name: "test1")
+        def ecsAccount = new ECSCredentialsConfig.Account(name: "test1-ecs")
+        accountsStatus.getSnapshot() >> AccountsSnapshot.EMPTY.next(["test1": ec2Account], ["test1-ecs": ecsAccount], "2020-08-25T16:52:59.026696+00:00")
+
+        when:
+        refresher.start()
+
+        then:
+        1 * accountsStatus.getDesiredAccounts() >> true
+        refresher.getEc2Accounts() == [ec2Account]
+        refresher.getEcsAccounts() == [ecsAccount]
+
+        cleanup:
+        refresher.stop()
+    }
+
+    def 'it should not publish anything before the first successful sync'() {
+        given:
+        def refresher = new AccountsRefresher(accountsStatus)
+        accountsStatus.getSnapshot() >> AccountsSnapshot.EMPTY
+
+        when:
+        refresher.refresh()
+
+        then:
+        1 * accountsStatus.getDesiredAccounts() >> { throw new RuntimeException("oh no") }
+        refresher.getEc2Accounts() == null
+        refresher.getEcsAccounts() == null
+    }
+
+    def 'it should not wait longer than the initial sync timeout'() {
+        given:
+        def release = new CountDownLatch(1)
+        def refresher = new AccountsRefresher(accountsStatus) {{
+            enabled = true
+            interval = 60000
+            initialSyncTimeout = 100
+        }}
+        accountsStatus.getDesiredAccounts() >> { release.await(5, TimeUnit.SECONDS); false }
+        accountsStatus.getSnapshot() >> AccountsSnapshot.EMPTY
+
+        when:
+        refresher.start()
+
+        then:
+        refresher.getEc2Accounts() == null
+
+        cleanup:
+        release.countDown()
+        refresher.stop()
+    }
+
+    def 'it should keep syncing until stopped'() {
+        given:
+        def conditions = new PollingConditions(timeout: 5)
+        def syncs = 0
+        def refresher = new AccountsRefresher(accountsStatus) {{
+            enabled = true
+            interval = 10
+            jitter = 5
+        }}
+        accountsStatus.getDesiredAccounts() >> { syncs++; false }
+
+        when:
+        refresher.start()
+
+        then:
+        conditions.eventually {
+            assert syncs >= 3
+        }
+
+        when:
+        refresher.destroy()
+        def stoppedAt = syncs
+        Thread.sleep(100)
+
+        then:
+        syncs == stoppedAt
+    }
+}
@@ -0,0 +1,97 @@
+package com.amazon.aws.spinnaker.plugin.registration
+
+import com.google.common.collect.ImmutableList
+import com.netflix.spinnaker.clouddriver.aws.security.config.AccountsConfiguration
+import com.netflix.spinnaker.clouddriver.aws.security.config.CredentialsConfig
+import com.netflix.spinnaker.clouddriver.ecs.security.ECSCredentialsConfig
+import spock.lang.Specification
+
+class AccountsSnapshotSpec extends Specification {
+
+    static AccountsConfiguration.Account account(String name, String assumeRole, List<String> regions) {
+        return new AccountsConfiguration.Account(
+                name: name,
+                accountId: name.replace("test", ""),
+                assumeRole: assumeRole,
+                regions: regions.collect { new CredentialsConfig.Region(name: it) }
+        )
+    }
+
+    def 'it should report every account as added in the first snapshot'() {
+        given:
+        def test1 = account("test1", "role/role1", ["us-west-2"])
+        def test1Ecs = new ECSCredentialsConfig.Account(name: "test1-ecs", awsAccount: "test1")
+
+        when:
+        def snapshot = AccountsSnapshot.EMPTY.next(["test1": test1], ["test1-ecs": test1Ecs], "2020-08-25T16:52:59.026696+00:00")
+
+        then:
+        snapshot.generation == 1
+        snapshot.ec2Changes.added == [test1]
+        snapshot.ecsChanges.added == [test1Ecs]
+        snapshot.ec2Changes.updated.isEmpty()
+        snapshot.ec2Changes.removed.isEmpty()
+        !snapshot.ec2Changes.isEmpty()
+    }
+
+    def 'it should keep unchanged accounts and report added, updated and removed ones'() {
+        given:
+        def previous = AccountsSnapshot.EMPTY.next([
+                "test1": account("test1", "role/role1", ["us-west-2"]),
+                "test2": account("test2", "role/role2", ["us-west-2"]),
+                "test3": account("test3", "role/role3", ["us-west-2"]),
+        ], [:], "2020-08-25T16:52:59.026696+00:00")
+        def sameAsBefore = account("test1", "role/role1", ["us-west-2"])
+        def changedRegions = account("test2", "role/role2", ["us-west-2", "us-east-1"])
+        def added = account("test4", "role/role4", ["us-west-2"])
+
+        when:
+        def snapshot = previous.next([
+                "test1": sameAsBefore,
+                "test2": changedRegions,
+                "test4": added,
+        ], [:], "2020-08-26T16:52:59.026696+00:00")
+
+        then:
+        snapshot.generation == 2
+        snapshot.ec2Accounts["test1"].is(previous.ec2Accounts["test1"])
+        snapshot.ec2Accounts["test2"].is(changedRegions)
+        snapshot.ec2Changes.unchanged == ["test1"] as Set
+        snapshot.ec2Changes.updated == [changedRegions]
+        snapshot.ec2Changes.added == [added]
+        snapshot.ec2Changes.removed == ["test3"] as Set
+    }
+
+    def 'it should not report changes when nothing changed'() {
+        given:
+        def test1 = account("test1", "role/role1", ["us-west-2"])
+        def test1Ecs = new ECSCredentialsConfig.Account(name: "test1-ecs", awsAccount: "test1")
+        def previous = AccountsSnapshot.EMPTY.next(["test1": test1], ["test1-ecs": test1Ecs], "2020-08-25T16:52:59.026696+00:00")
+
+        when:
+        def snapshot = previous.next(
+                ["test1": account("test1", "role/role1", ["us-west-2"])],
+                ["test1-ecs": new ECSCredentialsConfig.Account(name: "test1-ecs", awsAccount: "test1")],
+                "2020-08-26T16:52:59.026696+00:00")
+
+        then:
+        snapshot.ec2Changes.isEmpty()
+        snapshot.ecsChanges.isEmpty()
+        snapshot.ec2AccountsList[0].is(test1)
+        snapshot.ecsAccountsList[0].is(test1Ecs)
+        snapshot.hasChangedSince(previous.generation)
+    }
+
+    def 'it should hand out account lists that are not copied again'() {
+        given:
+        def snapshot = AccountsSnapshot.EMPTY.next(
+                ["test1": account("test1", "role/role1", ["us-west-2"]), "test2": account("test2", "role/role2", ["us-west-2"])],
+                ["test1-ecs": new ECSCredentialsConfig.Account(name: "test1-ecs", awsAccount: "test1")],
+                "2020-08-25T16:52:59.026696+00:00")
+
+        expect:
+        ImmutableList.copyOf(snapshot.ec2AccountsList).is(snapshot.ec2AccountsList)
+        ImmutableList.copyOf(snapshot.ecsAccountsList).is(snapshot.ecsAccountsList)
+        snapshot.ec2AccountsList*.name == ["test1", "test2"]
+    }
+}
@@ -0,0 +1,93 @@
+package com.amazon.aws.spinnaker.plugin.registration
+
+import com.netflix.spinnaker.clouddriver.aws.security.config.AccountsConfiguration
+import com.netflix.spinnaker.clouddriver.aws.security.config.CredentialsConfig
+import com.netflix.spinnaker.clouddriver.ecs.security.ECSCredentialsConfig
+import spock.lang.Specification
+import spock.lang.TempDir
+
+import java.nio.ByteBuffer
+import java.nio.file.Files
+import java.nio.file.Path
+
+class AccountsSnapshotStoreSpec extends Specification {
+    @TempDir
+    Path dir
+
+    static AccountsSnapshotStore.State state() {
+        return new AccountsSnapshotStore.State(
+                configFingerprint: "config1",
+                lastSyncTime: "2020-08-25T16:52:59.026696+00:00",
+                ec2Accounts: [new AccountsConfiguration.Account(
+                        name: "test1",
+                        accountId: "1",
+                        assumeRole: "role/role1",
+                        regions: [new CredentialsConfig.Region(name: "us-west-2")])],
+                ecsAccounts: [new ECSCredentialsConfig.Account(name: "test1-ecs", awsAccount: "test1")],
+                pageValidators: ["http://localhost:8080/hello/": new PageValidators('"v1"', null, "http://localhost:8080/v/next")])
+    }
+
+    def 'it should restore what was saved'() {
+        given:
+        def store = new AccountsSnapshotStore(dir.resolve("accounts.snapshot"))
+
+        when:
+        store.save(state())
+        def restored = store.load("config1")
+
+        then:
+        restored.lastSyncTime == "2020-08-25T16:52:59.026696+00:00"
+        restored.ec2Accounts == state().ec2Accounts
+        restored.ecsAccounts == state().ecsAccounts
+        restored.pageValidators == state().pageValidators
+        Files.list(dir).collect { it.fileName.toString() } == ["accounts.snapshot"]
+    }
+
+    def 'it should replace the previous snapshot'() {
+        given:
+        def store = new AccountsSnapshotStore(dir.resolve("nested/accounts.snapshot"))
+        store.save(state())
+        def newer = state()
+        newer.lastSyncTime = "2020-09-25T16:52:59.026696+00:00"
+
+        when:
+        store.save(newer)
+
+        then:
+        store.load("config1").lastSyncTime == "2020-09-25T16:52:59.026696+00:00"
+    }
+
+    def 'it should ignore missing, corrupt and incompatible snapshots'() {
+        given:
+        def file = dir.resolve("accounts.snapshot")
+        def store = new AccountsSnapshotStore(file)
+
+        expect:
+        store.load("config1") == null
+
+        when:
+        store.save(state())
+        byte[] bytes = Files.readAllBytes(file)
+        bytes[bytes.length - 5] ^= 0xff
+        Files.write(file, bytes)
+
+        then:
+        store.load("config1") == null
+
+        when:
+        store.save(state())
+        bytes = Files.readAllBytes(file)
+        ByteBuffer.wrap(bytes).putInt(4, AccountsSnapshotStore.FORMAT_VERSION + 1)
+        Files.write(file, bytes)
+
+        then:
+        store.load("config1") == null
+
+        when:
+        store.save(state())
+
+        then:
+        store.load("config2") == null
+        store.load("config1") != null
+    }
+}
@@ -1,15 +1,22 @@
 package com.amazon.aws.spinnaker.plugin.registration
 
+import com.netflix.spectator.api.DefaultRegistry
+import com.netflix.spectator.api.patterns.PolledMeter
 import com.netflix.spinnaker.clouddriver.aws.security.config.AccountsConfiguration
 import com.netflix.spinnaker.clouddriver.aws.security.config.CredentialsConfig
 import com.netflix.spinnaker.clouddriver.ecs.security.ECSCredentialsConfig
 import org.springframework.http.ResponseEntity
+import org.springframework.http.MediaType
+import org.springframework.http.converter.json.MappingJackson2HttpMessageConverter
+import org.springframework.mock.http.client.MockClientHttpRequest
+import org.springframework.mock.http.client.MockClientHttpResponse
 import org.springframework.web.client.HttpClientErrorException
 import org.springframework.web.client.RestTemplate
 import org.springframework.http.HttpStatus;
 import org.springframework.http.HttpMethod;
 import spock.lang.Specification
 
+import java.nio.file.Files
 import java.time.Instant
 
 class AccountsStatusSpec extends Specification {
@@ -155,6 +162,958 @@ class AccountsStatusSpec extends Specification {
         accountsStatus.getLastSyncTime() == "2020-09-20T16:52:59.026696+00:00"
     }
 
+    def "it should fetch pages ahead and keep page order"() {
+        given:
+        AccountsStatus accountsStatus = new AccountsStatus(accountsConfiguration, credentialsConfig, "http://localhost:8080/hello/", 0L, 0L) {{
+            restTemplate = mockRest
+            setECSCredentialsConfig(ecsConfig)
+            maxPagesInFlight = 2
+        }}
+        Response response = new Response(){{
+            accounts = [
+                    new Account(){{
+                        name = "test1"
+                        accountId = "1"
+                        assumeRole = "role/role1"
+                        regions = ["us-west-2"]
+                        providers = ["ec2"]
+                        updatedAt = "2020-08-31T16:52:59.026696+00:00"
+                        status = "ACTIVE"
+                    }}
+            ]
+            pagination = new AccountPagination() {{
+                nextUrl = "http://localhost:8080/v/next"
+            }}
+        }}
+        Response responseNext = new Response(){{
+            accounts = [
+                    new Account(){{
+                        name = "test8"
+                        accountId = "8"
+                        assumeRole = "role/role8"
+                        regions = ["us-west-2"]
+                        providers = ["ecs", "ec2"]
+                        updatedAt = "2020-09-20T16:52:59.026696+00:00"
+                        status = "ACTIVE"
+                    }}
+            ]
+            pagination = new AccountPagination() {{
+                nextUrl = "http://localhost:8080/v/last"
+            }}
+        }}
+        Response responseLast = new Response(){{
+            accounts = [
+                    new Account(){{
+                        name = "test8"
+                        accountId = "88"
+                        assumeRole = "role/role88"
+                        regions = ["us-west-2"]
+                        providers = ["ec2"]
+                        updatedAt = "2020-09-10T16:52:59.026696+00:00"
+                        status = "ACTIVE"
+                    }}
+            ]
+        }}
+
+        when:
+        def proceed = accountsStatus.getDesiredAccounts()
+
+        then:
+        1 * mockRest.getForObject("http://localhost:8080/hello/", _) >> response
+        1 * mockRest.getForObject("http://localhost:8080/v/next", _) >> responseNext
+        1 * mockRest.getForObject("http://localhost:8080/v/last", _) >> responseLast
+        proceed
+        accountsStatus.getEc2Accounts().get("test8").getAccountId() == "8"
+        accountsStatus.getEcsAccounts().containsKey("test8-ecs")
+        accountsStatus.getLastSyncTime() == "2020-09-20T16:52:59.026696+00:00"
+    }
+
+    def "it should stop fetching ahead when a page fails"() {
+        given:
+        AccountsStatus accountsStatus = new AccountsStatus(accountsConfiguration, credentialsConfig, "http://localhost:8080/hello/", 0L, 0L) {{
+            restTemplate = mockRest
+            setECSCredentialsConfig(ecsConfig)
+            maxPagesInFlight = 2
+        }}
+        Response response = new Response(){{
+            accounts = [
+                    new Account(){{
+                        name = "test1"
+                        accountId = "1"
+                        assumeRole = "role/role1"
+                        regions = ["us-west-2"]
+                        providers = ["ec2"]
+                        updatedAt = "2020-08-31T16:52:59.026696+00:00"
+                        status = "ACTIVE"
+                    }}
+            ]
+            pagination = new AccountPagination() {{
+                nextUrl = "http://localhost:8080/v/next"
+            }}
+        }}
+
+        when:
+        accountsStatus.getDesiredAccounts()
+
+        then:
+        1 * mockRest.getForObject("http://localhost:8080/hello/", _) >> response
+        1 * mockRest.getForObject("http://localhost:8080/v/next", _) >> { throw new RuntimeException("oh no") }
+        thrown(RuntimeException)
+        accountsStatus.getLastSyncTime() == null
+    }
+
+    def "it should back off and count a failure when a later page throws"() {
+        given:
+        AccountsStatus accountsStatus = new AccountsStatus(accountsConfiguration, credentialsConfig, "http://localhost:8080/hello/", 0L, 0L) {{
+            restTemplate = mockRest
+            setECSCredentialsConfig(ecsConfig)
+            maxBackoffTime = 3600000
+            circuitFailureThreshold = 2
+            circuitOpenDuration = 300000
+            checkpointExpiry = 600000
+        }}
+        def page = new Response(
+                accounts: [new Account(name: "test1", accountId: "1", assumeRole: "role/test1", regions: ["us-west-2"],
+                        providers: ["ec2"], updatedAt: "2020-08-31T16:52:59.026696+00:00", status: "ACTIVE")],
+                pagination: new AccountPagination(nextUrl: "http://localhost:8080/v/next"))
+        def before = Instant.now()
+
+        when:
+        accountsStatus.getDesiredAccounts()
+
+        then:
+        1 * mockRest.getForObject("http://localhost:8080/hello/", _) >> page
+        1 * mockRest.getForObject("http://localhost:8080/v/next", _) >> { throw new RuntimeException("oh no") }
+        thrown(RuntimeException)
+        accountsStatus.getRetryCount().get() == 1
+        !accountsStatus.getNextTry().isBefore(before.plusMillis(PollScheduler.BASE_DELAY))
+        accountsStatus.getPollScheduler().getState().getCircuit() == PollScheduler.Circuit.CLOSED
+        accountsStatus.getCheckpoint().getNextUrl() == "http://localhost:8080/v/next"
+
+        when:
+        accountsStatus.setNextTry(null)
+        accountsStatus.getDesiredAccounts()
+
+        then:
+        1 * mockRest.getForObject("http://localhost:8080/v/next", _) >> { throw new RuntimeException("oh no") }
+        thrown(RuntimeException)
+        accountsStatus.getRetryCount().get() == 2
+        accountsStatus.getPollScheduler().getState().getCircuit() == PollScheduler.Circuit.OPEN
+    }
+
+    def "it should resume a failed sync at the page that failed"() {
+        given:
+        AccountsStatus accountsStatus = new AccountsStatus(accountsConfiguration, credentialsConfig, "http://localhost:8080/hello/", 0L, 0L) {{
+            restTemplate = mockRest
+            setECSCredentialsConfig(ecsConfig)
+        }}
+        accountsStatus.setCheckpointExpiry(expiry)
+        def page = { String name, String updatedAt, String nextUrl ->
+            new Response(
+                    accounts: [new Account(name: name, accountId: name.replace("test", ""), assumeRole: "role/" + name,
+                            regions: ["us-west-2"], providers: ["ec2"], updatedAt: updatedAt, status: "ACTIVE")],
+                    pagination: nextUrl == null ? null : new AccountPagination(nextUrl: nextUrl))
+        }
+
+        when:
+        accountsStatus.getDesiredAccounts()
+
+        then:
+        1 * mockRest.getForObject("http://localhost:8080/hello/", _) >> page("test1", "2020-08-31T16:52:59.026696+00:00", "http://localhost:8080/v/next")
+        1 * mockRest.getForObject("http://localhost:8080/v/next", _) >> page("test8", "2020-09-20T16:52:59.026696+00:00", "http://localhost:8080/v/last")
+        1 * mockRest.getForObject("http://localhost:8080/v/last", _) >> { throw new RuntimeException("oh no") }
+        thrown(RuntimeException)
+        accountsStatus.getLastSyncTime() == null
+
+        when:
+        sleep(wait)
+        def proceed = accountsStatus.getDesiredAccounts()
+
+        then:
+        firstPageRequests * mockRest.getForObject("http://localhost:8080/hello/", _) >> page("test1", "2020-08-31T16:52:59.026696+00:00", "http://localhost:8080/v/next")
+        firstPageRequests * mockRest.getForObject("http://localhost:8080/v/next", _) >> page("test8", "2020-09-20T16:52:59.026696+00:00", "http://localhost:8080/v/last")
+        1 * mockRest.getForObject("http://localhost:8080/v/last", _) >> page("test9", "2020-09-10T16:52:59.026696+00:00", null)
+        proceed
+        accountsStatus.getEc2Accounts().keySet().containsAll(["test1", "test8", "test9"])
+        accountsStatus.getLastSyncTime() == "2020-09-20T16:52:59.026696+00:00"
+        accountsStatus.getCheckpoint() == null
+
+        where:
+        expiry | wait | firstPageRequests
+        600000 | 0    | 0
+        1      | 10   | 1
+        0      | 0    | 1
+    }
+
+    def "it should publish partitions as they sync and keep the accounts of a failing one"() {
+        given:
+        AccountsStatus accountsStatus = new AccountsStatus(accountsConfiguration, credentialsConfig, "http://localhost:8080/hello/", 0L, 0L) {{
+            restTemplate = mockRest
+            setECSCredentialsConfig(ecsConfig)
+            maxBackoffTime = 0
+            partitions = ["shard=0", "shard=1"] as String[]
+            partitionSyncTimeout = 10000
+        }}
+        def page = { String name, String updatedAt ->
+            new Response(
+                    accounts: [new Account(name: name, accountId: name.replace("test", ""), assumeRole: "role/" + name,
+                            regions: ["us-west-2"], providers: ["ec2"], updatedAt: updatedAt, status: "ACTIVE")])
+        }
+
+        when:
+        def proceed = accountsStatus.getDesiredAccounts()
+
+        then:
+        1 * mockRest.getForObject("http://localhost:8080/hello/?shard=0", _) >> page("test1", "2020-08-31T16:52:59.026696+00:00")
+        1 * mockRest.getForObject("http://localhost:8080/hello/?shard=1", _) >> { throw new RuntimeException("oh no") }
+        proceed
+        accountsStatus.getEc2Accounts().containsKey("test1")
+        accountsStatus.getUnsyncedPartitionCount() == 1
+
+        when:
+        proceed = accountsStatus.getDesiredAccounts()
+
+        then:
+        1 * mockRest.getForObject({ it.startsWith("http://localhost:8080/hello/?shard=0&UpdatedAt.gt=2020-08-31") }, _) >> new Response()
+        1 * mockRest.getForObject("http://localhost:8080/hello/?shard=1", _) >> page("test2", "2020-09-20T16:52:59.026696+00:00")
+        proceed
+        accountsStatus.getEc2Accounts().keySet().containsAll(["test1", "test2"])
+        accountsStatus.getLastSyncTime() == "2020-08-31T16:52:59.026696+00:00"
+
+        when:
+        proceed = accountsStatus.getDesiredAccounts()
+
+        then:
+        1 * mockRest.getForObject({ it.startsWith("http://localhost:8080/hello/?shard=0&UpdatedAt.gt=2020-08-31") }, _) >> page("test3", "2020-09-25T16:52:59.026696+00:00")
+        1 * mockRest.getForObject({ it.startsWith("http://localhost:8080/hello/?shard=1&UpdatedAt.gt=2020-09-20") }, _) >> { throw new RuntimeException("oh no") }
+        proceed
+        accountsStatus.getEc2Accounts().keySet().containsAll(["test1", "test2", "test3"])
+        accountsStatus.getLastSyncTime() == "2020-09-20T16:52:59.026696+00:00"
+
+        cleanup:
+        accountsStatus.destroy()
+    }
+
+    def "it should not let a partition that never syncs hold back the others"() {
+        given:
+        AccountsStatus accountsStatus = new AccountsStatus(accountsConfiguration, credentialsConfig, "http://localhost:8080/hello/", 0L, 0L) {{
+            restTemplate = mockRest
+            setECSCredentialsConfig(ecsConfig)
+            maxBackoffTime = 0
+            partitions = ["shard=0", "shard=1"] as String[]
+            partitionSyncTimeout = 10000
+        }}
+        def page = { String name, String updatedAt ->
+            new Response(
+                    accounts: [new Account(name: name, accountId: name.replace("test", ""), assumeRole: "role/" + name,
+                            regions: ["us-west-2"], providers: ["ec2"], updatedAt: updatedAt, status: "ACTIVE")])
+        }
+
+        when:
+        def first = accountsStatus.getDesiredAccounts()
+        def second = accountsStatus.getDesiredAccounts()
+        def third = accountsStatus.getDesiredAccounts()
+
+        then:
+        1 * mockRest.getForObject("http://localhost:8080/hello/?shard=0", _) >> page("test1", "2020-08-31T16:52:59.026696+00:00")
+        1 * mockRest.getForObject({ it.startsWith("http://localhost:8080/hello/?shard=0&UpdatedAt.gt=2020-08-31") }, _) >> page("test3", "2020-09-25T16:52:59.026696+00:00")
+        1 * mockRest.getForObject({ it.startsWith("http://localhost:8080/hello/?shard=0&UpdatedAt.gt=2020-09-25") }, _) >> new Response()
+        3 * mockRest.getForObject("http://localhost:8080/hello/?shard=1", _) >> { throw new RuntimeException("oh no") }
+        first
+        second
+        !third
+        // test9 and test20 were published before and may belong to shard=1, so they are kept.
+        accountsStatus.getEc2Accounts().keySet() == ["test1", "test3", "test9", "test20"] as Set
+        accountsStatus.getLastSyncTime() == "2020-09-25T16:52:59.026696+00:00"
+        accountsStatus.getUnsyncedPartitionCount() == 1
+
+        cleanup:
+        accountsStatus.destroy()
+    }
+
+    def "it should keep pushed accounts over partition merges until a partition returns them"() {
+        given:
+        AccountsStatus accountsStatus = new AccountsStatus(accountsConfiguration, credentialsConfig, "http://localhost:8080/hello/", 0L, 0L) {{
+            restTemplate = mockRest
+            setECSCredentialsConfig(ecsConfig)
+            maxBackoffTime = 0
+            partitions = ["shard=0", "shard=1"] as String[]
+            partitionSyncTimeout = 10000
+        }}
+        def account = { String name, String accountId, String updatedAt ->
+            new Account(name: name, accountId: accountId, assumeRole: "role/" + name, regions: ["us-west-2"],
+                    providers: ["ec2"], updatedAt: updatedAt, status: "ACTIVE")
+        }
+
+        when:
+        accountsStatus.getDesiredAccounts()
+        accountsStatus.applyPushedAccounts(new Response(accounts: [account("test5", "55", "2020-09-01T16:52:59.026696+00:00")]))
+        def proceed = accountsStatus.getDesiredAccounts()
+
+        then:
+        1 * mockRest.getForObject("http://localhost:8080/hello/?shard=0", _) >> new Response(accounts: [account("test1", "1", "2020-08-31T16:52:59.026696+00:00")])
+        1 * mockRest.getForObject("http://localhost:8080/hello/?shard=1", _) >> new Response(accounts: [account("test2", "2", "2020-08-31T16:52:59.026696+00:00")])
+        1 * mockRest.getForObject({ it.startsWith("http://localhost:8080/hello/?shard=0&UpdatedAt.gt=") }, _) >> new Response(accounts: [account("test3", "3", "2020-09-02T16:52:59.026696+00:00")])
+        1 * mockRest.getForObject({ it.startsWith("http://localhost:8080/hello/?shard=1&UpdatedAt.gt=") }, _) >> new Response()
+        proceed
+        accountsStatus.getEc2Accounts().keySet().containsAll(["test1", "test2", "test3", "test5"])
+        accountsStatus.getEc2Accounts().get("test5").getAccountId() == "55"
+
+        when:
+        proceed = accountsStatus.getDesiredAccounts()
+
+        then:
+        1 * mockRest.getForObject({ it.startsWith("http://localhost:8080/hello/?shard=0&UpdatedAt.gt=") }, _) >> new Response()
+        1 * mockRest.getForObject({ it.startsWith("http://localhost:8080/hello/?shard=1&UpdatedAt.gt=") }, _) >> new Response(accounts: [account("test5", "5", "2020-09-03T16:52:59.026696+00:00")])
+        proceed
+        accountsStatus.getEc2Accounts().get("test5").getAccountId() == "5"
+        accountsStatus.getAppliedEc2().isEmpty()
+
+        cleanup:
+        accountsStatus.destroy()
+    }
+
+    def "it should leave the remote host alone while the circuit is open and space out unchanged polls"() {
+        given:
+        AccountsStatus accountsStatus = new AccountsStatus(accountsConfiguration, credentialsConfig, "http://localhost:8080/hello/", 0L, 0L) {{
+            restTemplate = mockRest
+            setECSCredentialsConfig(ecsConfig)
+            maxBackoffTime = 0
+            circuitFailureThreshold = 2
+            circuitOpenDuration = 600000
+            maxPollInterval = 60000
+        }}
+        Response response = new Response(accounts: [
+                new Account(name: "test1", accountId: "1", assumeRole: "role/role1", regions: ["us-west-2"],
+                        providers: ["ec2"], updatedAt: "2020-08-31T16:52:59.026696+00:00", status: "ACTIVE")])
+
+        when:
+        accountsStatus.getDesiredAccounts()
+        accountsStatus.getDesiredAccounts()
+        def proceed = accountsStatus.getDesiredAccounts()
+
+        then:
+        2 * mockRest.getForObject("http://localhost:8080/hello/", _) >> { throw new RuntimeException("oh no") }
+        !proceed
+        accountsStatus.getPollScheduler().getState().getCircuit() == PollScheduler.Circuit.OPEN
+        accountsStatus.getNextTry().isAfter(Instant.now().plusSeconds(500))
+
+        when:
+        accountsStatus.nextTry = Instant.now().minusMillis(1)
+        proceed = accountsStatus.getDesiredAccounts()
+
+        then:
+        1 * mockRest.getForObject("http://localhost:8080/hello/", _) >> response
+        proceed
+        accountsStatus.getPollScheduler().getState().getCircuit() == PollScheduler.Circuit.CLOSED
+
+        when:
+        accountsStatus.getDesiredAccounts()
+        proceed = accountsStatus.getDesiredAccounts()
+
+        then:
+        1 * mockRest.getForObject({ it.contains("UpdatedAt.gt=") }, _) >> new Response()
+        !proceed
+        accountsStatus.getPollScheduler().getState().getNextPoll().isAfter(Instant.now())
+    }
+
+    def "it should keep a capped report of the last syncs"() {
+        given:
+        AccountsStatus accountsStatus = new AccountsStatus(accountsConfiguration, credentialsConfig, "http://localhost:8080/hello/", 0L, 0L) {{
+            restTemplate = mockRest
+            setECSCredentialsConfig(ecsConfig)
+            maxBackoffTime = 0
+            syncReportCount = 2
+        }}
+        def accounts = (1..60).collect {
+            new Account(name: "new" + it, accountId: String.valueOf(100 + it), assumeRole: "role/role" + it, regions: ["us-west-2"],
+                    providers: ["ec2"], updatedAt: "2020-08-31T16:52:59.026696+00:00", status: "ACTIVE")
+        }
+        accounts << new Account(name: "invalid", accountId: "99", assumeRole: "role/invalid", regions: ["mars-1"],
+                providers: ["ec2"], updatedAt: "2020-08-31T16:52:59.026696+00:00", status: "ACTIVE")
+
+        when:
+        accountsStatus.getDesiredAccounts()
+        def first = accountsStatus.getReports()[0]
+
+        then:
+        1 * mockRest.getForObject(_, _) >> new Response(accounts: accounts)
+        first.source == "poll"
+        first.result == "updated"
+        first.accountsReceived == 61
+        first.outcomes == [converted: 60, rejected: 1]
+        first.rejected*.name == ["invalid"]
+        first.rejected[0].reason == "invalid region mars-1"
+        first.ec2Changes.addedCount == 63
+        first.ec2Changes.added.size() == SyncReport.MAX_NAMES
+        first.watermark == "2020-08-31T16:52:59.026696+00:00"
+
+        when:
+        accountsStatus.getDesiredAccounts()
+        accountsStatus.getDesiredAccounts()
+        def reports = accountsStatus.getReports()
+
+        then:
+        2 * mockRest.getForObject(_, _) >> new Response() >> { throw new RuntimeException("oh no") }
+        reports*.result == ["failure", "unchanged"]
+        reports[0].error == "oh no"
+    }
+
+    def "it should look up a single account without moving the last sync time"() {
+        given:
+        AccountsStatus accountsStatus = new AccountsStatus(accountsConfiguration, credentialsConfig, "http://localhost:8080/hello/", 0L, 0L) {{
+            restTemplate = mockRest
+            setECSCredentialsConfig(ecsConfig)
+            accountUrl = "http://localhost:8080/accounts/{name}"
+            syncReportCount = 10
+        }}
+        def account = { String name, String updatedAt ->
+            new Account(name: name, accountId: name.hashCode().toString(), assumeRole: "role/" + name,
+                    regions: ["us-west-2"], providers: ["ec2"], updatedAt: updatedAt, status: "ACTIVE")
+        }
+
+        when:
+        def beforeSync = accountsStatus.fetchAccount("new1")
+
+        then:
+        0 * mockRest._
+        beforeSync == AccountsStatus.Lookup.FAILED
+
+        when:
+        accountsStatus.getDesiredAccounts()
+        def generation = accountsStatus.getGeneration()
+        def found = accountsStatus.fetchAccount("new-2")
+        def known = accountsStatus.fetchAccount("new-2")
+        def notFound = accountsStatus.fetchAccount("new3")
+        def gone = accountsStatus.fetchAccount("new4")
+
+        then:
+        1 * mockRest.getForObject("http://localhost:8080/hello/", _) >>
+                new Response(accounts: [account("new1", "2020-08-31T16:52:59.026696+00:00")])
+        1 * mockRest.getForObject("http://localhost:8080/accounts/new-2", Response) >>
+                new Response(accounts: [account("new-2", "2020-01-01T00:00:00+00:00"), account("other", "2020-01-01T00:00:00+00:00")])
+        1 * mockRest.getForObject("http://localhost:8080/accounts/new3", Response) >>
+                { throw HttpClientErrorException.create(HttpStatus.NOT_FOUND, "Not Found", null, null, null) }
+        1 * mockRest.getForObject("http://localhost:8080/accounts/new4", Response) >> { throw new RuntimeException("oh no") }
+        found == AccountsStatus.Lookup.FOUND
+        known == AccountsStatus.Lookup.FOUND
+        notFound == AccountsStatus.Lookup.NOT_FOUND
+        gone == AccountsStatus.Lookup.FAILED
+        accountsStatus.hasChangedSince(generation)
+        accountsStatus.getEc2Accounts().containsKey("new-2")
+        !accountsStatus.getEc2Accounts().containsKey("other")
+        accountsStatus.getLastSyncTime() == "2020-08-31T16:52:59.026696+00:00"
+        accountsStatus.getNextTry() == null
+        accountsStatus.getReports()*.source == ["lookup", "lookup", "lookup", "poll"]
+        accountsStatus.getReports()*.result == ["failure", "unchanged", "updated", "updated"]
+    }
+
+    def "it should tell a missing account from a failed lookup with IAM authentication"() {
+        given:
+        credentialsConfig.setAccessKeyId("access")
+        credentialsConfig.setSecretAccessKey("secret")
+        AccountsStatus accountsStatus = new AccountsStatus(accountsConfiguration, credentialsConfig, "http://localhost:8080/hello", 0L, 0L) {{
+            restTemplate = mockRest
+            setECSCredentialsConfig(ecsConfig)
+            iamAuth = true
+            accountUrl = "http://localhost:8080/accounts/{name}"
+        }}
+
+        when:
+        accountsStatus.getDesiredAccounts()
+        def notFound = accountsStatus.fetchAccount("new3")
+        def failed = accountsStatus.fetchAccount("new4")
+
+        then:
+        1 * mockRest.exchange("http://localhost:8080/hello", HttpMethod.GET, _, Response) >>
+                new ResponseEntity<Response>(new Response(accounts: [
+                        new Account(name: "test1", accountId: "1", assumeRole: "role/test1", regions: ["us-west-2"],
+                                providers: ["ec2"], updatedAt: "2020-08-31T16:52:59.026696+00:00", status: "ACTIVE")]), HttpStatus.OK)
+        1 * mockRest.exchange("http://localhost:8080/accounts/new3", HttpMethod.GET, _, Response) >>
+                { throw HttpClientErrorException.create(HttpStatus.NOT_FOUND, "Not Found", null, null, null) }
+        1 * mockRest.exchange("http://localhost:8080/accounts/new4", HttpMethod.GET, _, Response) >>
+                { throw HttpClientErrorException.create(HttpStatus.BAD_GATEWAY, "Bad Gateway", null, null, null) }
+        notFound == AccountsStatus.Lookup.NOT_FOUND
+        failed == AccountsStatus.Lookup.FAILED
+    }
+
+    def "it should only look up account names that can't change the lookup URL"() {
+        given:
+        AccountsStatus accountsStatus = new AccountsStatus(accountsConfiguration, credentialsConfig, "http://localhost:8080/hello/", 0L, 0L) {{
+            restTemplate = mockRest
+            setECSCredentialsConfig(ecsConfig)
+            accountUrl = "http://localhost:8080/accounts/{name}?SpinnakerAccountName={name}"
+        }}
+        accountsStatus.markSynced()
+
+        when:
+        def lookups = ["a/b", "a?x=1", "a&b=c", "a#b", "..", "a..b", "a b", "a%2Fb", "-a"].collect { accountsStatus.fetchAccount(it) }
+
+        then:
+        0 * mockRest._
+        lookups.every { it == AccountsStatus.Lookup.FAILED }
+
+        when:
+        def lookup = accountsStatus.fetchAccount("Team.prod_1~a-b")
+
+        then:
+        1 * mockRest.getForObject("http://localhost:8080/accounts/Team.prod_1~a-b?SpinnakerAccountName=Team.prod_1~a-b", Response) >> new Response()
+        lookup == AccountsStatus.Lookup.NOT_FOUND
+    }
+
+    def "it should not publish the accounts of earlier pages when a later page fails with checkpointExpiry #expiry #failure"() {
+        given:
+        AccountsStatus accountsStatus = new AccountsStatus(accountsConfiguration, credentialsConfig, "http://localhost:8080/hello/", 0L, 0L) {{
+            restTemplate = mockRest
+            setECSCredentialsConfig(ecsConfig)
+        }}
+        accountsStatus.setCheckpointExpiry(expiry)
+        def account = { String name, String role, String updatedAt ->
+            new Account(name: name, accountId: name.substring(4), assumeRole: role, regions: ["us-west-2"],
+                    providers: ["ec2"], updatedAt: updatedAt, status: "ACTIVE")
+        }
+        def firstPage = new Response(accounts: [account("test2", "role/role2-2", "2020-09-01T16:52:59.026696+00:00")],
+                pagination: new AccountPagination(nextUrl: "http://localhost:8080/v/next"))
+
+        when:
+        accountsStatus.getDesiredAccounts()
+        def published = accountsStatus.getSnapshot()
+        def proceed = false
+        try {
+            proceed = accountsStatus.getDesiredAccounts()
+        } catch (RuntimeException e) {
+            // Thrown to the caller of the sync, as for the first page.
+        }
+
+        then:
+        1 * mockRest.getForObject("http://localhost:8080/hello/", _) >> new Response(
+                accounts: [account("test2", "role/role2-1", "2020-08-31T16:52:59.026696+00:00")])
+        1 * mockRest.getForObject({ it.startsWith("http://localhost:8080/hello/?UpdatedAt.gt=") }, _) >> firstPage
+        1 * mockRest.getForObject({ it.startsWith("http://localhost:8080/v/next") }, _) >> {
+            if (failure == "throwing") {
+                throw new RuntimeException("oh no")
+            }
+            return null
+        }
+        !proceed
+        accountsStatus.getSnapshot().is(published)
+        accountsStatus.getEc2Accounts().get("test2").getAssumeRole() == "role/role2-1"
+        accountsStatus.getLastSyncTime() == "2020-08-31T16:52:59.026696+00:00"
+        accountsStatus.nextTry != null
+
+        where:
+        expiry | failure
+        600000 | "returning nothing"
+        0      | "returning nothing"
+        600000 | "throwing"
+        0      | "throwing"
+    }
+
+    def "it should back off and keep gathered pages when a page can't be retrieved"() {
+        given:
+        AccountsStatus accountsStatus = new AccountsStatus(accountsConfiguration, credentialsConfig, "http://localhost:8080/hello/", 0L, 0L) {{
+            restTemplate = mockRest
+            setECSCredentialsConfig(ecsConfig)
+            checkpointExpiry = 600000
+        }}
+        Response response = new Response(){{
+            accounts = [
+                    new Account(){{
+                        name = "test1"
+                        accountId = "1"
+                        assumeRole = "role/role1"
+                        regions = ["us-west-2"]
+                        providers = ["ec2"]
+                        updatedAt = "2020-08-31T16:52:59.026696+00:00"
+                        status = "ACTIVE"
+                    }}
+            ]
+            pagination = new AccountPagination() {{
+                nextUrl = "http://localhost:8080/v/next"
+            }}
+        }}
+
+        when:
+        def proceed = accountsStatus.getDesiredAccounts()
+
+        then:
+        1 * mockRest.getForObject("http://localhost:8080/hello/", _) >> response
+        1 * mockRest.getForObject("http://localhost:8080/v/next", _) >> null
+        !proceed
+        accountsStatus.getLastSyncTime() == null
+        accountsStatus.nextTry != null
+        accountsStatus.getCheckpoint().getNextUrl() == "http://localhost:8080/v/next"
+        accountsStatus.getCheckpoint().getPages().getPageCount() == 1
+    }
+
+    def "it should convert streamed accounts across pages"() {
+        given:
+        AccountsStatus accountsStatus = new AccountsStatus(accountsConfiguration, credentialsConfig, "http://localhost:8080/hello/", 0L, 0L) {{
+            restTemplate = mockRest
+            setECSCredentialsConfig(ecsConfig)
+            streaming = true
+        }}
+        def page = '{"SpinnakerAccounts": [{"SpinnakerAccountName": "test1", "AccountId": "1", "Regions": ["us-west-2"], ' +
+                '"SpinnakerProviders": ["ecs", "ec2"], "SpinnakerStatus": "ACTIVE", "SpinnakerAssumeRole": "role/role1-1", ' +
+                '"UpdatedAt": "2020-08-25T16:52:59.026696+00:00"}], "Pagination": {"NextUrl": "http://localhost:8080/v/next"}}'
+        def nextPage = '{"SpinnakerAccounts": [{"SpinnakerAccountName": "test8", "AccountId": "8", "Regions": ["us-west-2"], ' +
+                '"SpinnakerProviders": ["ec2"], "SpinnakerStatus": "ACTIVE", "SpinnakerAssumeRole": "role8", ' +
+                '"UpdatedAt": "2020-09-20T16:52:59.026696+00:00"}]}'
+
+        when:
+        def proceed = accountsStatus.getDesiredAccounts()
+
+        then:
+        1 * mockRest.execute("http://localhost:8080/hello/", HttpMethod.GET, _, _) >> { args ->
+            args[3].extractData(new MockClientHttpResponse(page.bytes, HttpStatus.OK))
+        }
+        1 * mockRest.execute("http://localhost:8080/v/next", HttpMethod.GET, _, _) >> { args ->
+            args[3].extractData(new MockClientHttpResponse(nextPage.bytes, HttpStatus.OK))
+        }
+        0 * mockRest.getForObject(_, _)
+        proceed
+        accountsStatus.getEc2Accounts().get("test1").getAssumeRole() == "role/role1-1"
+        accountsStatus.getEcsAccounts().containsKey("test1-ecs")
+        accountsStatus.getEc2Accounts().get("test8").getAssumeRole() == "role/role8"
+        accountsStatus.getLastSyncTime() == "2020-09-20T16:52:59.026696+00:00"
+    }
+
+    static MockClientHttpResponse jsonResponse(String body, HttpStatus status, Map<String, String> headers) {
+        def response = new MockClientHttpResponse(body.bytes, status)
+        response.getHeaders().setContentType(MediaType.APPLICATION_JSON)
+        headers.each { name, value -> response.getHeaders().set(name, value) }
+        return response
+    }
+
+    def "it should skip pages the remote host reports as not modified"() {
+        given:
+        // No account changed after the watermark, so both syncs request the same URLs.
+        AccountsStatus accountsStatus = new AccountsStatus(accountsConfiguration, credentialsConfig, "http://localhost:8080/hello/", 0L, 0L) {{
+            restTemplate = mockRest
+            setECSCredentialsConfig(ecsConfig)
+            conditionalRequests = true
+            lastSyncTime = "2020-09-20T16:52:59.026696+00:00"
+        }}
+        mockRest.getMessageConverters() >> [new MappingJackson2HttpMessageConverter()]
+        def page = '{"SpinnakerAccounts": [{"SpinnakerAccountName": "test1", "AccountId": "1", "Regions": ["us-west-2"], ' +
+                '"SpinnakerProviders": ["ecs", "ec2"], "SpinnakerStatus": "ACTIVE", "SpinnakerAssumeRole": "role/role1-1", ' +
+                '"UpdatedAt": "2020-08-25T16:52:59.026696+00:00"}], "Pagination": {"NextUrl": "http://localhost:8080/v/next"}}'
+        def nextPage = '{"SpinnakerAccounts": [{"SpinnakerAccountName": "test8", "AccountId": "8", "Regions": ["us-west-2"], ' +
+                '"SpinnakerProviders": ["ec2"], "SpinnakerStatus": "ACTIVE", "SpinnakerAssumeRole": "role8", ' +
+                '"UpdatedAt": "2020-09-20T16:52:59.026696+00:00"}]}'
+        def requestHeaders = []
+
+        when:
+        def first = accountsStatus.getDesiredAccounts()
+        def firstSnapshot = accountsStatus.getSnapshot()
+        def second = accountsStatus.getDesiredAccounts()
+
+        then:
+        2 * mockRest.execute({ it.startsWith("http://localhost:8080/hello/") }, HttpMethod.GET, _, _) >> { args ->
+            def request = new MockClientHttpRequest()
+            args[2].doWithRequest(request)
+            requestHeaders << request.getHeaders()
+            requestHeaders.size() == 1 ?
+                    args[3].extractData(jsonResponse(page, HttpStatus.OK, ["ETag": '"v1"', "Last-Modified": "Tue, 25 Aug 2020 16:52:59 GMT"])) :
+                    args[3].extractData(jsonResponse("", HttpStatus.NOT_MODIFIED, [:]))
+        }
+        2 * mockRest.execute({ it.startsWith("http://localhost:8080/v/next") }, HttpMethod.GET, _, _) >> { args ->
+            args[3].extractData(jsonResponse(nextPage, HttpStatus.OK, ["ETag": '"n1"']))
+        } >> { args ->
+            args[3].extractData(jsonResponse("", HttpStatus.NOT_MODIFIED, [:]))
+        }
+        first
+        !second
+        requestHeaders[0].getIfNoneMatch().isEmpty()
+        requestHeaders[1].getIfNoneMatch() == ['"v1"']
+        requestHeaders[1].getFirst("If-Modified-Since") == "Tue, 25 Aug 2020 16:52:59 GMT"
+        accountsStatus.getSnapshot().is(firstSnapshot)
+        accountsStatus.getEc2Accounts().containsKey("test8")
+        accountsStatus.getNextTry() == null
+    }
+
+    def "it should apply a modified page after unmodified ones"() {
+        given:
+        AccountsStatus accountsStatus = new AccountsStatus(accountsConfiguration, credentialsConfig, "http://localhost:8080/hello/", 0L, 0L) {{
+            restTemplate = mockRest
+            setECSCredentialsConfig(ecsConfig)
+            conditionalRequests = true
+            lastSyncTime = "2020-09-20T16:52:59.026696+00:00"
+        }}
+        mockRest.getMessageConverters() >> [new MappingJackson2HttpMessageConverter()]
+        def page = '{"SpinnakerAccounts": [{"SpinnakerAccountName": "test1", "AccountId": "1", "Regions": ["us-west-2"], ' +
+                '"SpinnakerProviders": ["ec2"], "SpinnakerStatus": "ACTIVE", "SpinnakerAssumeRole": "role/role1-1", ' +
+                '"UpdatedAt": "2020-08-25T16:52:59.026696+00:00"}], "Pagination": {"NextUrl": "http://localhost:8080/v/next"}}'
+        def nextPage = { String role, String updatedAt ->
+            '{"SpinnakerAccounts": [{"SpinnakerAccountName": "test8", "AccountId": "8", "Regions": ["us-west-2"], ' +
+                    '"SpinnakerProviders": ["ec2"], "SpinnakerStatus": "ACTIVE", "SpinnakerAssumeRole": "' + role + '", ' +
+                    '"UpdatedAt": "' + updatedAt + '"}]}'
+        }
+
+        when:
+        accountsStatus.getDesiredAccounts()
+        def proceed = accountsStatus.getDesiredAccounts()
+
+        then:
+        2 * mockRest.execute({ it.startsWith("http://localhost:8080/hello/") }, HttpMethod.GET, _, _) >> { args ->
+            args[3].extractData(jsonResponse(page, HttpStatus.OK, ["ETag": '"v1"']))
+        } >> { args ->
+            args[3].extractData(jsonResponse("", HttpStatus.NOT_MODIFIED, [:]))
+        }
+        2 * mockRest.execute({ it.startsWith("http://localhost:8080/v/next") }, HttpMethod.GET, _, _) >> { args ->
+            args[3].extractData(jsonResponse(nextPage("role8", "2020-09-20T16:52:59.026696+00:00"), HttpStatus.OK, ["ETag": '"n1"']))
+        } >> { args ->
+            args[3].extractData(jsonResponse(nextPage("role88", "2020-09-21T16:52:59.026696+00:00"), HttpStatus.OK, ["ETag": '"n2"']))
+        }
+        proceed
+        accountsStatus.getEc2Accounts().get("test1").getAssumeRole() == "role/role1-1"
+        accountsStatus.getEc2Accounts().get("test8").getAssumeRole() == "role/role88"
+        accountsStatus.getLastSyncTime() == "2020-09-21T16:52:59.026696+00:00"
+        accountsStatus.getPageValidators().get("http://localhost:8080/v/next?UpdatedAt.gt=2020-09-20T16:52:59.026696+00:00").getEtag() == '"n2"'
+        accountsStatus.getPageValidators().get("http://localhost:8080/hello/?UpdatedAt.gt=2020-09-20T16:52:59.026696+00:00").getEtag() == '"v1"'
+    }
+
+    def "it should not send the validators of a page requested with another watermark"() {
+        given:
+        AccountsStatus accountsStatus = new AccountsStatus(accountsConfiguration, credentialsConfig, "http://localhost:8080/hello/", 0L, 0L) {{
+            restTemplate = mockRest
+            setECSCredentialsConfig(ecsConfig)
+            conditionalRequests = true
+        }}
+        mockRest.getMessageConverters() >> [new MappingJackson2HttpMessageConverter()]
+        def page = { String role, String updatedAt ->
+            '{"SpinnakerAccounts": [{"SpinnakerAccountName": "test1", "AccountId": "1", "Regions": ["us-west-2"], ' +
+                    '"SpinnakerProviders": ["ec2"], "SpinnakerStatus": "ACTIVE", "SpinnakerAssumeRole": "' + role + '", ' +
+                    '"UpdatedAt": "' + updatedAt + '"}]}'
+        }
+        def requests = [:]
+
+        when:
+        accountsStatus.getDesiredAccounts()
+        accountsStatus.getDesiredAccounts()
+
+        then:
+        2 * mockRest.execute({ it.startsWith("http://localhost:8080/hello/") }, HttpMethod.GET, _, _) >> { args ->
+            def request = new MockClientHttpRequest()
+            args[2].doWithRequest(request)
+            requests[args[0]] = request.getHeaders()
+            args[3].extractData(jsonResponse(requests.size() == 1 ?
+                    page("role1-1", "2020-08-25T16:52:59.026696+00:00") : page("role1-2", "2020-08-26T16:52:59.026696+00:00"),
+                    HttpStatus.OK, ["ETag": '"v' + requests.size() + '"']))
+        }
+        accountsStatus.getNextTry() == null
+        requests.keySet() as List == ["http://localhost:8080/hello/", "http://localhost:8080/hello/?UpdatedAt.gt=2020-08-25T16:52:59.026696+00:00"]
+        requests.values().every { it.getIfNoneMatch().isEmpty() }
+        accountsStatus.getPageValidators().keySet() == ["http://localhost:8080/hello/?UpdatedAt.gt=2020-08-25T16:52:59.026696+00:00"] as Set
+    }
+
+    def "it should restore accounts from the snapshot file and sync incrementally"() {
+        given:
+        def snapshotPath = Files.createTempDirectory("accounts").resolve("accounts.snapshot")
+        AccountsStatus accountsStatus = new AccountsStatus(accountsConfiguration, credentialsConfig, "http://localhost:8080/hello/", 0L, 0L) {{
+            restTemplate = mockRest
+            setECSCredentialsConfig(ecsConfig)
+            snapshotFile = snapshotPath.toString()
+        }}
+        Response response = new Response(){{
+            accounts = [
+                    new Account(){{
+                        name = "test2"
+                        accountId = "2"
+                        assumeRole = "role/role2"
+                        regions = ["us-west-2"]
+                        providers = ["ecs", "ec2"]
+                        updatedAt = "2020-10-25T16:52:59.026696+00:00"
+                        status = "ACTIVE"
+                    }}
+            ]
+        }}
+        AccountsStatus restarted = new AccountsStatus(accountsConfiguration, credentialsConfig, "http://localhost:8080/hello/", 0L, 0L) {{
+            restTemplate = mockRest
+            setECSCredentialsConfig(ecsConfig)
+            snapshotFile = snapshotPath.toString()
+        }}
+
+        when:
+        accountsStatus.getDesiredAccounts()
+        restarted.restoreSnapshot()
+
+        then:
+        1 * mockRest.getForObject("http://localhost:8080/hello/", _) >> response
+        restarted.getSnapshot().generation == 1
+        restarted.getEc2Accounts().keySet() == accountsStatus.getEc2Accounts().keySet()
+        restarted.getEcsAccounts().keySet() == accountsStatus.getEcsAccounts().keySet()
+        restarted.getEc2Accounts().get("test2").getAssumeRole() == "role/role2"
+        restarted.getLastSyncTime() == "2020-10-25T16:52:59.026696+00:00"
+        !restarted.isInitialSync()
+
+        when:
+        restarted.getDesiredAccounts()
+
+        then:
+        1 * mockRest.getForObject({ it.contains("UpdatedAt.gt=2020-10-25T16:52:59.026696") }, _) >> new Response()
+
+        cleanup:
+        snapshotPath.toFile().delete()
+        snapshotPath.parent.toFile().delete()
+    }
+
+    def "it should write pushed accounts to the snapshot file on the next sync"() {
+        given:
+        def snapshotPath = Files.createTempDirectory("accounts").resolve("accounts.snapshot")
+        def newStatus = {
+            new AccountsStatus(accountsConfiguration, credentialsConfig, "http://localhost:8080/hello/", 0L, 0L) {{
+                restTemplate = mockRest
+                setECSCredentialsConfig(ecsConfig)
+                snapshotFile = snapshotPath.toString()
+            }}
+        }
+        def account = { String name ->
+            new Account(name: name, accountId: name.replace("test", ""), assumeRole: "role/" + name,
+                    regions: ["us-west-2"], providers: ["ec2"], updatedAt: "2020-10-25T16:52:59.026696+00:00", status: "ACTIVE")
+        }
+        AccountsStatus accountsStatus = newStatus()
+        def restored = {
+            AccountsStatus restarted = newStatus()
+            restarted.restoreSnapshot()
+            restarted.getEc2Accounts().keySet()
+        }
+
+        when:
+        accountsStatus.getDesiredAccounts()
+        accountsStatus.applyPushedAccounts(new Response(accounts: [account("test5")]))
+        accountsStatus.applyPushedAccounts(new Response(accounts: [account("test6")]))
+        def afterPushes = restored()
+        accountsStatus.getDesiredAccounts()
+        def afterSync = restored()
+
+        then:
+        1 * mockRest.getForObject("http://localhost:8080/hello/", _) >> new Response(accounts: [account("test2")])
+        1 * mockRest.getForObject({ it.contains("UpdatedAt.gt=") }, _) >> new Response()
+        afterPushes.contains("test2")
+        !afterPushes.contains("test5")
+        afterSync.containsAll(["test2", "test5", "test6"])
+
+        cleanup:
+        snapshotPath.toFile().delete()
+        snapshotPath.parent.toFile().delete()
+    }
+
+    def "it should record sync metrics"() {
+        given:
+        def registry = new DefaultRegistry()
+        AccountsStatus accountsStatus = new AccountsStatus(accountsConfiguration, credentialsConfig, "http://localhost:8080/hello/", 0L, 0L) {{
+            restTemplate = mockRest
+            setECSCredentialsConfig(ecsConfig)
+            setRegistry(registry)
+        }}
+        Response response = new Response(){{
+            accounts = [
+                    new Account(){{
+                        name = "test2"
+                        accountId = "2"
+                        assumeRole = "role/role2"
+                        regions = ["us-west-2"]
+                        providers = ["ecs", "ec2"]
+                        updatedAt = "2020-10-25T16:52:59.026696+00:00"
+                        status = "ACTIVE"
+                    }},
+                    new Account(){{
+                        name = "test2"
+                        accountId = "2"
+                        assumeRole = "role/role2"
+                        regions = ["us-west-2"]
+                        providers = ["ec2"]
+                        updatedAt = "2020-10-25T16:52:59.026696+00:00"
+                        status = "ACTIVE"
+                    }},
+                    new Account(){{
+                        name = "test3"
+                        accountId = "3"
+                        assumeRole = "role/role3"
+                        regions = ["mars-1"]
+                        providers = ["ec2"]
+                        updatedAt = "2020-10-25T16:52:59.026696+00:00"
+                        status = "ACTIVE"
+                    }},
+                    new Account(){{
+                        name = "test9"
+                        accountId = "9"
+                        assumeRole = "role/role9"
+                        regions = ["us-west-2"]
+                        providers = ["ec2"]
+                        updatedAt = "2020-10-25T16:52:59.026696+00:00"
+                        status = "SUSPENDED"
+                    }}
+            ]
+        }}
+
+        when:
+        accountsStatus.getDesiredAccounts()
+        accountsStatus.getDesiredAccounts()
+        PolledMeter.update(registry)
+
+        then:
+        1 * mockRest.getForObject(_, _) >> response
+        1 * mockRest.getForObject(_, _) >> { throw new RuntimeException("oh no") }
+        registry.timer(SyncMetrics.SYNC_DURATION, "result", "updated").count() == 1
+        registry.timer(SyncMetrics.SYNC_DURATION, "result", "failure").count() == 1
+        registry.timer(SyncMetrics.PAGE_FETCH_DURATION, "result", "success").count() == 1
+        registry.timer(SyncMetrics.PAGE_FETCH_DURATION, "result", "failure").count() == 1
+        registry.timer(SyncMetrics.CONVERSION_DURATION).count() == 1
+        registry.timer(SyncMetrics.BUILD_CONFIG_DURATION).count() == 1
+        registry.counter(SyncMetrics.ACCOUNTS_RECEIVED, "outcome", "converted").count() == 1
+        registry.counter(SyncMetrics.ACCOUNTS_RECEIVED, "outcome", "duplicate").count() == 1
+        registry.counter(SyncMetrics.ACCOUNTS_RECEIVED, "outcome", "rejected").count() == 1
+        registry.counter(SyncMetrics.ACCOUNTS_RECEIVED, "outcome", "deleted").count() == 1
+        registry.gauge(SyncMetrics.ACCOUNTS_CURRENT, "provider", "ec2").value() == accountsStatus.getEc2Accounts().size()
+        registry.gauge(SyncMetrics.ACCOUNTS_CURRENT, "provider", "ecs").value() == accountsStatus.getEcsAccounts().size()
+        registry.gauge(SyncMetrics.RETRY_COUNT).value() == 1
+        registry.gauge(SyncMetrics.SECONDS_UNTIL_NEXT_TRY).value() >= 0
+        registry.gauge(SyncMetrics.WATERMARK_LAG).value() > 0
+    }
+
+    def "it should publish a new snapshot generation for every successful sync"() {
+        given:
+        AccountsStatus accountsStatus = new AccountsStatus(accountsConfiguration, credentialsConfig, "http://localhost:8080/hello/", 0L, 0L) {{
+            restTemplate = mockRest
+            setECSCredentialsConfig(ecsConfig)
+        }}
+        Response response = new Response(){{
+            accounts = [
+                    new Account(){{
+                        name = "test2"
+                        accountId = "2"
+                        assumeRole = "role/role2"
+                        regions = ["us-west-2"]
+                        providers = ["ecs", "ec2"]
+                        updatedAt = "2020-10-25T16:52:59.026696+00:00"
+                        status = "ACTIVE"
+                    }}
+            ]
+        }}
+        def initial = accountsStatus.getSnapshot()
+
+        when:
+        accountsStatus.getDesiredAccounts()
+        def first = accountsStatus.getSnapshot()
+        accountsStatus.getDesiredAccounts()
+        def second = accountsStatus.getSnapshot()
+
+        then:
+        2 * mockRest.getForObject(_, _) >>> [response, new Response()]
+        initial.generation == 0
+        first.generation == 1
+        first.watermark == "2020-10-25T16:52:59.026696+00:00"
+        first.ec2Accounts.containsKey("test2")
+        first.ecsAccounts.containsKey("test2-ecs")
+        first.ec2AccountsList.size() == 4
+        accountsStatus.hasChangedSince(initial.generation)
+        !accountsStatus.hasChangedSince(first.generation)
+        second.is(first)
+        accountsStatus.getEC2AccountsAsList().is(accountsStatus.getEC2AccountsAsList())
+    }
+
     def "it should remove empty provider accounts"() {
         given:
         AccountsStatus accountsStatus = new AccountsStatus(accountsConfiguration, credentialsConfig, "http://localhost:8080/hello/", 0L, 0L) {{
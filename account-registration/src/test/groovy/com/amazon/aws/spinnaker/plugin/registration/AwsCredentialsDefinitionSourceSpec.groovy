@@ -1,8 +1,13 @@
 package com.amazon.aws.spinnaker.plugin.registration
 
+import com.google.common.collect.ImmutableList
 import spock.lang.Specification
 import com.netflix.spinnaker.clouddriver.aws.security.config.AccountsConfiguration
 
+import java.time.Clock
+import java.time.Instant
+import java.time.ZoneOffset
+
 class AwsCredentialsDefinitionSourceSpec extends Specification {
     def accountsStatus = Mock(AccountsStatus)
     def accountsConfiguration = Mock(AccountsConfiguration)
@@ -70,4 +75,105 @@ class AwsCredentialsDefinitionSourceSpec extends Specification {
         1 * accountsStatus.getEC2AccountsAsList() >> { throw new RuntimeException("Simulated remote failure") }
         definitions.size() == 1  
     }
+
+    def 'should return published accounts when syncing in the background'() {
+        given:
+        def accountsRefresher = Mock(AccountsRefresher)
+        def definitionSource = new AwsCredentialsDefinitionSource(accountsStatus, accountsConfiguration)
+        definitionSource.setAccountsRefresher(accountsRefresher)
+        def mockAccount1 = Mock(AccountsConfiguration.Account)
+        def mockAccount2 = Mock(AccountsConfiguration.Account)
+
+        when:
+        def startup = definitionSource.getCredentialsDefinitions()
+        def definitions = definitionSource.getCredentialsDefinitions()
+
+        then:
+        (1.._) * accountsConfiguration.getAccounts() >> [mockAccount1]
+        2 * accountsRefresher.isEnabled() >> true
+        2 * accountsRefresher.start()
+        2 * accountsRefresher.getEc2Accounts() >>> [null, [mockAccount1, mockAccount2]]
+        0 * accountsStatus.getDesiredAccounts()
+        startup.size() == 1
+        definitions.size() == 2
+    }
+
+    def 'should only return configured and looked up accounts when credentials are deferred'() {
+        given:
+        def deferredCredentials = new DeferredCredentials()
+        deferredCredentials.setEnabled(true)
+        deferredCredentials.setIdleTimeout(60000)
+        deferredCredentials.setClock(Clock.fixed(Instant.ofEpochMilli(0), ZoneOffset.UTC))
+        def definitionSource = new AwsCredentialsDefinitionSource(accountsStatus, accountsConfiguration)
+        definitionSource.setDeferredCredentials(deferredCredentials)
+        def configured = new AccountsConfiguration.Account(name: "configured")
+        def synced = (1..3).collect { new AccountsConfiguration.Account(name: "synced$it") }
+        accountsConfiguration.getAccounts() >> [configured]
+        accountsStatus.getDesiredAccounts() >> true
+        accountsStatus.getEC2AccountsAsList() >> [configured] + synced
+
+        when:
+        deferredCredentials.used("removed")
+        def startup = definitionSource.getCredentialsDefinitions()
+        def removedRequested = deferredCredentials.isRequested("removed")
+        deferredCredentials.used("synced2")
+        def afterLookup = definitionSource.getCredentialsDefinitions()
+        deferredCredentials.setClock(Clock.fixed(Instant.ofEpochMilli(60001), ZoneOffset.UTC))
+        def afterIdle = definitionSource.getCredentialsDefinitions()
+
+        then:
+        startup*.name == ["configured"]
+        !removedRequested
+        afterLookup*.name == ["configured", "synced2"]
+        afterIdle*.name == ["configured"]
+    }
+
+    def 'should reuse the deferred accounts until the published accounts or the looked up accounts change'() {
+        given:
+        def deferredCredentials = Spy(new DeferredCredentials())
+        deferredCredentials.setEnabled(true)
+        deferredCredentials.setIdleTimeout(60000)
+        deferredCredentials.setClock(Clock.fixed(Instant.ofEpochMilli(0), ZoneOffset.UTC))
+        def accountsRefresher = Mock(AccountsRefresher)
+        def definitionSource = new AwsCredentialsDefinitionSource(accountsStatus, accountsConfiguration)
+        definitionSource.setAccountsRefresher(accountsRefresher)
+        definitionSource.setDeferredCredentials(deferredCredentials)
+        def configured = new AccountsConfiguration.Account(name: "configured")
+        def published = ImmutableList.copyOf([configured] + (1..3).collect { new AccountsConfiguration.Account(name: "synced$it") })
+        def resynced = ImmutableList.copyOf(published.toArray())
+        accountsConfiguration.getAccounts() >> [configured]
+        accountsRefresher.isEnabled() >> true
+
+        when:
+        def first = definitionSource.getCredentialsDefinitions()
+        def second = definitionSource.getCredentialsDefinitions()
+
+        then:
+        2 * accountsRefresher.getEc2Accounts() >> published
+        3 * deferredCredentials.isRequested(_)
+        first*.name == ["configured"]
+        second.is(first)
+
+        when:
+        deferredCredentials.used("synced2")
+        def afterLookup = definitionSource.getCredentialsDefinitions()
+        def again = definitionSource.getCredentialsDefinitions()
+
+        then:
+        2 * accountsRefresher.getEc2Accounts() >> published
+        3 * deferredCredentials.isRequested(_)
+        afterLookup*.name == ["configured", "synced2"]
+        again.is(afterLookup)
+
+        when:
+        def afterSync = definitionSource.getCredentialsDefinitions()
+        deferredCredentials.setClock(Clock.fixed(Instant.ofEpochMilli(60001), ZoneOffset.UTC))
+        def afterIdle = definitionSource.getCredentialsDefinitions()
+
+        then:
+        2 * accountsRefresher.getEc2Accounts() >> resynced
+        afterSync*.name == ["configured", "synced2"]
+        !afterSync.is(afterLookup)
+        afterIdle*.name == ["configured"]
+    }
 }
@@ -48,4 +48,37 @@ class EcsCredentialsDefinitionSourceSpec extends Specification {
         definitionStartup.size() == 1
         definitions.size() == 2
     }
+
+    def 'should return published definitions when syncing in the background'() {
+        given:
+        def accountsRefresher = Mock(AccountsRefresher)
+        def definitionSource = new EcsCredentialsDefinitionSource(accountsStatus, accountsConfiguration)
+        definitionSource.setAccountsRefresher(accountsRefresher)
+
+        when:
+        def definitions = definitionSource.getCredentialsDefinitions()
+
+        then:
+        1 * accountsRefresher.isEnabled() >> true
+        1 * accountsRefresher.start()
+        1 * accountsRefresher.getEcsAccounts() >> [Mock(ECSCredentialsConfig.Account), Mock(ECSCredentialsConfig.Account)]
+        0 * accountsStatus.getECSAccountsAsList()
+        definitions.size() == 2
+    }
+
+    def 'should join the shared sync when refreshMaxAge is set'() {
+        given:
+        def definitionSource = new EcsCredentialsDefinitionSource(accountsStatus, accountsConfiguration)
+
+        when:
+        def definitions = definitionSource.getCredentialsDefinitions()
+
+        then:
+        1 * accountsStatus.getRefreshMaxAge() >> 5000
+        1 * accountsStatus.getDesiredAccounts() >> true
+
+        then:
+        1 * accountsStatus.getECSAccountsAsList() >> [Mock(ECSCredentialsConfig.Account), Mock(ECSCredentialsConfig.Account)]
+        definitions.size() == 2
+    }
 }
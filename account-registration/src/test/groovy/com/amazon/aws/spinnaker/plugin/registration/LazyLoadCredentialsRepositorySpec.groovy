@@ -1,10 +1,18 @@
 package com.amazon.aws.spinnaker.plugin.registration
 
 import com.netflix.spinnaker.clouddriver.aws.security.NetflixAmazonCredentials
+import com.netflix.spinnaker.clouddriver.aws.security.config.AccountsConfiguration
 import spock.lang.Specification
 import com.netflix.spinnaker.credentials.definition.AbstractCredentialsLoader
 import com.netflix.spinnaker.credentials.CredentialsLifecycleHandler
 import com.fasterxml.jackson.databind.ObjectMapper
+import com.netflix.spectator.api.DefaultRegistry
+
+import java.util.concurrent.Callable
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.Executors
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicInteger
 
 class LazyLoadCredentialsRepositorySpec extends Specification{
     def loader = Mock(AbstractCredentialsLoader)
@@ -42,4 +50,158 @@ class LazyLoadCredentialsRepositorySpec extends Specification{
         retrievedCred == null
         1 * loader.load()
     }
+
+    def 'should remember accounts missing from remote repository'() {
+        given:
+        def repo = new LazyLoadCredentialsRepository(handler, loader) {{
+            missingAccountCacheSize = 10
+            missingAccountCacheTtl = 60000
+        }}
+        def cred = new ObjectMapper().convertValue([name: "test1", accountId: "123456789012"], NetflixAmazonCredentials)
+
+        when:
+        def first = repo.getOne("test1")
+        def second = repo.getOne("test1")
+
+        then:
+        first == null
+        second == null
+        1 * loader.load()
+
+        when:
+        repo.save(cred)
+        def third = repo.getOne("test1")
+
+        then:
+        third.getName() == "test1"
+        0 * loader.load()
+    }
+
+    def 'should share one remote load between concurrent misses'() {
+        given:
+        def repo = new LazyLoadCredentialsRepository(handler, loader)
+        def cred = new ObjectMapper().convertValue([name: "test1", accountId: "123456789012"], NetflixAmazonCredentials)
+        def loading = new CountDownLatch(1)
+        def release = new CountDownLatch(1)
+        def loads = new AtomicInteger()
+        loader.load() >> {
+            loads.incrementAndGet()
+            loading.countDown()
+            release.await(5, TimeUnit.SECONDS)
+            repo.save(cred)
+        }
+        def pool = Executors.newFixedThreadPool(10)
+
+        when:
+        def first = pool.submit({ repo.getOne("test1") } as Callable)
+        loading.await(5, TimeUnit.SECONDS)
+        def others = (1..9).collect { pool.submit({ repo.getOne("test1") } as Callable) }
+        Thread.sleep(100)
+        release.countDown()
+
+        then:
+        first.get(5, TimeUnit.SECONDS).getName() == "test1"
+        others.every { it.get(5, TimeUnit.SECONDS).getName() == "test1" }
+        loads.get() == 1
+
+        cleanup:
+        pool.shutdownNow()
+    }
+
+    def 'should propagate load failures to the caller that started the load'() {
+        given:
+        def repo = new LazyLoadCredentialsRepository(handler, loader) {{
+            missingAccountCacheSize = 10
+            missingAccountCacheTtl = 60000
+        }}
+
+        when:
+        repo.getOne("test1")
+
+        then:
+        1 * loader.load() >> { throw new IllegalStateException("oh no") }
+        thrown(IllegalStateException)
+
+        when:
+        def retrievedCred = repo.getOne("test1")
+
+        then:
+        retrievedCred == null
+        1 * loader.load()
+    }
+
+    def 'should count lookups and loads'() {
+        given:
+        def registry = new DefaultRegistry()
+        def repo = new LazyLoadCredentialsRepository(handler, loader) {{
+            missingAccountCacheSize = 10
+            missingAccountCacheTtl = 60000
+        }}
+        repo.setRegistry(registry)
+        repo.save(new ObjectMapper().convertValue([name: "test1", accountId: "123456789012"], NetflixAmazonCredentials))
+
+        when:
+        repo.getOne("test1")
+        repo.getOne("test2")
+        repo.getOne("test2")
+
+        then:
+        1 * loader.load()
+        registry.counter(SyncMetrics.LAZY_LOAD_LOOKUPS, "result", "hit").count() == 1
+        registry.counter(SyncMetrics.LAZY_LOAD_LOOKUPS, "result", "miss").count() == 1
+        registry.counter(SyncMetrics.LAZY_LOAD_LOOKUPS, "result", "knownMissing").count() == 1
+        registry.counter(SyncMetrics.LAZY_LOAD_LOADS, "result", "success").count() == 1
+    }
+
+    def 'should request deferred credentials of synced accounts that are looked up'() {
+        given:
+        def deferredCredentials = new DeferredCredentials()
+        deferredCredentials.setEnabled(true)
+        def accountsStatus = Mock(AccountsStatus)
+        def repo = new LazyLoadCredentialsRepository(handler, loader)
+        repo.setDeferredCredentials(deferredCredentials)
+        repo.setAccountsStatus(accountsStatus)
+        def cred = new ObjectMapper().convertValue([name: "test1", accountId: "123456789012"], NetflixAmazonCredentials)
+        def published = AccountsSnapshot.EMPTY.next(["test1": new AccountsConfiguration.Account(name: "test1")], [:], null)
+
+        when:
+        def retrievedCred = repo.getOne("test1")
+        def typo = repo.getOne("tset1")
+
+        then:
+        _ * accountsStatus.getSnapshot() >> published
+        _ * accountsStatus.fetchAccount(_) >> AccountsStatus.Lookup.FAILED
+        1 * loader.load() >> {
+            assert deferredCredentials.isRequested("test1")
+            repo.save(cred)
+        }
+        1 * loader.load()
+        retrievedCred.getName() == "test1"
+        typo == null
+        !deferredCredentials.isRequested("tset1")
+    }
+
+    def 'should look up a missing account instead of loading every account'() {
+        given:
+        def accountsStatus = Mock(AccountsStatus)
+        def repo = new LazyLoadCredentialsRepository(handler, loader) {{
+            missingAccountCacheSize = 10
+            missingAccountCacheTtl = 60000
+        }}
+        repo.setAccountsStatus(accountsStatus)
+        def cred = new ObjectMapper().convertValue([name: "test1", accountId: "123456789012"], NetflixAmazonCredentials)
+
+        when:
+        def found = repo.getOne("test1")
+        def missing = repo.getOne("test2")
+        def missingAgain = repo.getOne("test2")
+
+        then:
+        1 * accountsStatus.fetchAccount("test1") >> AccountsStatus.Lookup.FOUND
+        1 * accountsStatus.fetchAccount("test2") >> AccountsStatus.Lookup.NOT_FOUND
+        1 * loader.load() >> { repo.save(cred) }
+        found.getName() == "test1"
+        missing == null
+        missingAgain == null
+    }
 }
@@ -0,0 +1,107 @@
+package com.amazon.aws.spinnaker.plugin.registration
+
+import com.netflix.spinnaker.clouddriver.aws.security.config.CredentialsConfig
+import spock.lang.Specification
+
+import java.util.concurrent.Executors
+
+class ParallelConversionSpec extends Specification {
+    def executor = Executors.newFixedThreadPool(4)
+    CredentialsConfig credentialsConfig = new CredentialsConfig(
+            defaultKeyPairTemplate: "{{name}}-keypair",
+            defaultLifecycleHooks: [new CredentialsConfig.LifecycleHook(name: "hook1")],
+            defaultLifecycleHookRoleARNTemplate: "arn:aws:iam::{{accountId}}:role/lifecycle")
+
+    def cleanup() {
+        executor.shutdownNow()
+    }
+
+    // Accounts with duplicated names, suspended and invalid accounts, and every provider combination.
+    static List<Account> payload(int size) {
+        def providers = [["ec2"], ["ec2", "ecs"], ["lambda"], ["ecs", "lambda"], []]
+        def random = new Random(42)
+        return (0..<size).collect { i ->
+            int id = random.nextInt(size.intdiv(2))
+            new Account(
+                    name: "test" + id,
+                    accountId: String.valueOf(id),
+                    assumeRole: "role" + id,
+                    regions: [i % 17 == 0 ? "mars-1" : "us-west-2"],
+                    providers: providers[random.nextInt(providers.size())],
+                    status: i % 7 == 0 ? "SUSPENDED" : "ACTIVE",
+                    updatedAt: "2020-08-25T16:52:59.026696+00:00")
+        }
+    }
+
+    def 'it should convert pages in parallel the same way as on one thread'() {
+        given:
+        def accounts = payload(2000)
+        def sequential = new PageAccumulator(credentialsConfig)
+        def parallel = new PageAccumulator(credentialsConfig, new ParallelConversion(executor, 4, 100))
+
+        when:
+        sequential.addPage(new Response(accounts: accounts))
+        parallel.addPage(new Response(accounts: accounts))
+
+        then:
+        parallel.converted.ec2Accounts == sequential.converted.ec2Accounts
+        parallel.converted.ecsAccounts == sequential.converted.ecsAccounts
+        parallel.converted.deletedAccounts == sequential.converted.deletedAccounts
+        parallel.converted.accountsToCheck == sequential.converted.accountsToCheck
+        parallel.outcomes == sequential.outcomes
+        parallel.outcomes[Response.Outcome.DUPLICATE] > 0
+        parallel.outcomes[Response.Outcome.DELETED] > 0
+        parallel.outcomes[Response.Outcome.REJECTED] > 0
+        parallel.accountCount == 2000
+        parallel.mostRecentTime == sequential.mostRecentTime
+    }
+
+    def 'it should convert pages below the threshold on the calling thread'() {
+        given:
+        def conversion = new ParallelConversion(executor, 4, 100)
+
+        expect:
+        !conversion.appliesTo(0, payload(99))
+        conversion.appliesTo(0, payload(100))
+        !new ParallelConversion(executor, 1, 0).appliesTo(0, payload(100))
+    }
+
+    def 'it should count accounts of earlier pages towards the threshold'() {
+        given:
+        def conversion = new ParallelConversion(executor, 4, 100)
+
+        expect:
+        !conversion.appliesTo(49, payload(50))
+        conversion.appliesTo(50, payload(50))
+        !conversion.appliesTo(5000, payload(2).take(1))
+    }
+
+    def 'it should convert small pages in parallel once the sync returned many accounts'() {
+        given:
+        def accounts = payload(2000)
+        int parallelPages = 0
+        def conversion = new ParallelConversion(executor, 4, 500) {
+            @Override
+            List<Response.PreparedAccount> prepare(Response converted, CredentialsConfig config, List<Account> page) {
+                parallelPages++
+                return super.prepare(converted, config, page)
+            }
+        }
+        def sequential = new PageAccumulator(credentialsConfig)
+        def parallel = new PageAccumulator(credentialsConfig, conversion)
+
+        when:
+        accounts.collate(100).each {
+            sequential.addPage(new Response(accounts: it))
+            parallel.addPage(new Response(accounts: it))
+        }
+
+        then:
+        parallelPages == 16
+        parallel.converted.ec2Accounts == sequential.converted.ec2Accounts
+        parallel.converted.ecsAccounts == sequential.converted.ecsAccounts
+        parallel.converted.deletedAccounts == sequential.converted.deletedAccounts
+        parallel.outcomes == sequential.outcomes
+        parallel.accountCount == 2000
+    }
+}
@@ -0,0 +1,90 @@
+package com.amazon.aws.spinnaker.plugin.registration
+
+import spock.lang.Specification
+
+import java.time.Instant
+
+import static com.amazon.aws.spinnaker.plugin.registration.PollScheduler.Circuit
+
+class PollSchedulerSpec extends Specification {
+    static final Instant NOW = Instant.parse("2020-10-01T00:00:00Z")
+
+    def 'it should back off with decorrelated jitter up to the maximum backoff'() {
+        given:
+        def scheduler = new PollScheduler(0, 0, 20000, 0, 300000)
+        def delays = []
+
+        when:
+        10.times { delays << scheduler.failed(it + 1, NOW).toEpochMilli() - NOW.toEpochMilli() }
+
+        then:
+        delays[0] == 1000
+        (1..9).every { delays[it] >= 1000 && delays[it] <= Math.min(20000, delays[it - 1] * 3) }
+        scheduler.getState().getCircuit() == Circuit.CLOSED
+    }
+
+    def 'it should space out polls that return no changes and reset after changes'() {
+        given:
+        def scheduler = new PollScheduler(2000, 60000, 3600000, 0, 300000)
+        def intervals = []
+
+        when:
+        10.times {
+            scheduler.succeeded(false, NOW)
+            intervals << scheduler.getState().getInterval()
+        }
+
+        then:
+        intervals[0] == 2000
+        (1..9).every { intervals[it] >= 2000 && intervals[it] <= Math.min(60000, intervals[it - 1] * 3) }
+        !scheduler.isDue(NOW)
+        scheduler.isDue(scheduler.getState().getNextPoll())
+
+        when:
+        scheduler.succeeded(true, NOW)
+
+        then:
+        scheduler.getState().getInterval() == 2000
+        scheduler.getState().getNextPoll() == NOW.plusMillis(2000)
+    }
+
+    def 'it should poll whenever asked to without a maximum interval'() {
+        given:
+        def scheduler = new PollScheduler(0, 0, 3600000, 0, 300000)
+
+        when:
+        scheduler.succeeded(false, NOW)
+
+        then:
+        scheduler.getState().getNextPoll() == null
+        scheduler.isDue(NOW)
+    }
+
+    def 'it should open the circuit after consecutive failures and close it after a successful trial'() {
+        given:
+        def scheduler = new PollScheduler(0, 0, 3600000, 3, 300000)
+
+        when:
+        def retries = (1..3).collect { scheduler.failed(it, NOW) }
+
+        then:
+        retries[2] == NOW.plusMillis(300000)
+        scheduler.getState().getCircuit() == Circuit.OPEN
+
+        when: 'the trial poll fails'
+        scheduler.isDue(retries[2])
+
+        then:
+        scheduler.getState().getCircuit() == Circuit.HALF_OPEN
+        scheduler.failed(4, NOW) == NOW.plusMillis(300000)
+        scheduler.getState().getCircuit() == Circuit.OPEN
+
+        when: 'the trial poll succeeds'
+        scheduler.isDue(retries[2])
+        scheduler.succeeded(false, NOW)
+
+        then:
+        scheduler.getState().getCircuit() == Circuit.CLOSED
+        scheduler.failed(1, NOW) == NOW.plusMillis(1000)
+    }
+}
@@ -0,0 +1,90 @@
+package com.amazon.aws.spinnaker.plugin.registration
+
+import spock.lang.Specification
+
+import java.time.Clock
+import java.time.Instant
+import java.time.ZoneOffset
+import java.util.concurrent.Callable
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.Executors
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicInteger
+
+class RefreshCoordinatorSpec extends Specification {
+    def clock = Clock.fixed(Instant.ofEpochMilli(0), ZoneOffset.UTC)
+
+    def 'it should share one sync between concurrent callers'() {
+        given:
+        def syncs = new AtomicInteger()
+        def syncing = new CountDownLatch(1)
+        def release = new CountDownLatch(1)
+        def coordinator = new RefreshCoordinator({
+            syncs.incrementAndGet()
+            syncing.countDown()
+            release.await(5, TimeUnit.SECONDS)
+            true
+        }, clock)
+        def pool = Executors.newFixedThreadPool(10)
+
+        when:
+        def first = pool.submit({ coordinator.refresh(0) } as Callable)
+        syncing.await(5, TimeUnit.SECONDS)
+        def others = (1..9).collect { pool.submit({ coordinator.refresh(0) } as Callable) }
+        Thread.sleep(100)
+        release.countDown()
+
+        then:
+        first.get(5, TimeUnit.SECONDS)
+        others.every { it.get(5, TimeUnit.SECONDS) }
+        syncs.get() == 1
+
+        cleanup:
+        pool.shutdownNow()
+    }
+
+    def 'it should reuse a sync completed within maxAge'() {
+        given:
+        def syncs = new AtomicInteger()
+        def now = Instant.ofEpochMilli(0)
+        def coordinator = new RefreshCoordinator({ syncs.incrementAndGet() > 0 }, Stub(Clock) { instant() >> { now } })
+
+        when:
+        def first = coordinator.refresh(5000)
+        def reused = coordinator.refresh(5000)
+        def fresh = coordinator.refresh(0)
+        now = Instant.ofEpochMilli(5000)
+        def expired = coordinator.refresh(5000)
+
+        then:
+        first
+        !reused
+        fresh
+        expired
+        syncs.get() == 3
+    }
+
+    def 'it should hand a failed sync to every caller and sync again afterwards'() {
+        given:
+        def syncs = new AtomicInteger()
+        def coordinator = new RefreshCoordinator({
+            if (syncs.incrementAndGet() == 1) {
+                throw new IllegalStateException("oh no")
+            }
+            false
+        }, clock)
+
+        when:
+        coordinator.refresh(0)
+
+        then:
+        thrown(IllegalStateException)
+
+        when:
+        def updated = coordinator.refresh(0)
+
+        then:
+        !updated
+        syncs.get() == 2
+    }
+}
@@ -0,0 +1,121 @@
+package com.amazon.aws.spinnaker.plugin.registration
+
+import com.sun.net.httpserver.HttpExchange
+import com.sun.net.httpserver.HttpServer
+import org.springframework.http.HttpMethod
+import org.springframework.http.client.ClientHttpRequestFactory
+import org.springframework.web.client.RestTemplate
+import spock.lang.Specification
+import spock.lang.Unroll
+
+import java.util.concurrent.CopyOnWriteArrayList
+import java.util.zip.GZIPOutputStream
+
+class RegistryHttpClientsSpec extends Specification {
+    static final String BODY = '{"SpinnakerAccounts": [], "Pagination": {"NextUrl": ""}}'
+
+    HttpServer server
+    List<String> acceptEncodings = new CopyOnWriteArrayList<>()
+    List<Integer> clientPorts = new CopyOnWriteArrayList<>()
+
+    def setup() {
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0)
+        server.createContext("/accounts") { HttpExchange exchange ->
+            acceptEncodings << exchange.getRequestHeaders().getFirst("Accept-Encoding")
+            clientPorts << exchange.getRemoteAddress().getPort()
+            if (exchange.getRequestHeaders().getFirst("If-None-Match") == '"v1"') {
+                exchange.sendResponseHeaders(304, -1)
+                exchange.close()
+                return
+            }
+            byte[] body = BODY.bytes
+            if (exchange.getRequestHeaders().getFirst("Accept-Encoding")?.contains("gzip")) {
+                def compressed = new ByteArrayOutputStream()
+                new GZIPOutputStream(compressed).withCloseable { it.write(body) }
+                body = compressed.toByteArray()
+                exchange.getResponseHeaders().set("Content-Encoding", "gzip")
+            }
+            exchange.getResponseHeaders().set("Content-Type", "application/json")
+            exchange.getResponseHeaders().set("ETag", '"v1"')
+            exchange.sendResponseHeaders(200, body.length)
+            exchange.getResponseBody().withCloseable { it.write(body) }
+        }
+        server.start()
+    }
+
+    def cleanup() {
+        server.stop(0)
+    }
+
+    String url() {
+        return "http://localhost:${server.getAddress().getPort()}/accounts"
+    }
+
+    @Unroll
+    def 'it should decode compressed responses and reuse connections with #name'() {
+        given:
+        def restTemplate = new RestTemplate(factory)
+        restTemplate.getInterceptors().add(new PlusEncoderInterceptor())
+
+        when:
+        def responses = (1..3).collect { restTemplate.getForObject(url() + "?after=a+b", Response) }
+
+        then:
+        responses.every { it.getPagination().getNextUrl() == "" }
+        acceptEncodings.every { it.contains("gzip") }
+        clientPorts.unique().size() <= connections
+
+        where:
+        // The test server only speaks HTTP/1.1. The JDK client may drop the connection its HTTP/2 upgrade attempt was
+        // refused on, and reuses the next one.
+        name     | factory                                                        | connections
+        "pooled" | RegistryHttpClients.pooled(2, 60000, 60000, true, 2000, 6000) | 1
+        "http2"  | RegistryHttpClients.http2(true, 2000, 6000)                    | 2
+    }
+
+    @Unroll
+    def 'it should not ask for compression when it is disabled with #name'() {
+        given:
+        def restTemplate = new RestTemplate(factory)
+
+        when:
+        def response = restTemplate.getForObject(url(), Response)
+
+        then:
+        response.getPagination().getNextUrl() == ""
+        acceptEncodings == [null]
+
+        where:
+        name     | factory
+        "pooled" | RegistryHttpClients.pooled(2, 60000, 60000, false, 2000, 6000)
+        "http2"  | RegistryHttpClients.http2(false, 2000, 6000)
+    }
+
+    @Unroll
+    def 'it should treat timeouts of 0 as no timeout with #name'() {
+        given:
+        def restTemplate = new RestTemplate(factory)
+
+        expect:
+        restTemplate.getForObject(url(), Response).getPagination().getNextUrl() == ""
+
+        where:
+        name     | factory
+        "pooled" | RegistryHttpClients.pooled(2, 60000, 60000, true, 0, 0)
+        "http2"  | RegistryHttpClients.http2(true, 0, 0)
+    }
+
+    def 'it should pass 304 responses to the extractor'() {
+        given:
+        ClientHttpRequestFactory factory = RegistryHttpClients.http2(true, 2000, 6000)
+        def restTemplate = new RestTemplate(factory)
+        def extractor = new ConditionalResponseExtractor({ throw new IllegalStateException("body should not be read") })
+
+        when:
+        def response = restTemplate.execute(url(), HttpMethod.GET, { it.getHeaders().setIfNoneMatch('"v1"') }, extractor)
+
+        then:
+        response == null
+        extractor.isNotModified()
+    }
+}
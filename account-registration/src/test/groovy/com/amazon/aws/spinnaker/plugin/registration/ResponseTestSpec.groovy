@@ -1,8 +1,17 @@
 package com.amazon.aws.spinnaker.plugin.registration
 
+import com.amazonaws.regions.RegionUtils
+import com.fasterxml.jackson.core.type.TypeReference
+import com.fasterxml.jackson.databind.ObjectMapper
+import com.netflix.spinnaker.clouddriver.aws.security.config.AccountsConfiguration
 import com.netflix.spinnaker.clouddriver.aws.security.config.CredentialsConfig
+import com.netflix.spinnaker.fiat.model.resources.Permissions
+import groovy.transform.CompileStatic
 import spock.lang.Specification
 
+import java.lang.reflect.Field
+import java.lang.reflect.Modifier
+
 class ResponseTestSpec extends Specification {
     CredentialsConfig credentialsConfig = new CredentialsConfig(){{
         setDefaultSecurityGroups(["sg1"])
@@ -158,4 +167,203 @@ class ResponseTestSpec extends Specification {
         then:
         response.getEc2Accounts().values().size() == 0
     }
+
+    def 'it should template default lifecycle hooks for every account'() {
+        given:
+        credentialsConfig.setDefaultLifecycleHooks([new CredentialsConfig.LifecycleHook(name: "hook1")])
+        credentialsConfig.setDefaultLifecycleHookRoleARNTemplate("arn:aws:iam::{{accountId}}:role/lifecycle")
+        Response response = new Response(accounts: ["1", "2"].collect {
+            new Account(name: "test" + it, accountId: it, assumeRole: "role/role" + it, status: "ACTIVE",
+                    regions: ["us-west-2"], providers: ["ec2"])
+        })
+
+        when:
+        response.convertCredentials(credentialsConfig)
+
+        then:
+        response.getEc2Accounts()["test1"].lifecycleHooks[0].roleARN == "arn:aws:iam::1:role/lifecycle"
+        response.getEc2Accounts()["test2"].lifecycleHooks[0].roleARN == "arn:aws:iam::2:role/lifecycle"
+        credentialsConfig.defaultLifecycleHooks[0].roleARN == null
+    }
+
+    def 'it should give every account its own copy of the default lifecycle hooks'() {
+        given:
+        def defaultHook = new CredentialsConfig.LifecycleHook(name: "hook1", roleARN: "arn:aws:iam::{{accountId}}:role/hook",
+                notificationTargetARN: "arn:aws:sns:us-west-2:{{accountId}}:topic", lifecycleTransition: "autoscaling:EC2_INSTANCE_TERMINATING",
+                heartbeatTimeout: 1800, defaultResult: "CONTINUE")
+        credentialsConfig.setDefaultLifecycleHooks([defaultHook])
+        Response response = new Response(accounts: ["1", "2"].collect {
+            new Account(name: "test" + it, accountId: it, assumeRole: "role/role" + it, status: "ACTIVE",
+                    regions: ["us-west-2"], providers: ["ec2"])
+        })
+
+        when:
+        response.convertCredentials(credentialsConfig)
+        def hooks = response.getEc2Accounts().values()*.lifecycleHooks*.getAt(0)
+
+        then:
+        hooks.size() == 2
+        !hooks[0].is(hooks[1])
+        hooks.every { !it.is(defaultHook) }
+        hooks*.roleARN as Set == ["arn:aws:iam::1:role/hook", "arn:aws:iam::2:role/hook"] as Set
+        hooks*.notificationTargetARN as Set == ["arn:aws:sns:us-west-2:1:topic", "arn:aws:sns:us-west-2:2:topic"] as Set
+        hooks.every { it.name == "hook1" && it.lifecycleTransition == "autoscaling:EC2_INSTANCE_TERMINATING" &&
+                it.heartbeatTimeout == 1800 && it.defaultResult == "CONTINUE" }
+        defaultHook.roleARN == "arn:aws:iam::{{accountId}}:role/hook"
+    }
+
+    def 'it should share common strings but not mutable values between accounts'() {
+        given:
+        List<String> regionNames = RegionUtils.getRegions()*.name.sort().take(17)
+        def regionSets = [regionNames, regionNames.collect { " " + it.toUpperCase() }, regionNames.take(3)]
+        def permissionSets = [[READ: ["team-a"], WRITE: ["team-a"]], [READ: ["team-b"], WRITE: ["team-b"]]]
+        def pages = (0..<10).collect { page ->
+            new Response(accounts: (0..<200).collect { i ->
+                int n = page * 200 + i
+                new Account(name: "account" + n, accountId: String.valueOf(100000 + n), assumeRole: "SpinnakerManaged",
+                        status: "ACTIVE", providers: ["ec2"], regions: regionSets[n % 3],
+                        permissions: new ObjectMapper().convertValue(permissionSets[n % 2], Permissions.Builder))
+            })
+        }
+
+        when:
+        pages.each { it.convertCredentials(credentialsConfig) }
+        def converted = pages.collectMany { it.getEc2Accounts().values() }
+        def distinct = { Collection values ->
+            def identities = new IdentityHashMap()
+            values.each { identities.put(it, true) }
+            identities.size()
+        }
+
+        then:
+        converted.size() == 2000
+        // Without sharing, every account would hold its own region names and assume role.
+        distinct(converted.collectMany { it.regions*.name }) == 17
+        distinct(converted*.assumeRole) == 1
+        // Lists, regions and permissions can be modified, so every account has its own.
+        distinct(converted*.regions) == 2000
+        distinct(converted.collectMany { it.regions }) == converted.sum { it.regions.size() }
+        distinct(converted*.permissions) == 2000
+        converted.every { it.assumeRole == "role/SpinnakerManaged" }
+        converted.find { it.name == "account1" }.regions*.name == regionNames
+        converted.find { it.name == "account1" }.permissions == new ObjectMapper().convertValue(permissionSets[1], Permissions.Builder)
+
+        when:
+        converted.find { it.name == "account1" }.regions.add(new CredentialsConfig.Region(name: "eu-west-1"))
+
+        then:
+        converted.find { it.name == "account4" }.regions*.name == regionNames
+    }
+
+    def 'it should retain less heap for a large population of accounts'() {
+        given:
+        List<String> regionNames = RegionUtils.getRegions()*.name.sort().take(17)
+        def objectMapper = new ObjectMapper()
+        def pages = (0..<5).collect { page ->
+            new Response(accounts: (0..<1000).collect { i ->
+                int n = page * 1000 + i
+                new Account(name: "account" + n, accountId: String.valueOf(100000 + n), assumeRole: "SpinnakerManaged",
+                        status: "ACTIVE", providers: ["ec2"], regions: regionNames,
+                        permissions: objectMapper.convertValue([READ: ["team-" + n % 2]], Permissions.Builder))
+            })
+        }
+        pages.each { it.convertCredentials(credentialsConfig) }
+        List<AccountsConfiguration.Account> converted = pages.collectMany { it.getEc2Accounts().values() }
+        // Accounts read from JSON, like a restored snapshot, hold their own copy of every string.
+        List<AccountsConfiguration.Account> parsed = objectMapper.readValue(objectMapper.writeValueAsBytes(converted),
+                new TypeReference<List<AccountsConfiguration.Account>>() {})
+
+        when:
+        long unshared = retainedBytes(parsed)
+        parsed.each { AccountInterner.compact(it) }
+        long compacted = retainedBytes(parsed)
+        long convertedBytes = retainedBytes(converted)
+
+        then:
+        parsed == converted
+        // 5000 accounts retain about 11.7 MB unshared and 6.7 MB compacted. Region names alone are about 17 * 48 bytes
+        // per account.
+        unshared - compacted > 5000 * 17 * 40
+        compacted < unshared * 0.8
+        convertedBytes <= compacted
+    }
+
+    // Bytes retained by the object graph reachable from root, with compressed references and 8 byte alignment.
+    @CompileStatic
+    static long retainedBytes(Object root) {
+        Map<Class<?>, List<Field>> fieldsByType = [:]
+        Set<Object> seen = Collections.newSetFromMap(new IdentityHashMap<Object, Boolean>())
+        Deque<Object> pending = new ArrayDeque<>()
+        pending.push(root)
+        long bytes = 0
+        while (!pending.isEmpty()) {
+            Object o = pending.pop()
+            if (o instanceof Class || o instanceof Enum || !seen.add(o)) {
+                continue
+            }
+            if (o instanceof String) {
+                bytes += align(24) + align(16 + ((String) o).length())
+            } else if (o instanceof Number || o instanceof Boolean) {
+                bytes += 16
+            } else if (o instanceof Map) {
+                Map<?, ?> map = (Map<?, ?>) o
+                bytes += align(48) + align(16 + 4 * map.size()) + 32L * map.size()
+                for (Map.Entry<?, ?> entry : map.entrySet()) {
+                    push(pending, entry.getKey())
+                    push(pending, entry.getValue())
+                }
+            } else if (o instanceof Collection) {
+                Collection<?> collection = (Collection<?>) o
+                bytes += align(24) + align(16 + 4 * collection.size())
+                for (Object element : collection) {
+                    push(pending, element)
+                }
+            } else {
+                List<Field> fields = fieldsByType.get(o.getClass())
+                if (fields == null) {
+                    fields = instanceFields(o.getClass())
+                    fieldsByType.put(o.getClass(), fields)
+                }
+                long shallow = 12
+                for (Field field : fields) {
+                    if (field.getType().is(Long.TYPE) || field.getType().is(Double.TYPE)) {
+                        shallow += 8
+                    } else if (field.getType().isPrimitive()) {
+                        shallow += 4
+                    } else {
+                        shallow += 4
+                        push(pending, field.get(o))
+                    }
+                }
+                bytes += align(shallow)
+            }
+        }
+        return bytes
+    }
+
+    @CompileStatic
+    private static List<Field> instanceFields(Class<?> type) {
+        List<Field> fields = []
+        for (Class<?> current = type; !current.is(Object); current = current.getSuperclass()) {
+            for (Field field : current.getDeclaredFields()) {
+                if (!Modifier.isStatic(field.getModifiers()) && !field.isSynthetic()) {
+                    field.setAccessible(true)
+                    fields.add(field)
+                }
+            }
+        }
+        return fields
+    }
+
+    @CompileStatic
+    private static void push(Deque<Object> pending, Object value) {
+        if (value != null) {
+            pending.push(value)
+        }
+    }
+
+    @CompileStatic
+    private static long align(long bytes) {
+        return (bytes + 7) & ~7L
+    }
 }
@@ -0,0 +1,56 @@
+package com.amazon.aws.spinnaker.plugin.registration
+
+import org.springframework.http.HttpStatus
+import org.springframework.mock.http.client.MockClientHttpResponse
+import spock.lang.Specification
+
+class StreamingResponseExtractorSpec extends Specification {
+
+    def 'it should hand accounts to the consumer one at a time'() {
+        given:
+        def accounts = []
+        def extractor = new StreamingResponseExtractor({ accounts.add(it) })
+        def body = '''{
+            "Unknown": {"nested": [1, 2, {"a": "b"}]},
+            "SpinnakerAccounts": [
+                {"SpinnakerAccountName": "test1", "AccountId": "1", "Regions": ["us-west-2"], "SpinnakerProviders": ["ec2"],
+                 "SpinnakerStatus": "ACTIVE", "SpinnakerAssumeRole": "role/role1", "UpdatedAt": "2020-08-25T16:52:59.026696+00:00"},
+                null,
+                {"SpinnakerAccountName": "test2", "AccountId": "2", "Regions": ["us-west-2"], "SpinnakerProviders": ["ecs"],
+                 "SpinnakerStatus": "ACTIVE", "SpinnakerAssumeRole": "role/role2", "SomethingNew": true}
+            ],
+            "Pagination": {"NextUrl": "http://localhost:8080/v/next"}
+        }'''
+
+        when:
+        def page = extractor.extractData(new MockClientHttpResponse(body.bytes, HttpStatus.OK))
+
+        then:
+        accounts*.name == ["test1", "test2"]
+        accounts[0].updatedAt == "2020-08-25T16:52:59.026696+00:00"
+        page.accounts.isEmpty()
+        page.pagination.nextUrl == "http://localhost:8080/v/next"
+    }
+
+    def 'it should return null for an empty body'() {
+        given:
+        def extractor = new StreamingResponseExtractor({ })
+
+        expect:
+        extractor.extractData(new MockClientHttpResponse(new byte[0], HttpStatus.OK)) == null
+    }
+
+    def 'it should fail on truncated payloads'() {
+        given:
+        def accounts = []
+        def extractor = new StreamingResponseExtractor({ accounts.add(it) })
+        def body = '{"SpinnakerAccounts": [{"SpinnakerAccountName": "test1"}, {"SpinnakerAccountName": "te'
+
+        when:
+        extractor.extractData(new MockClientHttpResponse(body.bytes, HttpStatus.OK))
+
+        then:
+        thrown(IOException)
+        accounts*.name == ["test1"]
+    }
+}
@@ -0,0 +1,166 @@
+package com.amazon.aws.spinnaker.plugin.registration
+
+import com.netflix.spinnaker.clouddriver.aws.security.config.AccountsConfiguration
+import com.netflix.spinnaker.clouddriver.aws.security.config.CredentialsConfig
+import com.netflix.spectator.api.DefaultRegistry
+import com.netflix.spinnaker.clouddriver.ecs.security.ECSCredentialsConfig
+import spock.lang.AutoCleanup
+import spock.lang.Specification
+import spock.lang.Unroll
+
+import static com.amazon.aws.spinnaker.plugin.registration.StubAccountRegistry.Fault
+
+class StubAccountRegistrySyncSpec extends Specification {
+    @AutoCleanup
+    StubAccountRegistry registry = new StubAccountRegistry(250)
+    AccountsConfiguration accountsConfiguration = new AccountsConfiguration(accounts: [])
+    ECSCredentialsConfig ecsConfig = new ECSCredentialsConfig(accounts: [])
+
+    def setup() {
+        registry.setPageSize(100)
+    }
+
+    AccountsStatus accountsStatus(long readTimeout = 2000) {
+        AccountsStatus accountsStatus = new AccountsStatus(accountsConfiguration, new CredentialsConfig(), registry.getUrl(), 1000L, readTimeout)
+        accountsStatus.setECSCredentialsConfig(ecsConfig)
+        accountsStatus.setPooled(true)
+        accountsStatus.setMaxConnections(2)
+        accountsStatus.setConnectionTtl(60000)
+        accountsStatus.setIdleTimeout(60000)
+        accountsStatus.setCompression(true)
+        accountsStatus.setMaxBackoffTime(60000)
+        accountsStatus.setCheckpointExpiry(60000)
+        accountsStatus.afterPropertiesSet()
+        return accountsStatus
+    }
+
+    def 'it should sync every page and then only accounts updated since'() {
+        given:
+        def accountsStatus = accountsStatus()
+        def awsSource = new AwsCredentialsDefinitionSource(accountsStatus, accountsConfiguration)
+        def ecsSource = new EcsCredentialsDefinitionSource(accountsStatus, ecsConfig)
+
+        when:
+        def ec2Accounts = awsSource.getCredentialsDefinitions()
+        def ecsAccounts = ecsSource.getCredentialsDefinitions()
+
+        then:
+        ec2Accounts.size() == 250
+        ecsAccounts.size() == 125
+        registry.getRequests() == ["/accounts", "/accounts?page=2", "/accounts?page=3"]
+
+        when:
+        registry.updateAccounts(5)
+        awsSource.getCredentialsDefinitions()
+
+        then:
+        registry.getRequests().size() == 4
+        registry.getRequests()[3].startsWith("/accounts?UpdatedAt.gt=")
+        def updated = accountsStatus.getSnapshot().getEc2Changes().getUpdated()
+        updated.size() > 0 && updated.size() <= 5
+        updated.every { it.assumeRole.startsWith("role/spinnakerManaged-") }
+        awsSource.getCredentialsDefinitions().size() == 250
+
+        cleanup:
+        accountsStatus.destroy()
+    }
+
+    @Unroll
+    def 'it should time reading every page with or without conditional requests'() {
+        given:
+        def metricsRegistry = new DefaultRegistry()
+        def accountsStatus = accountsStatus()
+        accountsStatus.setConditionalRequests(conditionalRequests)
+        accountsStatus.setRegistry(metricsRegistry)
+
+        when:
+        accountsStatus.getDesiredAccounts()
+
+        then:
+        accountsStatus.getEc2Accounts().size() == 250
+        metricsRegistry.timer(SyncMetrics.PAGE_DESERIALIZATION_DURATION).count() == 3
+
+        cleanup:
+        accountsStatus.destroy()
+
+        where:
+        conditionalRequests << [false, true]
+    }
+
+    def 'it should back off when the first page fails with #fault'() {
+        given:
+        def accountsStatus = accountsStatus(200)
+        registry.setTimeoutDelay(1000)
+        registry.failPage(1, fault)
+
+        when:
+        def proceed = accountsStatus.getDesiredAccounts()
+
+        then:
+        !proceed
+        accountsStatus.getLastSyncTime() == null
+        accountsStatus.getNextTry() != null
+
+        cleanup:
+        accountsStatus.destroy()
+
+        where:
+        fault << Fault.values()
+    }
+
+    def 'it should resume at a truncated page'() {
+        given:
+        def accountsStatus = accountsStatus()
+        registry.failPage(2, Fault.TRUNCATED)
+
+        when:
+        accountsStatus.getDesiredAccounts()
+
+        then:
+        thrown(Exception)
+        accountsStatus.getCheckpoint().getNextUrl() == registry.getUrl() + "?page=2"
+        accountsStatus.getNextTry() != null
+
+        when:
+        // Backoff is over.
+        accountsStatus.setNextTry(null)
+        def proceed = accountsStatus.getDesiredAccounts()
+
+        then:
+        proceed
+        accountsStatus.getEC2AccountsAsList().size() == 250
+        registry.getRequests() == ["/accounts", "/accounts?page=2", "/accounts?page=2", "/accounts?page=3"]
+
+        cleanup:
+        accountsStatus.destroy()
+    }
+
+    def 'it should sync shards of the registry as partitions'() {
+        given:
+        def accountsStatus = accountsStatus()
+        accountsStatus.setPartitions(["shards=2&shard=0", "shards=2&shard=1"] as String[])
+        accountsStatus.setPartitionSyncTimeout(10000)
+
+        when:
+        def proceed = accountsStatus.getDesiredAccounts()
+
+        then:
+        proceed
+        accountsStatus.getEC2AccountsAsList().size() == 250
+        registry.getRequests().size() == 4
+        registry.getRequests().every { it.contains("shards=2") }
+
+        when:
+        registry.updateAccounts(5)
+        proceed = accountsStatus.getDesiredAccounts()
+
+        then:
+        proceed
+        registry.getRequests().size() == 6
+        registry.getRequests()[4..5].every { it.contains("UpdatedAt.gt=") }
+        accountsStatus.getEC2AccountsAsList().size() == 250
+
+        cleanup:
+        accountsStatus.destroy()
+    }
+}
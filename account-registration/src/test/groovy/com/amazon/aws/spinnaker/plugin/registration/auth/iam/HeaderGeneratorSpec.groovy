@@ -1,10 +1,18 @@
 package com.amazon.aws.spinnaker.plugin.registration.auth.iam
 
 import com.amazonaws.auth.AWSCredentials
+import com.amazonaws.auth.AWSCredentialsProvider
 import com.amazonaws.auth.AWSStaticCredentialsProvider
 import com.amazonaws.auth.BasicAWSCredentials
+import com.amazonaws.auth.ProcessCredentialsProvider
 import spock.lang.Specification
 
+import java.time.Duration
+import java.time.Instant
+import java.util.concurrent.Callable
+import java.util.concurrent.Executors
+import java.util.concurrent.TimeUnit
+
 class HeaderGeneratorSpec extends Specification {
 
     def 'should generate expected header'() {
@@ -29,4 +37,165 @@ class HeaderGeneratorSpec extends Specification {
         headers.get("Host") == expectedHost
         headers.get("Authorization") == expectedAuth
     }
+
+    def 'should sign the given url with its own host and path'() {
+        given:
+        AWSCredentials credentials = new BasicAWSCredentials("access", "secret")
+        HeaderGenerator headerGenerator = new HeaderGenerator(
+            "execute-api", "us-west-2", new AWSStaticCredentialsProvider(credentials),
+            "https://test.execute-api.us-west-2.amazonaws.com/test/accounts/")
+        HeaderGenerator pageGenerator = new HeaderGenerator(
+            "execute-api", "us-west-2", new AWSStaticCredentialsProvider(credentials),
+            "https://other.execute-api.us-west-2.amazonaws.com/test/accounts/page2")
+        Date date = new Date()
+        headerGenerator.aws4Signer.setOverrideDate(date)
+        pageGenerator.aws4Signer.setOverrideDate(date)
+        HashMap<String, List<String>> queryStrings = ["after": ["123"]]
+
+        when:
+        TreeMap<String, String> headers = headerGenerator.generateHeaders(
+            "https://other.execute-api.us-west-2.amazonaws.com/test/accounts/page2", queryStrings)
+
+        then:
+        headers.get("Host") == "other.execute-api.us-west-2.amazonaws.com"
+        headers.get("Authorization") == pageGenerator.generateHeaders(queryStrings).get("Authorization")
+        headers.get("Authorization") != headerGenerator.generateHeaders(queryStrings).get("Authorization")
+    }
+
+    def 'should read credentials once and again after refresh'() {
+        given:
+        AWSCredentialsProvider provider = Mock(AWSCredentialsProvider)
+        HeaderGenerator headerGenerator = new HeaderGenerator(
+            "execute-api", "us-west-2", provider,
+            "https://test.execute-api.us-west-2.amazonaws.com/test/accounts/", Duration.ofHours(1))
+
+        when:
+        headerGenerator.generateHeaders(null)
+        headerGenerator.generateHeaders(null)
+        headerGenerator.generateHeaders(null)
+
+        then:
+        1 * provider.getCredentials() >> new BasicAWSCredentials("access", "secret")
+
+        when:
+        headerGenerator.refreshCredentials()
+        headerGenerator.generateHeaders(null)
+
+        then:
+        1 * provider.refresh()
+        1 * provider.getCredentials() >> new BasicAWSCredentials("access2", "secret2")
+    }
+
+    def 'should read expiring credentials again only shortly before they expire'() {
+        given:
+        AWSCredentialsProvider provider = Mock(AWSCredentialsProvider)
+        Duration lifetime = expiresIn
+        HeaderGenerator headerGenerator = new HeaderGenerator(
+            "execute-api", "us-west-2", provider,
+            "https://test.execute-api.us-west-2.amazonaws.com/test/accounts/", Duration.ZERO) {
+            @Override
+            Instant expiration(AWSCredentialsProvider credentialsProvider) {
+                return lifetime == null ? null : Instant.now().plus(lifetime)
+            }
+        }
+
+        when:
+        3.times { headerGenerator.generateHeaders(null) }
+
+        then:
+        reads * provider.getCredentials() >> new BasicAWSCredentials("access", "secret")
+
+        where:
+        expiresIn              | reads
+        Duration.ofHours(1)    | 1
+        Duration.ofMinutes(1)  | 3
+        null                   | 3
+    }
+
+    def 'should tell when process credentials expire'() {
+        given:
+        ProcessCredentialsProvider provider = ProcessCredentialsProvider.builder()
+            .withCommand("""echo '{"Version":1,"AccessKeyId":"access","SecretAccessKey":"secret","SessionToken":"token","Expiration":"2100-01-01T00:00:00Z"}'""")
+            .build()
+        HeaderGenerator headerGenerator = new HeaderGenerator(
+            "execute-api", "us-west-2", provider, "https://test.execute-api.us-west-2.amazonaws.com/test/accounts/")
+
+        when:
+        headerGenerator.generateHeaders(null)
+
+        then:
+        // The provider renews a few seconds ahead of the expiration it was given.
+        headerGenerator.expiration(provider).isAfter(Instant.parse("2099-12-31T23:00:00Z"))
+        !headerGenerator.expiration(provider).isAfter(Instant.parse("2100-01-01T00:00:00Z"))
+        headerGenerator.expiration(new AWSStaticCredentialsProvider(new BasicAWSCredentials("access", "secret"))) == null
+    }
+
+    def 'should sign page urls of a known endpoint like freshly parsed urls'() {
+        given:
+        AWSCredentials credentials = new BasicAWSCredentials("access", "secret")
+        HeaderGenerator headerGenerator = new HeaderGenerator(
+            "execute-api", "us-west-2", new AWSStaticCredentialsProvider(credentials),
+            "https://test.execute-api.us-west-2.amazonaws.com/test/accounts/")
+        Date date = new Date()
+        headerGenerator.aws4Signer.setOverrideDate(date)
+        def urls = [
+            "https://test.execute-api.us-west-2.amazonaws.com/test/accounts/page1",
+            "https://test.execute-api.us-west-2.amazonaws.com/test/accounts/page2?after=1",
+            "https://test.execute-api.us-west-2.amazonaws.com:8443/test/accounts/page3",
+            "https://test.execute-api.us-west-2.amazonaws.com:8443/test/accounts/page%204",
+            "https://test.execute-api.us-west-2.amazonaws.com?after=/test",
+        ]
+
+        when:
+        def first = urls.collect { headerGenerator.generateHeaders(it, ["after": ["123"]]) }
+        def again = urls.collect { headerGenerator.generateHeaders(it, ["after": ["123"]]) }
+
+        then:
+        first == again
+        first == urls.collect {
+            HeaderGenerator fresh = new HeaderGenerator(
+                "execute-api", "us-west-2", new AWSStaticCredentialsProvider(credentials), it)
+            fresh.aws4Signer.setOverrideDate(date)
+            fresh.generateHeaders(["after": ["123"]] as HashMap)
+        }
+    }
+
+    def 'should generate the same headers when signing concurrently'() {
+        given:
+        AWSCredentials credentials = new BasicAWSCredentials("access", "secret")
+        HeaderGenerator headerGenerator = new HeaderGenerator(
+            "execute-api", "us-west-2", new AWSStaticCredentialsProvider(credentials),
+            "https://test.execute-api.us-west-2.amazonaws.com/test/accounts/")
+        headerGenerator.aws4Signer.setOverrideDate(new Date())
+        def urls = (1..8).collect { "https://test.execute-api.us-west-2.amazonaws.com/test/accounts/page" + it }
+        def expected = urls.collect { headerGenerator.generateHeaders(it, ["after": ["123"]]) }
+        def pool = Executors.newFixedThreadPool(8)
+
+        when:
+        def results = (1..50).collectMany {
+            urls.collect { url -> pool.submit({ headerGenerator.generateHeaders(url, ["after": ["123"]]) } as Callable) }
+        }.collect { it.get(5, TimeUnit.SECONDS) }
+
+        then:
+        results == (1..50).collectMany { expected }
+
+        cleanup:
+        pool.shutdownNow()
+    }
+
+    def 'should sign additional request headers'() {
+        given:
+        AWSCredentials credentials = new BasicAWSCredentials("access", "secret")
+        HeaderGenerator headerGenerator = new HeaderGenerator(
+            "execute-api", "us-west-2", new AWSStaticCredentialsProvider(credentials),
+            "https://test.execute-api.us-west-2.amazonaws.com/test/accounts/")
+
+        when:
+        TreeMap<String, String> headers = headerGenerator.generateHeaders(
+            "https://test.execute-api.us-west-2.amazonaws.com/test/accounts/", null, ["If-None-Match": '"v1"'])
+
+        then:
+        headers.get("If-None-Match") == '"v1"'
+        headers.get("Authorization").contains("SignedHeaders=content-type;host;if-none-match;x-amz-date")
+    }
 }
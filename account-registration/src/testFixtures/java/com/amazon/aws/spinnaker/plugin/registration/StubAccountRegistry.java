@@ -0,0 +1,371 @@
+/*
+ * Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License").
+ *   You may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *
+ */
+
+
+package com.amazon.aws.spinnaker.plugin.registration;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.hash.Hashing;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Embedded account registry serving the {@code SpinnakerAccounts}/{@code Pagination} API described in
+ * doc/api_requirements.md at {@link #getUrl()}. Accounts are filtered by {@code UpdatedAt.gt} and split into pages of
+ * {@code pageSize} accounts. With {@code shards=N&shard=I}, only every Nth account starting at the Ith is returned.
+ * Responses can be delayed, and failed with {@link Fault faults} at random or on demand.
+ * Responses carry an {@code ETag} and are gzip compressed when the client accepts it.
+ */
+public class StubAccountRegistry implements AutoCloseable {
+    private static final ObjectMapper MAPPER = new ObjectMapper().setSerializationInclusion(JsonInclude.Include.NON_NULL);
+    private static final OffsetDateTime EPOCH = OffsetDateTime.of(2020, 8, 25, 16, 52, 59, 26696000, ZoneOffset.UTC);
+    private static final List<List<String>> PROVIDERS = Arrays.asList(
+            Collections.singletonList("ec2"),
+            Arrays.asList("ec2", "ecs"),
+            Arrays.asList("ec2", "lambda"),
+            Arrays.asList("ec2", "ecs", "lambda"));
+
+    public enum Fault {
+        // 503 Service Unavailable.
+        SERVER_ERROR,
+        // 403 Forbidden, as API Gateway returns for expired signatures.
+        FORBIDDEN,
+        // Responds after the timeout delay only.
+        TIMEOUT,
+        // 200 with half of the JSON body.
+        TRUNCATED
+    }
+
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final List<Entry> accounts = new ArrayList<>();
+    private final Random random = new Random(0);
+    private OffsetDateTime clock = EPOCH;
+    private int pageSize = 100;
+    private LongSupplier latencyMillis = fixedLatency(0);
+    private double faultRate;
+    private Set<Fault> faults = EnumSet.allOf(Fault.class);
+    private final Queue<Fault> injectedFaults = new ConcurrentLinkedQueue<>();
+    private final Map<Integer, Fault> pageFaults = new ConcurrentHashMap<>();
+    private long timeoutDelayMillis = 10000;
+    private final List<String> requests = new CopyOnWriteArrayList<>();
+    private final AtomicLong bytesSent = new AtomicLong();
+    private final AtomicLong faultCount = new AtomicLong();
+    private final AtomicLong notModifiedCount = new AtomicLong();
+
+    public StubAccountRegistry(int accountCount) throws IOException {
+        addAccounts(accountCount);
+        executor = Executors.newFixedThreadPool(16);
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.createContext("/accounts", this::handle);
+        server.setExecutor(executor);
+        server.start();
+    }
+
+    public String getUrl() {
+        return "http://localhost:" + server.getAddress().getPort() + "/accounts";
+    }
+
+    public synchronized void setPageSize(int pageSize) {
+        this.pageSize = pageSize;
+    }
+
+    public synchronized void setLatency(LongSupplier latencyMillis) {
+        this.latencyMillis = latencyMillis;
+    }
+
+    /**
+     * Fails this ratio of requests with one of the given faults, picked at random.
+     */
+    public synchronized void setFaults(double faultRate, Set<Fault> faults) {
+        this.faultRate = faultRate;
+        this.faults = EnumSet.copyOf(faults);
+    }
+
+    /**
+     * Fails the next requests with the given faults, in order.
+     */
+    public void injectFaults(Fault... faults) {
+        injectedFaults.addAll(Arrays.asList(faults));
+    }
+
+    /**
+     * Fails the next request for the given page, counting from 1, with the given fault.
+     */
+    public void failPage(int page, Fault fault) {
+        pageFaults.put(page, fault);
+    }
+
+    public synchronized void setTimeoutDelay(long timeoutDelayMillis) {
+        this.timeoutDelayMillis = timeoutDelayMillis;
+    }
+
+    public synchronized void addAccounts(int count) {
+        for (int i = 0; i < count; i++) {
+            int index = accounts.size();
+            Account account = new Account();
+            account.setName("account-" + index);
+            account.setAccountId(String.format("%012d", 100000000000L + index));
+            account.setAssumeRole("role/spinnakerManaged");
+            account.setRegions(Arrays.asList("us-west-2", "us-east-1"));
+            account.setProviders(PROVIDERS.get(index % PROVIDERS.size()));
+            account.setStatus("ACTIVE");
+            accounts.add(new Entry(account));
+            touch(accounts.get(index));
+        }
+    }
+
+    /**
+     * Changes the assume role of {@code count} accounts picked at random, so they are returned by the next incremental
+     * sync.
+     */
+    public synchronized void updateAccounts(int count) {
+        for (int i = 0; i < count; i++) {
+            Entry entry = accounts.get(random.nextInt(accounts.size()));
+            entry.account.setAssumeRole("role/spinnakerManaged-" + clock.toEpochSecond());
+            touch(entry);
+        }
+    }
+
+    public synchronized void suspendAccounts(int count) {
+        for (int i = 0; i < count; i++) {
+            Entry entry = accounts.get(random.nextInt(accounts.size()));
+            entry.account.setStatus("SUSPENDED");
+            touch(entry);
+        }
+    }
+
+    /**
+     * @return path and query of every request received, in order.
+     */
+    public List<String> getRequests() {
+        return requests;
+    }
+
+    /**
+     * @return response body bytes sent, after compression.
+     */
+    public long getBytesSent() {
+        return bytesSent.get();
+    }
+
+    public long getFaultCount() {
+        return faultCount.get();
+    }
+
+    public long getNotModifiedCount() {
+        return notModifiedCount.get();
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    public static LongSupplier fixedLatency(long millis) {
+        return () -> millis;
+    }
+
+    public static LongSupplier uniformLatency(long minMillis, long maxMillis) {
+        return () -> ThreadLocalRandom.current().nextLong(minMillis, maxMillis + 1);
+    }
+
+    public static LongSupplier exponentialLatency(long meanMillis) {
+        return () -> (long) (-meanMillis * Math.log(1 - ThreadLocalRandom.current().nextDouble()));
+    }
+
+    private void touch(Entry entry) {
+        clock = clock.plusSeconds(1);
+        entry.updatedAt = clock.toInstant();
+        entry.account.setUpdatedAt(clock.toString());
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try {
+            String query = exchange.getRequestURI().getRawQuery();
+            requests.add(exchange.getRequestURI().getPath() + (query == null ? "" : "?" + query));
+            Map<String, String> params = parseQuery(query);
+            sleep(latency());
+            Fault fault = pageFaults.remove(page(params));
+            if (fault == null) {
+                fault = nextFault();
+            }
+            if (fault != null) {
+                faultCount.incrementAndGet();
+                if (fault == Fault.SERVER_ERROR || fault == Fault.FORBIDDEN) {
+                    exchange.sendResponseHeaders(fault == Fault.SERVER_ERROR ? 503 : 403, -1);
+                    return;
+                }
+                if (fault == Fault.TIMEOUT) {
+                    sleep(timeoutDelay());
+                }
+            }
+            byte[] body = page(exchange, params);
+            String etag = "\"" + Hashing.murmur3_128().hashBytes(body) + "\"";
+            if (etag.equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+                notModifiedCount.incrementAndGet();
+                exchange.sendResponseHeaders(304, -1);
+                return;
+            }
+            if (fault == Fault.TRUNCATED) {
+                body = Arrays.copyOf(body, body.length / 2);
+            }
+            exchange.getResponseHeaders().set("Content-Type", "application/json");
+            exchange.getResponseHeaders().set("ETag", etag);
+            String acceptEncoding = exchange.getRequestHeaders().getFirst("Accept-Encoding");
+            if (acceptEncoding != null && acceptEncoding.contains("gzip")) {
+                ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+                try (OutputStream gzip = new GZIPOutputStream(compressed)) {
+                    gzip.write(body);
+                }
+                body = compressed.toByteArray();
+                exchange.getResponseHeaders().set("Content-Encoding", "gzip");
+            }
+            exchange.sendResponseHeaders(200, body.length);
+            exchange.getResponseBody().write(body);
+            bytesSent.addAndGet(body.length);
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private synchronized byte[] page(HttpExchange exchange, Map<String, String> params) throws IOException {
+        // A + not encoded by the client is decoded as a space.
+        Instant updatedAfter = params.containsKey("UpdatedAt.gt")
+                ? OffsetDateTime.parse(params.get("UpdatedAt.gt").replace(' ', '+')).toInstant() : null;
+        int page = page(params);
+        int shards = Integer.parseInt(params.getOrDefault("shards", "1"));
+        int shard = Integer.parseInt(params.getOrDefault("shard", "0"));
+        List<Account> returned = new ArrayList<>(pageSize);
+        int matched = 0;
+        boolean more = false;
+        for (int i = 0; i < accounts.size(); i++) {
+            Entry entry = accounts.get(i);
+            if (i % shards != shard || updatedAfter != null && !entry.updatedAt.isAfter(updatedAfter)) {
+                continue;
+            }
+            if (matched >= (page - 1) * pageSize) {
+                if (returned.size() == pageSize) {
+                    more = true;
+                    break;
+                }
+                returned.add(entry.account);
+            }
+            matched++;
+        }
+        Map<String, Object> pagination = new HashMap<>();
+        String shardQuery = params.containsKey("shards") ? "&shards=" + shards + "&shard=" + shard : "";
+        pagination.put("NextUrl", more ? getUrl() + "?page=" + (page + 1) + shardQuery : "");
+        Map<String, Object> response = new LinkedHashMap<>();
+        response.put("SpinnakerAccounts", returned);
+        response.put("Pagination", pagination);
+        return MAPPER.writeValueAsBytes(response);
+    }
+
+    private synchronized long latency() {
+        return latencyMillis.getAsLong();
+    }
+
+    private synchronized long timeoutDelay() {
+        return timeoutDelayMillis;
+    }
+
+    private synchronized Fault nextFault() {
+        Fault fault = injectedFaults.poll();
+        if (fault != null) {
+            return fault;
+        }
+        if (faultRate > 0 && !faults.isEmpty() && random.nextDouble() < faultRate) {
+            List<Fault> candidates = new ArrayList<>(faults);
+            return candidates.get(random.nextInt(candidates.size()));
+        }
+        return null;
+    }
+
+    private static int page(Map<String, String> params) {
+        return Integer.parseInt(params.getOrDefault("page", "1"));
+    }
+
+    private static Map<String, String> parseQuery(String query) {
+        Map<String, String> params = new HashMap<>();
+        if (query == null) {
+            return params;
+        }
+        for (String param : query.split("&")) {
+            int separator = param.indexOf('=');
+            if (separator > 0) {
+                params.put(URLDecoder.decode(param.substring(0, separator), StandardCharsets.UTF_8),
+                        URLDecoder.decode(param.substring(separator + 1), StandardCharsets.UTF_8));
+            }
+        }
+        return params;
+    }
+
+    private static void sleep(long millis) {
+        if (millis <= 0) {
+            return;
+        }
+        try {
+            TimeUnit.MILLISECONDS.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static final class Entry {
+        private final Account account;
+        private Instant updatedAt;
+
+        private Entry(Account account) {
+            this.account = account;
+        }
+    }
+}